@@ -0,0 +1,89 @@
+package uk.co.bssd.vesta.benchmark;
+
+import static uk.co.bssd.vesta.benchmark.SendSyncBenchmark.CONNECTION_TIMEOUT_MS;
+import static uk.co.bssd.vesta.benchmark.SendSyncBenchmark.HOST;
+import static uk.co.bssd.vesta.benchmark.SendSyncBenchmark.PORT;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bssd.vesta.MessageFuture;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.server.RpcServer;
+import uk.co.bssd.vesta.server.SubscribeListener;
+
+// a broadcast to every subscriber of a topic over loopback, measured until
+// every subscriber's write has completed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastFanOutBenchmark {
+
+	private static final String TOPIC = "prices";
+	private static final String MESSAGE = "price";
+	private static final long BROADCAST_TIMEOUT_SECONDS = 5;
+
+	@Param({ "1", "16" })
+	private int subscribers;
+
+	private RpcServer server;
+	private List<RpcClient> clients;
+
+	@Setup
+	public void setUp() throws InterruptedException {
+		final CountDownLatch subscribed = new CountDownLatch(this.subscribers);
+		this.server = new RpcServer();
+		this.server.registerSubscribeListener(new SubscribeListener() {
+			@Override
+			public void onSubscribe(SocketAddress clientAddress,
+					String channelName) {
+				subscribed.countDown();
+			}
+		});
+		this.server.start(HOST, PORT);
+
+		this.clients = new ArrayList<RpcClient>();
+		for (int i = 0; i < this.subscribers; i++) {
+			RpcClient client = new RpcClient();
+			client.start(HOST, PORT, CONNECTION_TIMEOUT_MS);
+			client.subscribe(TOPIC);
+			this.clients.add(client);
+		}
+		if (!subscribed.await(BROADCAST_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("Subscribers did not subscribe");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (RpcClient client : this.clients) {
+			client.stop();
+		}
+		this.server.stop();
+	}
+
+	@Benchmark
+	public boolean broadcast() throws InterruptedException {
+		MessageFuture future = this.server.broadcast(MESSAGE, TOPIC);
+		return future.await(BROADCAST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,81 @@
+package uk.co.bssd.vesta.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bssd.vesta.codec.BinaryCodec;
+import uk.co.bssd.vesta.codec.Codec;
+import uk.co.bssd.vesta.codec.JavaSerializationCodec;
+import uk.co.bssd.vesta.message.SynchronousRequest;
+import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.message.SynchronousResult;
+
+// encode then decode through the codec's own frame decoder, as a request
+// and its response each take once per round trip
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param({ "java", "binary" })
+	private String codecName;
+
+	@Param({ "16", "1024" })
+	private int payloadLength;
+
+	private Codec codec;
+	private DecoderEmbedder<Object> decoder;
+	private SynchronousRequest request;
+	private SynchronousResponse response;
+
+	@Setup
+	public void setUp() {
+		this.codec = "binary".equals(this.codecName) ? new BinaryCodec()
+				: new JavaSerializationCodec();
+		this.decoder = new DecoderEmbedder<Object>(
+				(ChannelUpstreamHandler) this.codec.newDecoder());
+
+		String payload = Payloads.ofLength(this.payloadLength);
+		this.request = new SynchronousRequest(1, payload);
+		this.response = new SynchronousResponse(1, SynchronousResult.SUCCESS,
+				payload);
+	}
+
+	@Benchmark
+	public Object synchronousRequestRoundTrip() throws Exception {
+		return roundTrip(this.request);
+	}
+
+	@Benchmark
+	public Object synchronousResponseRoundTrip() throws Exception {
+		return roundTrip(this.response);
+	}
+
+	@Benchmark
+	public ChannelBuffer synchronousRequestEncode() throws Exception {
+		return this.codec.encode(this.request);
+	}
+
+	private Object roundTrip(Object message) throws Exception {
+		ChannelBuffer encoded = this.codec.encode(message);
+		this.decoder.offer(encoded);
+		return this.decoder.poll();
+	}
+}
@@ -0,0 +1,15 @@
+package uk.co.bssd.vesta.benchmark;
+
+import java.util.Arrays;
+
+final class Payloads {
+
+	private Payloads() {
+	}
+
+	static String ofLength(int length) {
+		char[] characters = new char[length];
+		Arrays.fill(characters, 'x');
+		return new String(characters);
+	}
+}
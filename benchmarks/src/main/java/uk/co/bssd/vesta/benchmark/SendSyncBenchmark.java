@@ -0,0 +1,72 @@
+package uk.co.bssd.vesta.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.server.RpcServer;
+import uk.co.bssd.vesta.server.SynchronousMessageHandler;
+
+// a full request and response over loopback, share the one client across
+// threads with -t to measure it under concurrent callers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendSyncBenchmark {
+
+	static final String HOST = "127.0.0.1";
+	static final int PORT = 6799;
+	static final long CONNECTION_TIMEOUT_MS = 1000;
+	static final long RESPONSE_TIMEOUT_MS = 5000;
+
+	@Param({ "16", "1024" })
+	private int payloadLength;
+
+	private RpcServer server;
+	private RpcClient client;
+	private String payload;
+
+	@Setup
+	public void setUp() {
+		this.server = new RpcServer();
+		this.server.registerSynchronousMessageHandler(String.class,
+				new SynchronousMessageHandler<String, String>() {
+					@Override
+					public String onMessage(String request) {
+						return request;
+					}
+				});
+		this.server.start(HOST, PORT);
+
+		this.client = new RpcClient();
+		this.client.start(HOST, PORT, CONNECTION_TIMEOUT_MS);
+		this.payload = Payloads.ofLength(this.payloadLength);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.client.stop();
+		this.server.stop();
+	}
+
+	@Benchmark
+	public String sendSync() {
+		return this.client.sendSync(this.payload, String.class,
+				RESPONSE_TIMEOUT_MS);
+	}
+}
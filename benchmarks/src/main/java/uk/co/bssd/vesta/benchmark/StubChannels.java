@@ -0,0 +1,54 @@
+package uk.co.bssd.vesta.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.channel.Channel;
+
+// channels with identity and nothing else, enough for the subscription
+// registry which only hashes them
+final class StubChannels {
+
+	private StubChannels() {
+	}
+
+	static List<Channel> create(int count) {
+		List<Channel> channels = new ArrayList<Channel>(count);
+		for (int i = 0; i < count; i++) {
+			channels.add((Channel) Proxy.newProxyInstance(
+					Channel.class.getClassLoader(),
+					new Class<?>[] { Channel.class }, new IdentityHandler(i)));
+		}
+		return channels;
+	}
+
+	private static class IdentityHandler implements InvocationHandler {
+
+		private final int id;
+
+		private IdentityHandler(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if ("hashCode".equals(name) || "getId".equals(name)) {
+				return Integer.valueOf(this.id);
+			}
+			if ("equals".equals(name)) {
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			if ("compareTo".equals(name)) {
+				return Integer.valueOf(this.id - ((Channel) args[0]).getId());
+			}
+			if ("toString".equals(name)) {
+				return "stub channel " + this.id;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package uk.co.bssd.vesta.benchmark;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bssd.vesta.server.ChannelSubscriptions;
+
+// the subscriber lookup each broadcast makes, by exact topic and through
+// wildcard patterns
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionLookupBenchmark {
+
+	private static final int TOPICS = 1000;
+
+	@Param({ "1", "100" })
+	private int subscribersPerTopic;
+
+	private ChannelSubscriptions subscriptions;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		this.subscriptions = new ChannelSubscriptions();
+		List<Channel> channels = StubChannels.create(this.subscribersPerTopic);
+		for (int topic = 0; topic < TOPICS; topic++) {
+			for (Channel channel : channels) {
+				this.subscriptions.subscribe(channel, exactTopic(topic));
+			}
+		}
+		for (Channel channel : channels) {
+			this.subscriptions.subscribe(channel, "wildcard.*.price");
+		}
+	}
+
+	@Benchmark
+	public Collection<Channel> exactTopicLookup() {
+		return this.subscriptions.subscribedClients(exactTopic(nextTopic()));
+	}
+
+	@Benchmark
+	public Collection<Channel> wildcardTopicLookup() {
+		return this.subscriptions.subscribedClients("wildcard." + nextTopic()
+				+ ".price");
+	}
+
+	private int nextTopic() {
+		this.next = (this.next + 1) % TOPICS;
+		return this.next;
+	}
+
+	private static String exactTopic(int topic) {
+		return "exact." + topic;
+	}
+}
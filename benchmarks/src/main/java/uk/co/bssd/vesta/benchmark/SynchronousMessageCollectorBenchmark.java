@@ -0,0 +1,61 @@
+package uk.co.bssd.vesta.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bssd.vesta.client.ResponseFuture;
+import uk.co.bssd.vesta.client.SynchronousMessageCollector;
+import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.message.SynchronousResult;
+
+// callers registering requests and the I/O thread completing them all meet
+// in the one collector, run with -t to vary the contention
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SynchronousMessageCollectorBenchmark {
+
+	private static final String PAYLOAD = "response";
+
+	private SynchronousMessageCollector collector;
+	private AtomicLong correlationIds;
+
+	@Setup
+	public void setUp() {
+		this.collector = new SynchronousMessageCollector();
+		this.correlationIds = new AtomicLong();
+	}
+
+	@Benchmark
+	public Object registerAndComplete() throws Exception {
+		long correlationId = this.correlationIds.incrementAndGet();
+		ResponseFuture<String> future = this.collector.register(correlationId);
+		this.collector.onMessage(new SynchronousResponse(correlationId,
+				SynchronousResult.SUCCESS, PAYLOAD));
+		return future.get();
+	}
+
+	@Benchmark
+	public int registerAndCancel() {
+		ResponseFuture<String> future = this.collector
+				.register(this.correlationIds.incrementAndGet());
+		future.cancel(false);
+		return this.collector.outstandingRequests();
+	}
+}
@@ -0,0 +1,63 @@
+package uk.co.bssd.vesta.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+// latencies in microseconds per operation, recorded from any thread
+public class LatencyRecorder {
+
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES
+			.toMicros(1);
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final Map<Operation, Recorder> recorders;
+	private final Map<Operation, AtomicLong> errors;
+
+	public LatencyRecorder() {
+		this.recorders = new EnumMap<Operation, Recorder>(Operation.class);
+		this.errors = new EnumMap<Operation, AtomicLong>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			this.recorders.put(operation, new Recorder(
+					HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+			this.errors.put(operation, new AtomicLong());
+		}
+	}
+
+	public void record(Operation operation, long intendedStartNanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+				- intendedStartNanos);
+		this.recorders.get(operation).recordValue(
+				Math.min(Math.max(micros, 0), HIGHEST_TRACKABLE_MICROS));
+	}
+
+	public void recordError(Operation operation) {
+		this.errors.get(operation).incrementAndGet();
+	}
+
+	// discards everything recorded so far, used at the end of the warmup
+	public void reset() {
+		for (Operation operation : Operation.values()) {
+			this.recorders.get(operation).reset();
+			this.errors.get(operation).set(0);
+		}
+	}
+
+	public Map<Operation, Histogram> histograms() {
+		Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(
+				Operation.class);
+		for (Operation operation : Operation.values()) {
+			histograms.put(operation, this.recorders.get(operation)
+					.getIntervalHistogram());
+		}
+		return histograms;
+	}
+
+	public long errors(Operation operation) {
+		return this.errors.get(operation).get();
+	}
+}
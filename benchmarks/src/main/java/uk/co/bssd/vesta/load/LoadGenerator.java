@@ -0,0 +1,261 @@
+package uk.co.bssd.vesta.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import uk.co.bssd.vesta.MessageFuture;
+import uk.co.bssd.vesta.MessageFutureListener;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.client.SendFailureListener;
+import uk.co.bssd.vesta.server.AsynchronousMessageHandler;
+import uk.co.bssd.vesta.server.RpcServer;
+import uk.co.bssd.vesta.server.SubscribeListener;
+import uk.co.bssd.vesta.server.SynchronousMessageHandler;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+// drives an RpcServer and its clients over loopback at a fixed target rate.
+// operations are started on schedule whether or not earlier ones have
+// finished and latency runs from the scheduled start, so a stalled server
+// shows up in the percentiles instead of slowing the load down
+public class LoadGenerator {
+
+	private static final String TOPIC = "load";
+	private static final long CONNECTION_TIMEOUT_MS = 5000;
+	private static final long RESPONSE_TIMEOUT_MS = 30000;
+	private static final long RECEIVE_POLL_MS = 100;
+	private static final long DRAIN_TIMEOUT_MS = 10000;
+
+	private final LoadProfile profile;
+	private final LatencyRecorder recorder;
+	private final AtomicInteger outstanding;
+	private final byte[] payload;
+
+	private RpcServer server;
+	private List<RpcClient> clients;
+	private List<Thread> subscribers;
+	private volatile boolean running;
+
+	public LoadGenerator(LoadProfile profile) {
+		this.profile = profile;
+		this.recorder = new LatencyRecorder();
+		this.outstanding = new AtomicInteger();
+		this.payload = new byte[profile.payloadBytes()];
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadProfile profile = LoadProfile.parse(args);
+		LoadReport report = new LoadGenerator(profile).run();
+
+		report.print(new PrintWriter(System.out));
+		File directory = profile.reportDirectory();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create report directory ["
+					+ directory + "]");
+		}
+		System.out.println("Wrote " + report.writeCsv(directory));
+		System.out.println("Wrote " + report.writeJson(directory));
+	}
+
+	public LoadReport run() throws InterruptedException {
+		this.running = true;
+		startServer();
+		try {
+			startClients();
+			long measuredMillis = drive();
+			awaitOutstanding();
+			return new LoadReport(this.profile, this.recorder, measuredMillis);
+		} finally {
+			this.running = false;
+			stopClients();
+			this.server.stop();
+		}
+	}
+
+	private long drive() {
+		long intervalNanos = TimeUnit.SECONDS.toNanos(1) / this.profile.rate();
+		long start = System.nanoTime();
+		long measureFrom = start
+				+ TimeUnit.SECONDS.toNanos(this.profile.warmupSeconds());
+		long end = measureFrom
+				+ TimeUnit.SECONDS.toNanos(this.profile.durationSeconds());
+
+		boolean measuring = measureFrom == start;
+		for (long i = 0;; i++) {
+			long intended = start + i * intervalNanos;
+			if (intended >= end) {
+				break;
+			}
+			if (!measuring && intended >= measureFrom) {
+				this.recorder.reset();
+				measuring = true;
+			}
+			awaitNanoTime(intended);
+			RpcClient client = this.clients.get((int) (i % this.clients.size()));
+			issue(this.profile.mix().next(), client, intended);
+		}
+		return TimeUnit.NANOSECONDS.toMillis(end - measureFrom);
+	}
+
+	private void issue(Operation operation, RpcClient client,
+			final long intended) {
+		Probe probe = new Probe(intended, this.payload);
+		try {
+			switch (operation) {
+			case SYNC:
+				sendSync(client, probe);
+				break;
+			case ASYNC:
+				client.sendAsync(probe, new SendFailureListener() {
+					@Override
+					public void onSendFailed(Serializable message,
+							Throwable cause) {
+						recorder.recordError(Operation.ASYNC);
+					}
+				});
+				break;
+			case BROADCAST:
+				broadcast(probe);
+				break;
+			}
+		} catch (RuntimeException e) {
+			this.recorder.recordError(operation);
+		}
+	}
+
+	private void sendSync(RpcClient client, final Probe probe) {
+		this.outstanding.incrementAndGet();
+		final ListenableFuture<Probe> future = client.sendRequest(probe,
+				Probe.class, RESPONSE_TIMEOUT_MS);
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.get();
+					recorder.record(Operation.SYNC, probe.intendedStartNanos());
+				} catch (Exception e) {
+					recorder.recordError(Operation.SYNC);
+				} finally {
+					outstanding.decrementAndGet();
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+	}
+
+	// each subscriber records its own delivery latency on receipt
+	private void broadcast(Probe probe) {
+		MessageFuture future = this.server.broadcast(probe, TOPIC);
+		future.addListener(new MessageFutureListener() {
+			@Override
+			public void operationComplete(MessageFuture completed) {
+				if (completed.failedCount() > 0) {
+					recorder.recordError(Operation.BROADCAST);
+				}
+			}
+		});
+	}
+
+	private void startServer() {
+		this.server = new RpcServer();
+		this.server.registerSynchronousMessageHandler(Probe.class,
+				new SynchronousMessageHandler<Probe, Probe>() {
+					@Override
+					public Probe onMessage(Probe request) {
+						return request;
+					}
+				});
+		this.server.registerAsynchronousMessageHandler(Probe.class,
+				new AsynchronousMessageHandler<Probe>() {
+					@Override
+					public void onMessage(Probe message) {
+						recorder.record(Operation.ASYNC,
+								message.intendedStartNanos());
+					}
+				});
+		this.server.start(this.profile.host(), this.profile.port());
+	}
+
+	private void startClients() throws InterruptedException {
+		boolean subscribe = this.profile.mix().includes(Operation.BROADCAST);
+		final CountDownLatch subscribed = new CountDownLatch(
+				subscribe ? this.profile.clients() : 0);
+		this.server.registerSubscribeListener(new SubscribeListener() {
+			@Override
+			public void onSubscribe(SocketAddress clientAddress,
+					String channelName) {
+				subscribed.countDown();
+			}
+		});
+
+		this.clients = new ArrayList<RpcClient>();
+		this.subscribers = new ArrayList<Thread>();
+		for (int i = 0; i < this.profile.clients(); i++) {
+			RpcClient client = new RpcClient();
+			client.start(this.profile.host(), this.profile.port(),
+					CONNECTION_TIMEOUT_MS);
+			this.clients.add(client);
+			if (subscribe) {
+				client.subscribe(TOPIC);
+				this.subscribers.add(startSubscriber(client, i));
+			}
+		}
+		if (!subscribed.await(CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+			throw new IllegalStateException(
+					"Clients did not subscribe in time");
+		}
+	}
+
+	private Thread startSubscriber(final RpcClient client, int index) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running) {
+					Serializable message = client.awaitMessage(RECEIVE_POLL_MS);
+					if (message instanceof Probe) {
+						recorder.record(Operation.BROADCAST,
+								((Probe) message).intendedStartNanos());
+					}
+				}
+			}
+		}, "load-subscriber-" + index);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private void stopClients() throws InterruptedException {
+		for (Thread subscriber : this.subscribers) {
+			subscriber.join(RECEIVE_POLL_MS * 2);
+		}
+		for (RpcClient client : this.clients) {
+			client.stop();
+		}
+	}
+
+	private void awaitOutstanding() {
+		long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+		while (this.outstanding.get() > 0
+				&& System.currentTimeMillis() < deadline) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		// give in flight asynchronous sends and broadcasts a moment to land
+		LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RECEIVE_POLL_MS));
+	}
+
+	private static void awaitNanoTime(long target) {
+		long remaining;
+		while ((remaining = target - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+}
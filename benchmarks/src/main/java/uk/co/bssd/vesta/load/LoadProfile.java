@@ -0,0 +1,109 @@
+package uk.co.bssd.vesta.load;
+
+import java.io.File;
+
+// command line options of the form --name=value, each with a default
+public class LoadProfile {
+
+	private int clients = 4;
+	private int rate = 10000;
+	private int durationSeconds = 30;
+	private int warmupSeconds = 5;
+	private int payloadBytes = 64;
+	private OperationMix mix = OperationMix.parse("sync:70,async:20,broadcast:10");
+	private String host = "127.0.0.1";
+	private int port = 6799;
+	private File reportDirectory = new File("target/load-reports");
+
+	public static LoadProfile parse(String[] args) {
+		LoadProfile profile = new LoadProfile();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+				throw new IllegalArgumentException("Invalid option [" + arg
+						+ "], expected --name=value");
+			}
+			String name = arg.substring(2, arg.indexOf('='));
+			String value = arg.substring(arg.indexOf('=') + 1);
+			profile.set(name, value);
+		}
+		return profile;
+	}
+
+	private void set(String name, String value) {
+		if ("clients".equals(name)) {
+			this.clients = positive(name, value);
+		} else if ("rate".equals(name)) {
+			this.rate = positive(name, value);
+		} else if ("duration".equals(name)) {
+			this.durationSeconds = positive(name, value);
+		} else if ("warmup".equals(name)) {
+			this.warmupSeconds = Integer.parseInt(value);
+		} else if ("payload".equals(name)) {
+			this.payloadBytes = Integer.parseInt(value);
+		} else if ("mix".equals(name)) {
+			this.mix = OperationMix.parse(value);
+		} else if ("host".equals(name)) {
+			this.host = value;
+		} else if ("port".equals(name)) {
+			this.port = positive(name, value);
+		} else if ("report".equals(name)) {
+			this.reportDirectory = new File(value);
+		} else {
+			throw new IllegalArgumentException("Unknown option [" + name + "]");
+		}
+	}
+
+	private static int positive(String name, String value) {
+		int parsed = Integer.parseInt(value);
+		if (parsed < 1) {
+			throw new IllegalArgumentException("Option [" + name
+					+ "] must be positive");
+		}
+		return parsed;
+	}
+
+	public int clients() {
+		return this.clients;
+	}
+
+	// operations started per second across all clients
+	public int rate() {
+		return this.rate;
+	}
+
+	public int durationSeconds() {
+		return this.durationSeconds;
+	}
+
+	public int warmupSeconds() {
+		return this.warmupSeconds;
+	}
+
+	public int payloadBytes() {
+		return this.payloadBytes;
+	}
+
+	public OperationMix mix() {
+		return this.mix;
+	}
+
+	public String host() {
+		return this.host;
+	}
+
+	public int port() {
+		return this.port;
+	}
+
+	public File reportDirectory() {
+		return this.reportDirectory;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"clients=%d rate=%d/s duration=%ds warmup=%ds payload=%dB mix=%s",
+				this.clients, this.rate, this.durationSeconds,
+				this.warmupSeconds, this.payloadBytes, this.mix);
+	}
+}
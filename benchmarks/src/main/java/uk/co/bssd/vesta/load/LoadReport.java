@@ -0,0 +1,137 @@
+package uk.co.bssd.vesta.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+// one row per operation, written as CSV and JSON with the same timestamped
+// name so runs can be compared over time
+public class LoadReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99",
+			"p999", "p9999" };
+
+	private final LoadProfile profile;
+	private final Map<Operation, Histogram> histograms;
+	private final LatencyRecorder recorder;
+	private final long measuredMillis;
+	private final Date finished;
+
+	public LoadReport(LoadProfile profile, LatencyRecorder recorder,
+			long measuredMillis) {
+		this.profile = profile;
+		this.recorder = recorder;
+		this.histograms = recorder.histograms();
+		this.measuredMillis = measuredMillis;
+		this.finished = new Date();
+	}
+
+	public void print(PrintWriter out) {
+		out.println(this.profile);
+		out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s %10s %10s%n",
+				"operation", "count", "errors", "rate/s", "p50 us",
+				"p90 us", "p99 us", "p999 us", "p9999 us", "max us");
+		for (Map.Entry<Operation, Histogram> entry : this.histograms
+				.entrySet()) {
+			Histogram histogram = entry.getValue();
+			out.printf("%-10s %10d %8d %10.0f", entry.getKey().label(),
+					histogram.getTotalCount(),
+					this.recorder.errors(entry.getKey()), rate(histogram));
+			for (double percentile : PERCENTILES) {
+				out.printf(" %10d", histogram.getValueAtPercentile(percentile));
+			}
+			out.printf(" %10d%n", histogram.getMaxValue());
+		}
+		out.flush();
+	}
+
+	public File writeCsv(File directory) throws IOException {
+		File file = new File(directory, baseName() + ".csv");
+		PrintWriter out = open(file);
+		try {
+			out.print("operation,count,errors,rate_per_second,mean_us");
+			for (String name : PERCENTILE_NAMES) {
+				out.print("," + name + "_us");
+			}
+			out.println(",max_us");
+			for (Map.Entry<Operation, Histogram> entry : this.histograms
+					.entrySet()) {
+				Histogram histogram = entry.getValue();
+				out.printf("%s,%d,%d,%.1f,%.1f", entry.getKey().label(),
+						histogram.getTotalCount(),
+						this.recorder.errors(entry.getKey()), rate(histogram),
+						histogram.getMean());
+				for (double percentile : PERCENTILES) {
+					out.printf(",%d",
+							histogram.getValueAtPercentile(percentile));
+				}
+				out.printf(",%d%n", histogram.getMaxValue());
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	public File writeJson(File directory) throws IOException {
+		File file = new File(directory, baseName() + ".json");
+		PrintWriter out = open(file);
+		try {
+			out.println("{");
+			out.printf("  \"finished\": \"%s\",%n", timestamp(
+					"yyyy-MM-dd'T'HH:mm:ssZ"));
+			out.printf("  \"profile\": \"%s\",%n", this.profile);
+			out.printf("  \"measuredMillis\": %d,%n", this.measuredMillis);
+			out.println("  \"operations\": {");
+			int remaining = this.histograms.size();
+			for (Map.Entry<Operation, Histogram> entry : this.histograms
+					.entrySet()) {
+				Histogram histogram = entry.getValue();
+				out.printf("    \"%s\": {\"count\": %d, \"errors\": %d, "
+						+ "\"ratePerSecond\": %.1f, \"meanMicros\": %.1f",
+						entry.getKey().label(), histogram.getTotalCount(),
+						this.recorder.errors(entry.getKey()), rate(histogram),
+						histogram.getMean());
+				for (int i = 0; i < PERCENTILES.length; i++) {
+					out.printf(", \"%sMicros\": %d", PERCENTILE_NAMES[i],
+							histogram.getValueAtPercentile(PERCENTILES[i]));
+				}
+				out.printf(", \"maxMicros\": %d}%s%n",
+						histogram.getMaxValue(), --remaining > 0 ? "," : "");
+			}
+			out.println("  }");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private double rate(Histogram histogram) {
+		if (this.measuredMillis == 0) {
+			return 0;
+		}
+		return histogram.getTotalCount() * 1000.0 / this.measuredMillis;
+	}
+
+	private String baseName() {
+		return "load-" + timestamp("yyyyMMdd-HHmmss");
+	}
+
+	private String timestamp(String pattern) {
+		return new SimpleDateFormat(pattern).format(this.finished);
+	}
+
+	private static PrintWriter open(File file) throws IOException {
+		return new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+				file), "UTF-8"));
+	}
+}
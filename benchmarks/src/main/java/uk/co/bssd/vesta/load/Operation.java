@@ -0,0 +1,10 @@
+package uk.co.bssd.vesta.load;
+
+public enum Operation {
+
+	SYNC, ASYNC, BROADCAST;
+
+	public String label() {
+		return name().toLowerCase();
+	}
+}
@@ -0,0 +1,68 @@
+package uk.co.bssd.vesta.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+// picks operations in proportion to their weights, parsed from a spec such
+// as "sync:70,async:20,broadcast:10"
+public class OperationMix {
+
+	private final Map<Operation, Integer> weights;
+	private final int totalWeight;
+	private final Random random;
+
+	public OperationMix(Map<Operation, Integer> weights) {
+		int total = 0;
+		for (Integer weight : weights.values()) {
+			if (weight < 0) {
+				throw new IllegalArgumentException(
+						"Operation weights cannot be negative");
+			}
+			total += weight;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException(
+					"At least one operation must have a positive weight");
+		}
+		this.weights = new EnumMap<Operation, Integer>(weights);
+		this.totalWeight = total;
+		this.random = new Random();
+	}
+
+	public static OperationMix parse(String spec) {
+		Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(
+				Operation.class);
+		for (String entry : spec.split(",")) {
+			String[] parts = entry.trim().split(":");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Invalid operation weight ["
+						+ entry + "], expected operation:weight");
+			}
+			weights.put(Operation.valueOf(parts[0].trim().toUpperCase()),
+					Integer.valueOf(parts[1].trim()));
+		}
+		return new OperationMix(weights);
+	}
+
+	public Operation next() {
+		int choice = this.random.nextInt(this.totalWeight);
+		for (Map.Entry<Operation, Integer> weight : this.weights.entrySet()) {
+			choice -= weight.getValue();
+			if (choice < 0) {
+				return weight.getKey();
+			}
+		}
+		throw new IllegalStateException("Weights changed whilst choosing");
+	}
+
+	public boolean includes(Operation operation) {
+		Integer weight = this.weights.get(operation);
+		return weight != null && weight > 0;
+	}
+
+	@Override
+	public String toString() {
+		return this.weights.toString();
+	}
+}
@@ -0,0 +1,26 @@
+package uk.co.bssd.vesta.load;
+
+import java.io.Serializable;
+
+// carries the time the operation was due to start, latency is measured from
+// then rather than from when it was actually sent
+public class Probe implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long intendedStartNanos;
+	private final byte[] payload;
+
+	public Probe(long intendedStartNanos, byte[] payload) {
+		this.intendedStartNanos = intendedStartNanos;
+		this.payload = payload;
+	}
+
+	public long intendedStartNanos() {
+		return this.intendedStartNanos;
+	}
+
+	public byte[] payload() {
+		return this.payload;
+	}
+}
@@ -1,36 +1,151 @@
 package uk.co.bssd.vesta;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 
+// completes when the last recipient's write does, counting outcomes as each
+// write finishes rather than polling every channel future
 public class ChannelFutureAdapter implements MessageFuture {
 
-	private final List<ChannelFuture> futures;
-	
+	private final int recipients;
+	private final AtomicInteger remaining;
+	private final AtomicInteger succeeded;
+	private final AtomicInteger failed;
+	private final AtomicInteger dropped;
+	private final AtomicInteger conflated;
+	private final CountDownLatch completion;
+
+	private List<MessageFutureListener> listeners;
+	private boolean notified;
+
 	public ChannelFutureAdapter(ChannelFuture... futures) {
 		this(Arrays.asList(futures));
 	}
 	
 	public ChannelFutureAdapter(List<ChannelFuture> futures) {
-		this.futures = futures;
+		this.recipients = futures.size();
+		this.remaining = new AtomicInteger(this.recipients);
+		this.succeeded = new AtomicInteger();
+		this.failed = new AtomicInteger();
+		this.dropped = new AtomicInteger();
+		this.conflated = new AtomicInteger();
+		this.completion = new CountDownLatch(1);
+		this.listeners = new ArrayList<MessageFutureListener>(1);
+
+		if (this.recipients == 0) {
+			complete();
+		}
+		ChannelFutureListener outcome = new OutcomeListener();
+		for (ChannelFuture future : futures) {
+			future.addListener(outcome);
+		}
 	}
 	
 	@Override
 	public void awaitUninterruptibly() {
-		for (ChannelFuture future : this.futures) {
-			future.awaitUninterruptibly();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				this.completion.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
+	@Override
+	public boolean await(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return this.completion.await(timeout, unit);
+	}
+
+	@Override
+	public void addListener(MessageFutureListener listener) {
+		synchronized (this) {
+			if (!this.notified) {
+				this.listeners.add(listener);
+				return;
+			}
+		}
+		listener.operationComplete(this);
+	}
+
+	@Override
+	public boolean isDone() {
+		return this.completion.getCount() == 0;
+	}
+
 	@Override
 	public boolean isSuccessful() {
-		for (ChannelFuture future : this.futures) {
-			if (!future.isSuccess()) {
-				return false;
+		return this.succeeded.get() == this.recipients;
+	}
+
+	@Override
+	public int recipientCount() {
+		return this.recipients;
+	}
+
+	@Override
+	public int succeededCount() {
+		return this.succeeded.get();
+	}
+
+	@Override
+	public int failedCount() {
+		return this.failed.get();
+	}
+
+	@Override
+	public int droppedCount() {
+		return this.dropped.get();
+	}
+
+	@Override
+	public int conflatedCount() {
+		return this.conflated.get();
+	}
+
+	private void complete() {
+		this.completion.countDown();
+		List<MessageFutureListener> toNotify;
+		synchronized (this) {
+			toNotify = this.listeners;
+			this.listeners = null;
+			this.notified = true;
+		}
+		for (MessageFutureListener listener : toNotify) {
+			listener.operationComplete(this);
+		}
+	}
+
+	private class OutcomeListener implements ChannelFutureListener {
+
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			if (future.isSuccess()) {
+				succeeded.incrementAndGet();
+			} else {
+				failed.incrementAndGet();
+				if (future.getCause() instanceof SlowConsumerException) {
+					dropped.incrementAndGet();
+				} else if (future.getCause() instanceof MessageConflatedException) {
+					conflated.incrementAndGet();
+				}
+			}
+			if (remaining.decrementAndGet() == 0) {
+				complete();
 			}
 		}
-		return true;
 	}
-}
\ No newline at end of file
+}
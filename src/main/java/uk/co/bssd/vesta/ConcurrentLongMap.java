@@ -0,0 +1,206 @@
+package uk.co.bssd.vesta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcurrentLongMap<V> {
+
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+	private static final int INITIAL_STRIPE_CAPACITY = 16;
+	private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+	private final Stripe<V>[] stripes;
+	private final int stripeShift;
+
+	public ConcurrentLongMap() {
+		this(DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	public ConcurrentLongMap(int concurrencyLevel) {
+		int stripeBits = 1;
+		while ((1 << stripeBits) < concurrencyLevel) {
+			stripeBits++;
+		}
+
+		this.stripes = newStripes(1 << stripeBits);
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new Stripe<V>(INITIAL_STRIPE_CAPACITY);
+		}
+		this.stripeShift = 64 - stripeBits;
+	}
+
+	public V get(long key) {
+		long hash = hash(key);
+		return stripeFor(hash).get(key, (int) hash);
+	}
+
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not supported");
+		}
+		long hash = hash(key);
+		return stripeFor(hash).put(key, (int) hash, value);
+	}
+
+	public V remove(long key) {
+		long hash = hash(key);
+		return stripeFor(hash).remove(key, (int) hash, null);
+	}
+
+	public boolean remove(long key, V value) {
+		long hash = hash(key);
+		return stripeFor(hash).remove(key, (int) hash, value) != null;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe<V> stripe : this.stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	public List<V> values() {
+		List<V> values = new ArrayList<V>();
+		for (Stripe<V> stripe : this.stripes) {
+			stripe.copyValuesTo(values);
+		}
+		return values;
+	}
+
+	private Stripe<V> stripeFor(long hash) {
+		return this.stripes[(int) (hash >>> this.stripeShift)];
+	}
+
+	private static long hash(long key) {
+		long hash = key * GOLDEN_RATIO;
+		return hash ^ (hash >>> 32);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Stripe<V>[] newStripes(int length) {
+		return (Stripe<V>[]) new Stripe<?>[length];
+	}
+
+	private static final class Stripe<V> {
+
+		private long[] keys;
+		private Object[] values;
+		private int size;
+
+		public Stripe(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new Object[capacity];
+		}
+
+		@SuppressWarnings("unchecked")
+		public synchronized V get(long key, int hash) {
+			int mask = this.keys.length - 1;
+			for (int i = hash & mask; this.values[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i] == key) {
+					return (V) this.values[i];
+				}
+			}
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		public synchronized V put(long key, int hash, V value) {
+			int mask = this.keys.length - 1;
+			int i = hash & mask;
+			for (; this.values[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i] == key) {
+					V previous = (V) this.values[i];
+					this.values[i] = value;
+					return previous;
+				}
+			}
+
+			this.keys[i] = key;
+			this.values[i] = value;
+			this.size++;
+
+			if (this.size * 2 > this.keys.length) {
+				resize();
+			}
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		public synchronized V remove(long key, int hash, V expected) {
+			int mask = this.keys.length - 1;
+			for (int i = hash & mask; this.values[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i] == key) {
+					V current = (V) this.values[i];
+					if (expected != null && expected != current) {
+						return null;
+					}
+					deleteAt(i);
+					return current;
+				}
+			}
+			return null;
+		}
+
+		public synchronized int size() {
+			return this.size;
+		}
+
+		@SuppressWarnings("unchecked")
+		public synchronized void copyValuesTo(List<V> target) {
+			for (Object value : this.values) {
+				if (value != null) {
+					target.add((V) value);
+				}
+			}
+		}
+
+		// backward shift deletion keeps probe sequences intact without
+		// leaving tombstones behind
+		private void deleteAt(int index) {
+			int mask = this.keys.length - 1;
+			int hole = index;
+			int next = index;
+
+			while (true) {
+				next = (next + 1) & mask;
+				if (this.values[next] == null) {
+					break;
+				}
+
+				int home = (int) hash(this.keys[next]) & mask;
+				boolean reachable = hole <= next ? (hole < home && home <= next)
+						: (hole < home || home <= next);
+				if (!reachable) {
+					this.keys[hole] = this.keys[next];
+					this.values[hole] = this.values[next];
+					hole = next;
+				}
+			}
+
+			this.keys[hole] = 0;
+			this.values[hole] = null;
+			this.size--;
+		}
+
+		private void resize() {
+			long[] oldKeys = this.keys;
+			Object[] oldValues = this.values;
+
+			this.keys = new long[oldKeys.length * 2];
+			this.values = new Object[oldValues.length * 2];
+			int mask = this.keys.length - 1;
+
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldValues[j] != null) {
+					int i = (int) hash(oldKeys[j]) & mask;
+					while (this.values[i] != null) {
+						i = (i + 1) & mask;
+					}
+					this.keys[i] = oldKeys[j];
+					this.values[i] = oldValues[j];
+				}
+			}
+		}
+	}
+}
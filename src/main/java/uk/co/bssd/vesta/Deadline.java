@@ -0,0 +1,50 @@
+package uk.co.bssd.vesta;
+
+import java.util.concurrent.TimeUnit;
+
+// a point on this process's monotonic clock by which a request must be
+// done. deadlines cross the wire as a relative timeout because the two
+// sides' clocks cannot be compared
+public class Deadline {
+
+	private static final Deadline NONE = new Deadline(0, false);
+
+	private final long deadlineNanos;
+	private final boolean bounded;
+
+	private Deadline(long deadlineNanos, boolean bounded) {
+		this.deadlineNanos = deadlineNanos;
+		this.bounded = bounded;
+	}
+
+	public static Deadline none() {
+		return NONE;
+	}
+
+	public static Deadline after(long timeout, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(timeout), true);
+	}
+
+	public boolean isBounded() {
+		return this.bounded;
+	}
+
+	public boolean isExpired() {
+		return this.bounded && this.deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	// never negative, Long.MAX_VALUE without a deadline
+	public long remainingNanos() {
+		if (!this.bounded) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, this.deadlineNanos - System.nanoTime());
+	}
+
+	public long remainingMillis() {
+		if (!this.bounded) {
+			return Long.MAX_VALUE;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+	}
+}
@@ -0,0 +1,6 @@
+package uk.co.bssd.vesta;
+
+public enum FlushReason {
+
+	MESSAGE_COUNT, BYTE_COUNT, LINGER, CHANNEL_CLOSING;
+}
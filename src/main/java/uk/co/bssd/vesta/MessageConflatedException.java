@@ -0,0 +1,12 @@
+package uk.co.bssd.vesta;
+
+// a queued message replaced by a newer one with the same conflation key
+// before it could be written, so it was never delivered
+public class MessageConflatedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public MessageConflatedException(String message) {
+		super(message);
+	}
+}
@@ -1,8 +1,31 @@
 package uk.co.bssd.vesta;
 
+import java.util.concurrent.TimeUnit;
+
 public interface MessageFuture {
 
 	void awaitUninterruptibly();
-	
+
+	boolean await(long timeout, TimeUnit unit) throws InterruptedException;
+
+	// called once every recipient's write has completed, straight away if
+	// that has already happened
+	void addListener(MessageFutureListener listener);
+
+	boolean isDone();
+
 	boolean isSuccessful();
-}
\ No newline at end of file
+
+	int recipientCount();
+
+	int succeededCount();
+
+	int failedCount();
+
+	// recipients whose copy was dropped by the slow consumer policy
+	int droppedCount();
+
+	// recipients whose copy was replaced by a newer message on a conflated
+	// topic, counted as failed as it was never delivered
+	int conflatedCount();
+}
@@ -0,0 +1,6 @@
+package uk.co.bssd.vesta;
+
+public interface MessageFutureListener {
+
+	void operationComplete(MessageFuture future);
+}
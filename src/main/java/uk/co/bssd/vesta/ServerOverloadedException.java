@@ -0,0 +1,10 @@
+package uk.co.bssd.vesta;
+
+public class ServerOverloadedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ServerOverloadedException(String message) {
+		super(message);
+	}
+}
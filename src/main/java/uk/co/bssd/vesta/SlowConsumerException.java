@@ -0,0 +1,10 @@
+package uk.co.bssd.vesta;
+
+public class SlowConsumerException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SlowConsumerException(String message) {
+		super(message);
+	}
+}
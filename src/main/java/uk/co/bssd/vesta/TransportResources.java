@@ -0,0 +1,169 @@
+package uk.co.bssd.vesta;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorker;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.channel.socket.nio.ShareableWorkerPool;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+// boss threads, a fixed set of I/O workers, timers and a buffer factory
+// shared by every client and server built on them. each user retains the
+// resources whilst running and releases them when stopped, the last release
+// shuts them down. whoever constructs an instance holds its first reference
+public class TransportResources {
+
+	private static final int DEFAULT_WORKER_COUNT = Runtime.getRuntime()
+			.availableProcessors() * 2;
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+	// fine enough for millisecond write batching lingers, the default tick
+	// of 100ms would hold every lingering batch back that long
+	private static final long LINGER_TIMER_TICK_MILLIS = 1;
+
+	private static TransportResources shared;
+
+	private final int workerCount;
+	private final ChannelBufferFactory bufferFactory;
+	private final ExecutorService bossExecutor;
+	private final NioWorkerPool workerPool;
+	private final Timer timer;
+
+	private Timer lingerTimer;
+	private ChannelFactory clientChannelFactory;
+	private ChannelFactory serverChannelFactory;
+	private int references;
+
+	public TransportResources(int workerCount) {
+		this(workerCount, HeapChannelBufferFactory.getInstance());
+	}
+
+	public TransportResources(int workerCount,
+			ChannelBufferFactory bufferFactory) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException(
+					"Worker count must be positive");
+		}
+		this.workerCount = workerCount;
+		this.bufferFactory = bufferFactory;
+		this.bossExecutor = Executors.newCachedThreadPool();
+		this.workerPool = new NioWorkerPool(Executors.newCachedThreadPool(),
+				workerCount, false);
+		this.timer = new HashedWheelTimer();
+		this.references = 1;
+	}
+
+	// the process wide resources used by clients and servers not configured
+	// with their own, created on first use and shut down with the last user
+	public static synchronized TransportResources acquireShared() {
+		if (shared == null || !shared.tryRetain()) {
+			shared = new TransportResources(DEFAULT_WORKER_COUNT);
+		}
+		return shared;
+	}
+
+	// the configured resources if given, otherwise the shared ones
+	public static TransportResources acquire(TransportResources configured) {
+		if (configured == null) {
+			return acquireShared();
+		}
+		return configured.retain();
+	}
+
+	public TransportResources retain() {
+		if (!tryRetain()) {
+			throw new IllegalStateException(
+					"Transport resources have been shut down");
+		}
+		return this;
+	}
+
+	public void release() {
+		synchronized (this) {
+			if (this.references == 0) {
+				throw new IllegalStateException(
+						"Transport resources have already been released");
+			}
+			this.references--;
+			if (this.references > 0) {
+				return;
+			}
+		}
+		shutdown();
+	}
+
+	public synchronized ChannelFactory clientChannelFactory() {
+		if (this.clientChannelFactory == null) {
+			this.clientChannelFactory = new NioClientSocketChannelFactory(
+					this.bossExecutor, 1, sharedWorkers());
+		}
+		return this.clientChannelFactory;
+	}
+
+	public synchronized ChannelFactory serverChannelFactory() {
+		if (this.serverChannelFactory == null) {
+			this.serverChannelFactory = new NioServerSocketChannelFactory(
+					this.bossExecutor, sharedWorkers());
+		}
+		return this.serverChannelFactory;
+	}
+
+	public Timer timer() {
+		return this.timer;
+	}
+
+	// ticks every millisecond, so it is only started once something with
+	// a write batching linger asks for it
+	public synchronized Timer lingerTimer() {
+		if (this.lingerTimer == null) {
+			this.lingerTimer = new HashedWheelTimer(LINGER_TIMER_TICK_MILLIS,
+					TimeUnit.MILLISECONDS);
+		}
+		return this.lingerTimer;
+	}
+
+	public ChannelBufferFactory bufferFactory() {
+		return this.bufferFactory;
+	}
+
+	public int workerCount() {
+		return this.workerCount;
+	}
+
+	private synchronized boolean tryRetain() {
+		if (this.references == 0) {
+			return false;
+		}
+		this.references++;
+		return true;
+	}
+
+	// the channel factories must not shut the workers down themselves
+	private ShareableWorkerPool<NioWorker> sharedWorkers() {
+		return new ShareableWorkerPool<NioWorker>(this.workerPool);
+	}
+
+	private void shutdown() {
+		this.timer.stop();
+		synchronized (this) {
+			if (this.lingerTimer != null) {
+				this.lingerTimer.stop();
+			}
+		}
+		this.workerPool.releaseExternalResources();
+		this.bossExecutor.shutdownNow();
+		try {
+			this.bossExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS,
+					TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
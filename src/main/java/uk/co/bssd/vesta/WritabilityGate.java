@@ -0,0 +1,60 @@
+package uk.co.bssd.vesta;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+public class WritabilityGate extends SimpleChannelUpstreamHandler {
+
+	private final Object monitor;
+
+	public WritabilityGate() {
+		this.monitor = new Object();
+	}
+
+	// false if the channel is still over its high water mark once the
+	// timeout has passed, a closed channel is left for the write to fail
+	public boolean awaitWritable(Channel channel, long timeoutMillis)
+			throws InterruptedException {
+		if (channel.isWritable()) {
+			return true;
+		}
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		synchronized (this.monitor) {
+			while (!channel.isWritable() && channel.isOpen()) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this.monitor, remaining);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void channelInterestChanged(ChannelHandlerContext ctx,
+			ChannelStateEvent e) throws Exception {
+		if (e.getChannel().isWritable()) {
+			signal();
+		}
+		super.channelInterestChanged(ctx, e);
+	}
+
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+			throws Exception {
+		signal();
+		super.channelClosed(ctx, e);
+	}
+
+	private void signal() {
+		synchronized (this.monitor) {
+			this.monitor.notifyAll();
+		}
+	}
+}
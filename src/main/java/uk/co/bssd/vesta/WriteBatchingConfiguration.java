@@ -0,0 +1,35 @@
+package uk.co.bssd.vesta;
+
+public class WriteBatchingConfiguration {
+
+	private final int maxMessages;
+	private final int maxBytes;
+	private final long lingerMillis;
+
+	public WriteBatchingConfiguration(int maxMessages, int maxBytes,
+			long lingerMillis) {
+		if (maxMessages < 1 || maxBytes < 1) {
+			throw new IllegalArgumentException(
+					"Batch message and byte thresholds must be positive");
+		}
+		if (lingerMillis < 1) {
+			throw new IllegalArgumentException(
+					"Batch linger must be at least one millisecond");
+		}
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+		this.lingerMillis = lingerMillis;
+	}
+
+	public int maxMessages() {
+		return this.maxMessages;
+	}
+
+	public int maxBytes() {
+		return this.maxBytes;
+	}
+
+	public long lingerMillis() {
+		return this.lingerMillis;
+	}
+}
@@ -0,0 +1,146 @@
+package uk.co.bssd.vesta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+public class WriteBatchingHandler extends SimpleChannelDownstreamHandler {
+
+	private final WriteBatchingConfiguration configuration;
+	private final WriteBatchingStatistics statistics;
+	private final Timer timer;
+
+	private final List<MessageEvent> pending;
+	private int pendingBytes;
+	private Timeout lingerTimeout;
+
+	public WriteBatchingHandler(WriteBatchingConfiguration configuration,
+			WriteBatchingStatistics statistics, Timer timer) {
+		this.configuration = configuration;
+		this.statistics = statistics;
+		this.timer = timer;
+		this.pending = new ArrayList<MessageEvent>();
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception {
+		if (!(e.getMessage() instanceof ChannelBuffer)) {
+			ctx.sendDownstream(e);
+			return;
+		}
+
+		synchronized (this) {
+			this.pending.add(e);
+			this.pendingBytes += ((ChannelBuffer) e.getMessage())
+					.readableBytes();
+
+			if (this.pending.size() >= this.configuration.maxMessages()) {
+				flush(ctx, FlushReason.MESSAGE_COUNT);
+			} else if (this.pendingBytes >= this.configuration.maxBytes()) {
+				flush(ctx, FlushReason.BYTE_COUNT);
+			} else if (this.lingerTimeout == null) {
+				this.lingerTimeout = this.timer.newTimeout(new LingerTask(ctx),
+						this.configuration.lingerMillis(),
+						TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	@Override
+	public void closeRequested(ChannelHandlerContext ctx, ChannelStateEvent e)
+			throws Exception {
+		synchronized (this) {
+			flush(ctx, FlushReason.CHANNEL_CLOSING);
+		}
+		super.closeRequested(ctx, e);
+	}
+
+	@Override
+	public void disconnectRequested(ChannelHandlerContext ctx,
+			ChannelStateEvent e) throws Exception {
+		synchronized (this) {
+			flush(ctx, FlushReason.CHANNEL_CLOSING);
+		}
+		super.disconnectRequested(ctx, e);
+	}
+
+	// callers hold the handler's monitor so batches reach the socket in the
+	// order their messages were written
+	private void flush(ChannelHandlerContext ctx, FlushReason reason) {
+		if (this.lingerTimeout != null) {
+			this.lingerTimeout.cancel();
+			this.lingerTimeout = null;
+		}
+
+		int batchMessages = this.pending.size();
+		if (batchMessages == 0) {
+			return;
+		}
+
+		this.statistics.onFlush(reason, batchMessages, this.pendingBytes);
+
+		if (batchMessages == 1) {
+			ctx.sendDownstream(this.pending.get(0));
+		} else {
+			ChannelBuffer[] buffers = new ChannelBuffer[batchMessages];
+			final ChannelFuture[] futures = new ChannelFuture[batchMessages];
+			for (int i = 0; i < batchMessages; i++) {
+				MessageEvent event = this.pending.get(i);
+				buffers[i] = (ChannelBuffer) event.getMessage();
+				futures[i] = event.getFuture();
+			}
+
+			ChannelFuture batchFuture = Channels.future(ctx.getChannel());
+			batchFuture.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) {
+					for (ChannelFuture messageFuture : futures) {
+						if (future.isSuccess()) {
+							messageFuture.setSuccess();
+						} else {
+							messageFuture.setFailure(future.getCause());
+						}
+					}
+				}
+			});
+			Channels.write(ctx, batchFuture,
+					ChannelBuffers.wrappedBuffer(buffers));
+		}
+
+		this.pending.clear();
+		this.pendingBytes = 0;
+	}
+
+	private class LingerTask implements TimerTask {
+
+		private final ChannelHandlerContext ctx;
+
+		public LingerTask(ChannelHandlerContext ctx) {
+			this.ctx = ctx;
+		}
+
+		@Override
+		public void run(Timeout timeout) {
+			synchronized (WriteBatchingHandler.this) {
+				if (lingerTimeout == timeout) {
+					lingerTimeout = null;
+					flush(this.ctx, FlushReason.LINGER);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package uk.co.bssd.vesta;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class WriteBatchingStatistics {
+
+	private final AtomicLong batches;
+	private final AtomicLong messages;
+	private final AtomicLong bytes;
+	private final Map<FlushReason, AtomicLong> flushes;
+
+	public WriteBatchingStatistics() {
+		this.batches = new AtomicLong();
+		this.messages = new AtomicLong();
+		this.bytes = new AtomicLong();
+		this.flushes = new EnumMap<FlushReason, AtomicLong>(FlushReason.class);
+		for (FlushReason reason : FlushReason.values()) {
+			this.flushes.put(reason, new AtomicLong());
+		}
+	}
+
+	public void onFlush(FlushReason reason, int batchMessages, int batchBytes) {
+		this.batches.incrementAndGet();
+		this.messages.addAndGet(batchMessages);
+		this.bytes.addAndGet(batchBytes);
+		this.flushes.get(reason).incrementAndGet();
+	}
+
+	public long batches() {
+		return this.batches.get();
+	}
+
+	public long messages() {
+		return this.messages.get();
+	}
+
+	public long bytes() {
+		return this.bytes.get();
+	}
+
+	public long flushes(FlushReason reason) {
+		return this.flushes.get(reason).get();
+	}
+
+	public double averageBatchSize() {
+		long batchCount = batches();
+		if (batchCount == 0) {
+			return 0;
+		}
+		return (double) messages() / batchCount;
+	}
+}
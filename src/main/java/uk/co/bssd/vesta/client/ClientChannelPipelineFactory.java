@@ -1,45 +1,78 @@
 package uk.co.bssd.vesta.client;
 
+import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
-import org.jboss.netty.handler.codec.serialization.ClassResolvers;
-import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
-import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
+import org.jboss.netty.util.Timer;
 
 import uk.co.bssd.vesta.DisconnectEventHandler;
 import uk.co.bssd.vesta.DisconnectListeners;
+import uk.co.bssd.vesta.WritabilityGate;
+import uk.co.bssd.vesta.WriteBatchingHandler;
+import uk.co.bssd.vesta.WriteBatchingStatistics;
+import uk.co.bssd.vesta.codec.CodecEncoder;
+import uk.co.bssd.vesta.trace.ReadTimestampHandler;
 
 public class ClientChannelPipelineFactory implements ChannelPipelineFactory {
 
 	private final SynchronousResponseHandler synchronousResponseHandler;
 	private final AsynchronousResponseHandler asynchronousResponseHandler;
+	private final ChannelHandler connectionLossHandler;
 	private final DisconnectEventHandler disconnectEventHandler;
+	private final WritabilityGate writabilityGate;
+	private final RpcClientConfiguration configuration;
+	private final WriteBatchingStatistics writeBatchingStatistics;
+	private final Timer timer;
+	private final CodecEncoder encoder;
 
 	public ClientChannelPipelineFactory(
 			SynchronousMessageCollector synchronousMessageCollector,
 			AsynchronousMessageCollector asynchronousMessageCollector,
-			DisconnectListeners disconnectListeners) {
+			ChannelHandler connectionLossHandler,
+			DisconnectListeners disconnectListeners,
+			WritabilityGate writabilityGate,
+			RpcClientConfiguration configuration,
+			WriteBatchingStatistics writeBatchingStatistics, Timer timer) {
 		this.synchronousResponseHandler = new SynchronousResponseHandler(
-				synchronousMessageCollector);
+				synchronousMessageCollector, configuration.isTracingEnabled());
 		this.asynchronousResponseHandler = new AsynchronousResponseHandler(
 				asynchronousMessageCollector);
+		this.connectionLossHandler = connectionLossHandler;
 		this.disconnectEventHandler = new DisconnectEventHandler(
 				disconnectListeners);
+		this.writabilityGate = writabilityGate;
+		this.configuration = configuration;
+		this.writeBatchingStatistics = writeBatchingStatistics;
+		this.timer = timer;
+		this.encoder = new CodecEncoder(configuration.codec(),
+				configuration.tracer());
 	}
 
 	@Override
 	public ChannelPipeline getPipeline() throws Exception {
 		ChannelPipeline pipeline = Channels.pipeline();
 
-		pipeline.addLast("objectDecoder",
-				new ObjectDecoder(ClassResolvers.cacheDisabled(null)));
-		pipeline.addLast("objectEncoder", new ObjectEncoder());
+		if (this.configuration.isTracingEnabled()) {
+			pipeline.addLast(ReadTimestampHandler.NAME,
+					new ReadTimestampHandler());
+		}
+		if (this.configuration.isWriteBatchingEnabled()) {
+			pipeline.addLast("writeBatchingHandler", new WriteBatchingHandler(
+					this.configuration.writeBatching(),
+					this.writeBatchingStatistics, this.timer));
+		}
+		pipeline.addLast("decoder", this.configuration.codec().newDecoder());
+		pipeline.addLast("encoder", this.encoder);
 		pipeline.addLast("synchronousResponseHandler",
 				this.synchronousResponseHandler);
 		pipeline.addLast("asynchronousMessageCollector",
 				this.asynchronousResponseHandler);
+		// ahead of the user's listeners, so the client has reacted to the
+		// disconnect by the time they hear of it
+		pipeline.addLast("connectionLossHandler", this.connectionLossHandler);
 		pipeline.addLast("disconnectEventHandler", this.disconnectEventHandler);
+		pipeline.addLast("writabilityGate", this.writabilityGate);
 
 		return pipeline;
 	}
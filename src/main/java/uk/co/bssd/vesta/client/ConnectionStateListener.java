@@ -0,0 +1,9 @@
+package uk.co.bssd.vesta.client;
+
+// tells a pool which of its connections can currently be sent on
+interface ConnectionStateListener {
+
+	void onConnected(RpcClient client);
+
+	void onDisconnected(RpcClient client);
+}
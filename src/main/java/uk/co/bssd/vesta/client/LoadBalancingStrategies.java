@@ -0,0 +1,75 @@
+package uk.co.bssd.vesta.client;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class LoadBalancingStrategies {
+
+	private LoadBalancingStrategies() {
+	}
+
+	public static LoadBalancingStrategy roundRobin() {
+		return new RoundRobin();
+	}
+
+	// scans every candidate, best suited to small pools
+	public static LoadBalancingStrategy leastOutstanding() {
+		return new LeastOutstanding();
+	}
+
+	// compares two random candidates, close to least outstanding at a
+	// constant cost however large the pool
+	public static LoadBalancingStrategy powerOfTwoChoices() {
+		return new PowerOfTwoChoices();
+	}
+
+	private static class RoundRobin implements LoadBalancingStrategy {
+
+		private final AtomicInteger next = new AtomicInteger();
+
+		@Override
+		public RpcClient select(List<RpcClient> candidates) {
+			int index = (this.next.getAndIncrement() & Integer.MAX_VALUE)
+					% candidates.size();
+			return candidates.get(index);
+		}
+	}
+
+	private static class LeastOutstanding implements LoadBalancingStrategy {
+
+		@Override
+		public RpcClient select(List<RpcClient> candidates) {
+			RpcClient selected = candidates.get(0);
+			for (int i = 1; i < candidates.size(); i++) {
+				RpcClient candidate = candidates.get(i);
+				if (candidate.outstandingRequests() < selected
+						.outstandingRequests()) {
+					selected = candidate;
+				}
+			}
+			return selected;
+		}
+	}
+
+	private static class PowerOfTwoChoices implements LoadBalancingStrategy {
+
+		private final Random random = new Random();
+
+		@Override
+		public RpcClient select(List<RpcClient> candidates) {
+			int size = candidates.size();
+			if (size == 1) {
+				return candidates.get(0);
+			}
+			int first = this.random.nextInt(size);
+			int second = this.random.nextInt(size - 1);
+			if (second >= first) {
+				second++;
+			}
+			RpcClient a = candidates.get(first);
+			RpcClient b = candidates.get(second);
+			return a.outstandingRequests() <= b.outstandingRequests() ? a : b;
+		}
+	}
+}
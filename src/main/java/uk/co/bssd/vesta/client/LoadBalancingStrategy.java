@@ -0,0 +1,9 @@
+package uk.co.bssd.vesta.client;
+
+import java.util.List;
+
+public interface LoadBalancingStrategy {
+
+	// candidates are the pool's currently connected clients, never empty
+	RpcClient select(List<RpcClient> candidates);
+}
@@ -7,4 +7,12 @@ public class MessageSendFailedException extends RuntimeException {
 	public MessageSendFailedException() {
 		super();
 	}
+
+	public MessageSendFailedException(String message) {
+		super(message);
+	}
+
+	public MessageSendFailedException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package uk.co.bssd.vesta.client;
+
+import java.io.Serializable;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+// keeps a number of connections to each server and spreads requests over
+// the connected ones. each connection tracks its own pending requests, so
+// losing one fails only the requests sent on it, and exports its own
+// metrics under a connection=<n> key property. a connection whose server
+// is down, at start or later, reconnects in the background
+public class PooledRpcClient {
+
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(PooledRpcClient.class);
+
+	private static final String CONNECTION_KEY_PROPERTY = "connection";
+
+	// used unless the configuration has its own. nothing is buffered, as
+	// sends go to the connections which are up
+	private static final ReconnectConfiguration DEFAULT_RECONNECT = new ReconnectConfiguration(
+			100, 5000, 0);
+
+	private final RpcClientConfiguration configuration;
+	private final int connectionsPerServer;
+	private final LoadBalancingStrategy strategy;
+	private final List<RpcClient> connections;
+	private final ConnectionStateListener liveConnections;
+
+	// replaced rather than changed, so a send reads it without locking or
+	// copying
+	private volatile List<RpcClient> live;
+
+	public PooledRpcClient(int connectionsPerServer,
+			LoadBalancingStrategy strategy) {
+		this(RpcClientConfiguration.defaults(), connectionsPerServer, strategy);
+	}
+
+	public PooledRpcClient(RpcClientConfiguration configuration,
+			int connectionsPerServer, LoadBalancingStrategy strategy) {
+		if (connectionsPerServer < 1) {
+			throw new IllegalArgumentException(
+					"Connections per server must be positive");
+		}
+		this.configuration = configuration
+				.withDefaultReconnect(DEFAULT_RECONNECT);
+		this.connectionsPerServer = connectionsPerServer;
+		this.strategy = strategy;
+		this.connections = new CopyOnWriteArrayList<RpcClient>();
+		this.liveConnections = new LiveConnections();
+		this.live = Collections.emptyList();
+	}
+
+	public synchronized void start(List<? extends SocketAddress> servers,
+			long connectionTimeoutMillis) {
+		if (!this.connections.isEmpty()) {
+			throw new IllegalStateException("Client is already running");
+		}
+		List<RpcClient> started = new ArrayList<RpcClient>();
+		try {
+			for (SocketAddress server : servers) {
+				for (int i = 0; i < this.connectionsPerServer; i++) {
+					RpcClient connection = new RpcClient(this.configuration,
+							this.configuration.metrics().withJmxKeyProperty(
+									CONNECTION_KEY_PROPERTY,
+									String.valueOf(started.size())),
+							this.liveConnections);
+					started.add(connection);
+					start(connection, server, connectionTimeoutMillis);
+				}
+			}
+		} catch (RuntimeException e) {
+			stop(started);
+			throw e;
+		}
+		if (this.live.isEmpty()) {
+			stop(started);
+			throw new IllegalStateException(
+					"Could not connect to any server within the timeout");
+		}
+		this.connections.addAll(started);
+	}
+
+	public synchronized void stop() {
+		stop(this.connections);
+		this.connections.clear();
+		this.live = Collections.emptyList();
+	}
+
+	public void sendAsync(Serializable message) {
+		select().sendAsync(message);
+	}
+
+	public void sendAsync(Serializable message,
+			SendFailureListener failureListener) {
+		select().sendAsync(message, failureListener);
+	}
+
+	public <T> T sendSync(Serializable message, Class<T> responseClass,
+			long timeoutMillis) {
+		return select().sendSync(message, responseClass, timeoutMillis);
+	}
+
+	public <T> ListenableFuture<T> sendRequest(Serializable message,
+			Class<T> responseClass, long timeoutMillis) {
+		return select().sendRequest(message, responseClass, timeoutMillis);
+	}
+
+	public int connectedCount() {
+		return this.live.size();
+	}
+
+	public int outstandingRequests() {
+		int outstanding = 0;
+		for (RpcClient connection : this.connections) {
+			outstanding += connection.outstandingRequests();
+		}
+		return outstanding;
+	}
+
+	private RpcClient select() {
+		List<RpcClient> candidates = this.live;
+		if (candidates.isEmpty()) {
+			throw new MessageSendFailedException(
+					"No connection to any server is available");
+		}
+		return this.strategy.select(candidates);
+	}
+
+	private static void start(RpcClient connection, SocketAddress server,
+			long connectionTimeoutMillis) {
+		try {
+			connection.start(server, connectionTimeoutMillis);
+		} catch (IllegalStateException e) {
+			logger.warn("Could not connect to [" + server
+					+ "], will keep trying in the background", e);
+			connection.startConnecting(server);
+		}
+	}
+
+	private static void stop(List<RpcClient> connections) {
+		for (RpcClient connection : connections) {
+			connection.stop();
+		}
+	}
+
+	// a connection's state changes on its I/O or timer thread, so this
+	// locks only the live list and never the pool
+	private class LiveConnections implements ConnectionStateListener {
+
+		@Override
+		public synchronized void onConnected(RpcClient client) {
+			if (!live.contains(client)) {
+				List<RpcClient> updated = new ArrayList<RpcClient>(live);
+				updated.add(client);
+				live = Collections.unmodifiableList(updated);
+			}
+		}
+
+		@Override
+		public synchronized void onDisconnected(RpcClient client) {
+			if (live.contains(client)) {
+				List<RpcClient> updated = new ArrayList<RpcClient>(live);
+				updated.remove(client);
+				live = Collections.unmodifiableList(updated);
+			}
+		}
+	}
+}
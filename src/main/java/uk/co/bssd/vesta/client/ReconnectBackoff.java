@@ -0,0 +1,31 @@
+package uk.co.bssd.vesta.client;
+
+import java.util.Random;
+
+// exponential backoff with full jitter, each delay is drawn uniformly up to
+// the current ceiling so clients dropped together do not return together
+class ReconnectBackoff {
+
+	private final long initialMillis;
+	private final long maxMillis;
+	private final Random random;
+
+	private long ceilingMillis;
+
+	public ReconnectBackoff(ReconnectConfiguration configuration) {
+		this.initialMillis = configuration.initialBackoffMillis();
+		this.maxMillis = configuration.maxBackoffMillis();
+		this.random = new Random();
+		this.ceilingMillis = this.initialMillis;
+	}
+
+	public synchronized long nextDelayMillis() {
+		long delay = 1 + (long) (this.random.nextDouble() * this.ceilingMillis);
+		this.ceilingMillis = Math.min(this.maxMillis, this.ceilingMillis * 2);
+		return delay;
+	}
+
+	public synchronized void reset() {
+		this.ceilingMillis = this.initialMillis;
+	}
+}
@@ -0,0 +1,41 @@
+package uk.co.bssd.vesta.client;
+
+public class ReconnectConfiguration {
+
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private final int maxBufferedMessages;
+
+	public ReconnectConfiguration(long initialBackoffMillis,
+			long maxBackoffMillis, int maxBufferedMessages) {
+		if (initialBackoffMillis < 1) {
+			throw new IllegalArgumentException(
+					"Initial backoff must be at least one millisecond");
+		}
+		if (maxBackoffMillis < initialBackoffMillis) {
+			throw new IllegalArgumentException(String.format(
+					"Max backoff [%d] cannot be less than initial backoff [%d]",
+					maxBackoffMillis, initialBackoffMillis));
+		}
+		if (maxBufferedMessages < 0) {
+			throw new IllegalArgumentException(
+					"Buffered message limit cannot be negative");
+		}
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+		this.maxBufferedMessages = maxBufferedMessages;
+	}
+
+	public long initialBackoffMillis() {
+		return this.initialBackoffMillis;
+	}
+
+	public long maxBackoffMillis() {
+		return this.maxBackoffMillis;
+	}
+
+	// asynchronous sends held whilst disconnected, beyond this they fail
+	public int maxBufferedMessages() {
+		return this.maxBufferedMessages;
+	}
+}
@@ -0,0 +1,74 @@
+package uk.co.bssd.vesta.client;
+
+import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.trace.Trace;
+
+import com.google.common.util.concurrent.AbstractFuture;
+
+public class ResponseFuture<T> extends AbstractFuture<T> {
+
+	private final long correlationId;
+	private final Trace trace;
+	private final Class<T> responseType;
+	private volatile boolean timedOut;
+
+	public ResponseFuture(long correlationId) {
+		this(correlationId, null);
+	}
+
+	public ResponseFuture(long correlationId, Trace trace) {
+		this(correlationId, trace, null);
+	}
+
+	// a response payload that is not of the given type fails the future
+	public ResponseFuture(long correlationId, Trace trace,
+			Class<T> responseType) {
+		this.correlationId = correlationId;
+		this.trace = trace;
+		this.responseType = responseType;
+	}
+
+	public long correlationId() {
+		return this.correlationId;
+	}
+
+	// null unless the request is being traced
+	public Trace trace() {
+		return this.trace;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean complete(SynchronousResponse response) {
+		if (response.success()) {
+			Object payload = response.payload();
+			if (this.responseType != null && payload != null
+					&& !this.responseType.isInstance(payload)) {
+				return setException(new ClassCastException(String.format(
+						"Expected response of type [%s] but received [%s]",
+						this.responseType.getName(), payload.getClass()
+								.getName())));
+			}
+			return set((T) payload);
+		}
+		return setException((Throwable) response.payload());
+	}
+
+	public boolean fail(Throwable cause) {
+		return setException(cause);
+	}
+
+	// set before the future completes, so its listeners can tell a timeout
+	// from any other failure
+	public boolean timeOut(MessageTimeoutException cause) {
+		this.timedOut = true;
+		if (setException(cause)) {
+			return true;
+		}
+		this.timedOut = false;
+		return false;
+	}
+
+	public boolean isTimedOut() {
+		return this.timedOut;
+	}
+}
@@ -0,0 +1,30 @@
+package uk.co.bssd.vesta.client;
+
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
+import uk.co.bssd.vesta.metrics.StripedCounter;
+
+public class ResponseTimeoutTask implements TimerTask {
+
+	private final ResponseFuture<?> future;
+	private final long timeoutMillis;
+	private final StripedCounter timedOut;
+
+	public ResponseTimeoutTask(ResponseFuture<?> future, long timeoutMillis,
+			StripedCounter timedOut) {
+		this.future = future;
+		this.timeoutMillis = timeoutMillis;
+		this.timedOut = timedOut;
+	}
+
+	@Override
+	public void run(Timeout timeout) {
+		boolean failed = this.future.timeOut(new MessageTimeoutException(String.format(
+				"Timed out after [%d] ms waiting for response with correlation id [%d]",
+				this.timeoutMillis, this.future.correlationId())));
+		if (failed) {
+			this.timedOut.increment();
+		}
+	}
+}
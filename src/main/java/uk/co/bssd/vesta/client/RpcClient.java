@@ -3,92 +3,347 @@ package uk.co.bssd.vesta.client;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.util.concurrent.Executors;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipelineFactory;
-import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
 
 import uk.co.bssd.vesta.DisconnectListener;
 import uk.co.bssd.vesta.DisconnectListeners;
+import uk.co.bssd.vesta.TransportResources;
+import uk.co.bssd.vesta.WritabilityGate;
+import uk.co.bssd.vesta.WriteBatchingStatistics;
 import uk.co.bssd.vesta.message.AsynchronousRequest;
+import uk.co.bssd.vesta.message.CancelRequest;
 import uk.co.bssd.vesta.message.SubscribeChannelRequest;
 import uk.co.bssd.vesta.message.SynchronousRequest;
-import uk.co.bssd.vesta.message.SynchronousResponse;
 import uk.co.bssd.vesta.message.UnsubscribeChannelRequest;
+import uk.co.bssd.vesta.metrics.Gauge;
+import uk.co.bssd.vesta.metrics.MetricsConfiguration;
+import uk.co.bssd.vesta.metrics.MetricsRegistry;
+import uk.co.bssd.vesta.metrics.MetricsReporting;
+import uk.co.bssd.vesta.metrics.StripedCounter;
+import uk.co.bssd.vesta.trace.RequestTracer;
+import uk.co.bssd.vesta.trace.Trace;
+import uk.co.bssd.vesta.trace.TraceStage;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class RpcClient {
 
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(RpcClient.class);
+
+	// for sendAsync without a listener, once the caller has moved on
+	private static final SendFailureListener LOGGING_FAILURE_LISTENER = new SendFailureListener() {
+		@Override
+		public void onSendFailed(Serializable message, Throwable cause) {
+			logger.warn("Failed to send [" + message + "]", cause);
+		}
+	};
+
 	private final SynchronousMessageCollector synchronousMessageCollector;
 	private final AsynchronousMessageCollector asynchronousMessageCollector;
 	private final DisconnectListeners disconnectListeners;
+	private final WritabilityGate writabilityGate;
+	private final RpcClientConfiguration configuration;
+	private final WriteBatchingStatistics writeBatchingStatistics;
+	private final AtomicLong sequence;
+	private final Set<String> subscriptions;
+	private final Queue<BufferedMessage> buffered;
+	private final MetricsRegistry metricsRegistry;
+	private final MetricsReporting metricsReporting;
+	private final StripedCounter timedOutRequests;
+	private final StripedCounter cancelsSent;
+	private final ConnectionStateListener connectionStateListener;
+
+	private volatile ClientBootstrap clientBootstrap;
+	private volatile Channel channel;
+	private TransportResources transport;
+	private volatile Timer timer;
 
-	private ClientBootstrap clientBootstrap;
-	private Channel channel;
+	private SocketAddress address;
+	private ReconnectBackoff backoff;
+	private volatile boolean stopped;
+	private volatile boolean reconnecting;
+	private volatile Timeout reconnectTimeout;
 
 	public RpcClient() {
-		this.synchronousMessageCollector = new SynchronousMessageCollector();
+		this(RpcClientConfiguration.defaults());
+	}
+
+	public RpcClient(RpcClientConfiguration configuration) {
+		this(configuration, configuration.metrics(), null);
+	}
+
+	// a pooled connection reports under a name of its own and tells its
+	// pool whenever it can, or can no longer, be sent on
+	RpcClient(RpcClientConfiguration configuration,
+			MetricsConfiguration metrics,
+			ConnectionStateListener connectionStateListener) {
+		this.configuration = configuration;
+		this.connectionStateListener = connectionStateListener;
+		this.metricsRegistry = new MetricsRegistry();
+		this.metricsReporting = new MetricsReporting(this.metricsRegistry,
+				metrics);
+		this.timedOutRequests = this.metricsRegistry
+				.counter("requests.timedOut");
+		this.cancelsSent = this.metricsRegistry.counter("requests.cancelsSent");
+		this.synchronousMessageCollector = new SynchronousMessageCollector(
+				this.timedOutRequests);
+		this.metricsRegistry.gauge("requests.inFlight", new Gauge() {
+			@Override
+			public long value() {
+				return synchronousMessageCollector.outstandingRequests();
+			}
+		});
 		this.asynchronousMessageCollector = new AsynchronousMessageCollector();
 		this.disconnectListeners = new DisconnectListeners();
+		this.writabilityGate = new WritabilityGate();
+		this.writeBatchingStatistics = new WriteBatchingStatistics();
+		this.sequence = new AtomicLong();
+		this.subscriptions = new LinkedHashSet<String>();
+		this.buffered = new ArrayDeque<BufferedMessage>();
+		if (configuration.isReconnectEnabled()) {
+			this.backoff = new ReconnectBackoff(configuration.reconnect());
+		}
+	}
+
+	public void start(String host, int port, long connectionTimeoutMillis) {
+		start(new InetSocketAddress(host, port), connectionTimeoutMillis);
 	}
 
-	public synchronized void start(String host, int port,
+	public synchronized void start(SocketAddress address,
 			long connectionTimeoutMillis) {
-		exceptionIfClientRunning();
-		this.clientBootstrap = bootstrap();
-		connect(host, port, connectionTimeoutMillis);
+		prepareStart(address);
+		connect(address, connectionTimeoutMillis);
+		this.metricsReporting.start(this.timer);
+	}
+
+	// for a pooled connection whose server cannot be reached at start, it
+	// keeps trying in the background with the reconnect backoff
+	synchronized void startConnecting(SocketAddress address) {
+		if (this.backoff == null) {
+			throw new IllegalStateException("Reconnect is not enabled");
+		}
+		prepareStart(address);
+		startReconnecting();
+		this.metricsReporting.start(this.timer);
 	}
 
 	public synchronized void stop() {
+		// set first so closing the channel does not start a reconnection
+		this.stopped = true;
+		this.metricsReporting.stop();
+		cancelReconnect();
 		closeChannel();
-		shutdownBootstrap();
+		// the closed channel's disconnect may only be fired once it is no
+		// longer this client's channel, so its requests are failed here
+		this.synchronousMessageCollector
+				.failAll(new MessageSendFailedException("Client stopped"));
+		notifyDisconnected();
+		this.clientBootstrap = null;
+		releaseTransport();
 	}
 
 	public void addDisconnectListener(DisconnectListener listener) {
 		this.disconnectListeners.addDisconnectListener(listener);
 	}
 
+	// never waits on the write. a failure known before writing is thrown,
+	// one reported by the write itself is logged
 	public void sendAsync(Serializable message) {
-		AsynchronousRequest request = new AsynchronousRequest(message);
-		send(request);
+		sendAsync(message, null);
+	}
+
+	// never waits on the write, failures go to the listener. the caller only
+	// waits, for a bounded time, whilst the channel is over its high water
+	// mark
+	public void sendAsync(final Serializable message,
+			final SendFailureListener failureListener) {
+		if (awaitingReconnection()
+				&& buffer(new AsynchronousRequest(nextSequence(), message),
+						failureListener)) {
+			return;
+		}
+
+		Channel current = startedChannel();
+		if (failureListener == null && !current.isOpen()) {
+			throw new MessageSendFailedException("Not connected to server");
+		}
+		try {
+			if (!this.writabilityGate.awaitWritable(current,
+					this.configuration.writabilityTimeoutMillis())) {
+				sendFailed(message, failureListener,
+						new MessageSendFailedException(String.format(
+								"Channel not writable within [%d] ms",
+								this.configuration.writabilityTimeoutMillis())));
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sendFailed(message, failureListener,
+					new MessageSendFailedException(
+							"Interrupted waiting for channel to be writable", e));
+			return;
+		}
+
+		final SendFailureListener listener = failureListener == null ? LOGGING_FAILURE_LISTENER
+				: failureListener;
+		AsynchronousRequest request = new AsynchronousRequest(
+				nextSequence(), message);
+		current.write(request).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				if (!future.isSuccess()) {
+					listener.onSendFailed(message, future.getCause());
+				}
+			}
+		});
 	}
 
-	@SuppressWarnings("unchecked")
 	public <T> T sendSync(Serializable message, Class<T> responseClass,
 			long timeoutMillis) {
-		SynchronousRequest request = new SynchronousRequest(message);
-		send(request);
-		SynchronousResponse response = this.synchronousMessageCollector
-				.awaitResponse(request.correlationId(), timeoutMillis);
+		SynchronousRequest request = new SynchronousRequest(
+				nextSequence(), message, startTrace(message), timeoutMillis);
+		ResponseFuture<T> future = register(request, responseClass);
 
-		if (response.success()) {
-			return (T) response.payload();
+		try {
+			send(request);
+		} catch (MessageSendFailedException e) {
+			future.cancel(false);
+			throw e;
 		}
 
-		throw (RuntimeException) response.payload();
+		return this.synchronousMessageCollector.awaitResponse(future,
+				timeoutMillis);
+	}
+
+	public <T> ListenableFuture<T> sendRequest(Serializable message,
+			Class<T> responseClass, long timeoutMillis) {
+		Channel current = startedChannel();
+		Timer currentTimer = startedTimer();
+		final SynchronousRequest request = new SynchronousRequest(
+				nextSequence(), message, startTrace(message), timeoutMillis);
+		ResponseFuture<T> future = register(request, responseClass);
+
+		final Timeout timeout = currentTimer.newTimeout(new ResponseTimeoutTask(
+				future, timeoutMillis, this.timedOutRequests), timeoutMillis, TimeUnit.MILLISECONDS);
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				timeout.cancel();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+
+		current.write(request).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture writeFuture) {
+				if (!writeFuture.isSuccess()) {
+					synchronousMessageCollector.fail(request.correlationId(),
+							new MessageSendFailedException());
+				}
+			}
+		});
+
+		return future;
+	}
+
+	public boolean isConnected() {
+		Channel current = this.channel;
+		return current != null && current.isConnected();
+	}
+
+	// synchronous requests sent and still awaiting a response
+	public int outstandingRequests() {
+		return this.synchronousMessageCollector.outstandingRequests();
+	}
+
+	public WriteBatchingStatistics writeBatchingStatistics() {
+		return this.writeBatchingStatistics;
+	}
+
+	public MetricsRegistry metrics() {
+		return this.metricsRegistry;
 	}
 
 	public Serializable awaitMessage(long timeoutMillis) {
 		return this.asynchronousMessageCollector.take(timeoutMillis);
 	}
 
+	// subscriptions are remembered so a reconnected client can restore them
 	public void subscribe(String channelName) {
+		synchronized (this.buffered) {
+			this.subscriptions.add(channelName);
+			if (awaitingReconnection()) {
+				return;
+			}
+		}
 		SubscribeChannelRequest subscribeRequest = new SubscribeChannelRequest(
 				channelName);
 		send(subscribeRequest);
 	}
 
 	public void unsubscribe(String channelName) {
+		synchronized (this.buffered) {
+			this.subscriptions.remove(channelName);
+			if (awaitingReconnection()) {
+				return;
+			}
+		}
 		UnsubscribeChannelRequest unsubscribeRequest = new UnsubscribeChannelRequest(
 				channelName);
 		send(unsubscribeRequest);
 	}
 
+	private Trace startTrace(Serializable message) {
+		RequestTracer tracer = this.configuration.tracer();
+		if (tracer == null || !tracer.sample()) {
+			return null;
+		}
+		Trace trace = Trace.start(message.getClass());
+		trace.mark(TraceStage.CLIENT_SEND);
+		return trace;
+	}
+
+	private <T> ResponseFuture<T> register(SynchronousRequest request,
+			Class<T> responseClass) {
+		Trace trace = request.trace();
+		ResponseFuture<T> future = this.synchronousMessageCollector.register(
+				request.correlationId(), trace, responseClass);
+		future.addListener(new AbandonedRequestCancellation(future),
+				MoreExecutors.sameThreadExecutor());
+		if (trace != null) {
+			future.addListener(new TraceCompletion(trace),
+					MoreExecutors.sameThreadExecutor());
+		}
+		return future;
+	}
+
+	private long nextSequence() {
+		return this.sequence.incrementAndGet();
+	}
+
 	private void send(final Serializable request) {
-		ChannelFuture future = this.channel.write(request);
+		ChannelFuture future = startedChannel().write(request);
 		try {
 			future.await();
 		} catch (InterruptedException e) {
@@ -98,22 +353,195 @@ public class RpcClient {
 		}
 	}
 
+	private Channel startedChannel() {
+		Channel current = this.channel;
+		if (current == null) {
+			throw new MessageSendFailedException("Client is not running");
+		}
+		return current;
+	}
+
+	private Timer startedTimer() {
+		Timer current = this.timer;
+		if (current == null) {
+			throw new MessageSendFailedException("Client is not running");
+		}
+		return current;
+	}
+
+	private static void sendFailed(Serializable message,
+			SendFailureListener failureListener,
+			MessageSendFailedException cause) {
+		if (failureListener == null) {
+			throw cause;
+		}
+		failureListener.onSendFailed(message, cause);
+	}
+
+	// false once reconnected, the caller then sends on the new channel
+	private boolean buffer(AsynchronousRequest request,
+			SendFailureListener failureListener) {
+		synchronized (this.buffered) {
+			if (!awaitingReconnection()) {
+				return false;
+			}
+			if (this.buffered.size() < this.configuration.reconnect()
+					.maxBufferedMessages()) {
+				this.buffered.add(new BufferedMessage(request, failureListener));
+				return true;
+			}
+		}
+		MessageSendFailedException cause = new MessageSendFailedException(
+				"Disconnected from server and reconnect buffer is full");
+		if (failureListener == null) {
+			throw cause;
+		}
+		failureListener.onSendFailed(request.payload(), cause);
+		return true;
+	}
+
+	// a closed channel counts before its disconnect has been handled, so
+	// a send in between is buffered rather than failed
+	private boolean awaitingReconnection() {
+		if (this.backoff == null || this.stopped) {
+			return false;
+		}
+		if (this.reconnecting) {
+			return true;
+		}
+		Channel current = this.channel;
+		return current != null && !current.isOpen();
+	}
+
+	private void startReconnecting() {
+		if (this.stopped) {
+			return;
+		}
+		synchronized (this.buffered) {
+			this.reconnecting = true;
+		}
+		scheduleReconnect();
+	}
+
+	private void scheduleReconnect() {
+		Timer current = this.timer;
+		if (this.stopped || current == null) {
+			return;
+		}
+		this.reconnectTimeout = current.newTimeout(new ReconnectTask(),
+				this.backoff.nextDelayMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	private void reconnect() {
+		ClientBootstrap bootstrap = this.clientBootstrap;
+		if (this.stopped || bootstrap == null) {
+			return;
+		}
+		ChannelFuture future;
+		try {
+			future = bootstrap.connect(this.address);
+		} catch (RuntimeException e) {
+			// the bootstrap is being released by stop
+			return;
+		}
+		future.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				if (future.isSuccess()) {
+					onReconnected(future.getChannel());
+				} else {
+					scheduleReconnect();
+				}
+			}
+		});
+	}
+
+	// subscriptions and buffered sends go out before anything sent after
+	// reconnecting, as those wait on the buffer lock
+	private void onReconnected(Channel reconnected) {
+		if (this.stopped) {
+			reconnected.close();
+			return;
+		}
+		this.channel = reconnected;
+		this.backoff.reset();
+		synchronized (this.buffered) {
+			for (String channelName : this.subscriptions) {
+				reconnected.write(new SubscribeChannelRequest(channelName));
+			}
+			BufferedMessage message;
+			while ((message = this.buffered.poll()) != null) {
+				message.writeTo(reconnected);
+			}
+			this.reconnecting = false;
+		}
+		notifyConnected();
+	}
+
+	private void cancelReconnect() {
+		Timeout timeout = this.reconnectTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+			this.reconnectTimeout = null;
+		}
+		synchronized (this.buffered) {
+			this.reconnecting = false;
+			MessageSendFailedException cause = new MessageSendFailedException(
+					"Client stopped before reconnecting to server");
+			BufferedMessage message;
+			while ((message = this.buffered.poll()) != null) {
+				message.fail(cause);
+			}
+		}
+	}
+
 	private ClientBootstrap bootstrap() {
-		ChannelFactory channelFactory = channelFactory();
 		ChannelPipelineFactory clientChannelPipelineFactory = new ClientChannelPipelineFactory(
 				this.synchronousMessageCollector,
-				this.asynchronousMessageCollector, this.disconnectListeners);
+				this.asynchronousMessageCollector, new ConnectionLossHandler(),
+				this.disconnectListeners, this.writabilityGate,
+				this.configuration, this.writeBatchingStatistics,
+				lingerTimer());
 
-		ClientBootstrap bootstrap = new ClientBootstrap(channelFactory);
+		ClientBootstrap bootstrap = new ClientBootstrap(
+				this.transport.clientChannelFactory());
 		bootstrap.setPipelineFactory(clientChannelPipelineFactory);
+		bootstrap.setOption("bufferFactory", this.transport.bufferFactory());
+		bootstrap.setOption("writeBufferHighWaterMark",
+				this.configuration.writeBufferHighWaterMark());
+		bootstrap.setOption("writeBufferLowWaterMark",
+				this.configuration.writeBufferLowWaterMark());
 
 		return bootstrap;
 	}
 
-	private ChannelFactory channelFactory() {
-		return new NioClientSocketChannelFactory(
-				Executors.newCachedThreadPool(),
-				Executors.newCachedThreadPool());
+	private Timer lingerTimer() {
+		if (this.configuration.isWriteBatchingEnabled()) {
+			return this.transport.lingerTimer();
+		}
+		return this.timer;
+	}
+
+	private void prepareStart(SocketAddress address) {
+		exceptionIfClientRunning();
+		this.stopped = false;
+		this.address = address;
+		this.transport = TransportResources.acquire(this.configuration
+				.transportResources());
+		this.timer = this.transport.timer();
+		this.clientBootstrap = bootstrap();
+	}
+
+	private void notifyConnected() {
+		if (this.connectionStateListener != null) {
+			this.connectionStateListener.onConnected(this);
+		}
+	}
+
+	private void notifyDisconnected() {
+		if (this.connectionStateListener != null) {
+			this.connectionStateListener.onDisconnected(this);
+		}
 	}
 
 	private void exceptionIfClientRunning() {
@@ -122,11 +550,11 @@ public class RpcClient {
 		}
 	}
 
-	private void connect(String host, int port, long connectionTimeoutMillis) {
-		SocketAddress address = new InetSocketAddress(host, port);
+	private void connect(SocketAddress address, long connectionTimeoutMillis) {
 		ChannelFuture future = this.clientBootstrap.connect(address);
 		awaitConnection(future, connectionTimeoutMillis);
 		this.channel = future.getChannel();
+		notifyConnected();
 	}
 
 	private void awaitConnection(ChannelFuture future,
@@ -143,15 +571,121 @@ public class RpcClient {
 
 	private void closeChannel() {
 		if (this.channel != null) {
-			this.channel.close();
+			// the I/O workers outlive this client, so wait for the close here
+			this.channel.close().awaitUninterruptibly();
 			this.channel = null;
 		}
 	}
 
-	private void shutdownBootstrap() {
-		if (this.clientBootstrap != null) {
-			this.clientBootstrap.releaseExternalResources();
-			this.clientBootstrap = null;
+	// the bootstrap's own releaseExternalResources would shut down the
+	// channel factory other clients and servers are sharing
+	private void releaseTransport() {
+		if (this.transport != null) {
+			this.transport.release();
+			this.transport = null;
+			this.timer = null;
+		}
+	}
+
+	// netty fires a disconnect some time after close returns, so one for
+	// a channel this client has since replaced is ignored rather than
+	// failing the requests sent on its current connection, or opening a
+	// second connection alongside it
+	@Sharable
+	private class ConnectionLossHandler extends SimpleChannelUpstreamHandler {
+
+		@Override
+		public void channelDisconnected(ChannelHandlerContext ctx,
+				ChannelStateEvent e) throws Exception {
+			if (e.getChannel() == channel) {
+				notifyDisconnected();
+				synchronousMessageCollector
+						.failAll(new MessageSendFailedException(
+								"Connection to server lost"));
+				if (backoff != null) {
+					startReconnecting();
+				}
+			}
+			super.channelDisconnected(ctx, e);
+		}
+	}
+
+	// however the request ends, the client's part of its trace is done
+	private class TraceCompletion implements Runnable {
+
+		private final Trace trace;
+
+		private TraceCompletion(Trace trace) {
+			this.trace = trace;
+		}
+
+		@Override
+		public void run() {
+			this.trace.mark(TraceStage.CLIENT_COMPLETED);
+			configuration.tracer().onTraceCompleted(this.trace);
+		}
+	}
+
+	// a request its caller has given up on is cancelled at the server, so
+	// that it does not run if it is still queued there
+	private class AbandonedRequestCancellation implements Runnable {
+
+		private final ResponseFuture<?> future;
+
+		private AbandonedRequestCancellation(ResponseFuture<?> future) {
+			this.future = future;
+		}
+
+		@Override
+		public void run() {
+			if (!this.future.isCancelled() && !this.future.isTimedOut()) {
+				return;
+			}
+			Channel current = channel;
+			if (current != null && current.isConnected()) {
+				current.write(new CancelRequest(this.future.correlationId()));
+				cancelsSent.increment();
+			}
+		}
+	}
+
+	private class ReconnectTask implements TimerTask {
+
+		@Override
+		public void run(Timeout timeout) {
+			reconnect();
+		}
+	}
+
+	private static class BufferedMessage {
+
+		private final AsynchronousRequest request;
+		private final SendFailureListener failureListener;
+
+		private BufferedMessage(AsynchronousRequest request,
+				SendFailureListener failureListener) {
+			this.request = request;
+			this.failureListener = failureListener;
+		}
+
+		private void writeTo(Channel channel) {
+			ChannelFuture future = channel.write(this.request);
+			if (this.failureListener != null) {
+				future.addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(ChannelFuture future) {
+						if (!future.isSuccess()) {
+							fail(future.getCause());
+						}
+					}
+				});
+			}
+		}
+
+		private void fail(Throwable cause) {
+			if (this.failureListener != null) {
+				this.failureListener.onSendFailed(this.request.payload(), cause);
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+package uk.co.bssd.vesta.client;
+
+import uk.co.bssd.vesta.TransportResources;
+import uk.co.bssd.vesta.WriteBatchingConfiguration;
+import uk.co.bssd.vesta.codec.Codec;
+import uk.co.bssd.vesta.codec.JavaSerializationCodec;
+import uk.co.bssd.vesta.metrics.MetricsConfiguration;
+import uk.co.bssd.vesta.trace.RequestTracer;
+
+public class RpcClientConfiguration {
+
+	private static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+	private static final int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 32 * 1024;
+	private static final long DEFAULT_WRITABILITY_TIMEOUT_MS = 1000;
+
+	private int writeBufferHighWaterMark;
+	private int writeBufferLowWaterMark;
+	private long writabilityTimeoutMillis;
+	private WriteBatchingConfiguration writeBatching;
+	private ReconnectConfiguration reconnect;
+	private TransportResources transportResources;
+	private MetricsConfiguration metrics;
+	private RequestTracer tracer;
+	private Codec codec;
+
+	public RpcClientConfiguration() {
+		this.writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+		this.writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+		this.writabilityTimeoutMillis = DEFAULT_WRITABILITY_TIMEOUT_MS;
+		this.codec = new JavaSerializationCodec();
+		this.metrics = MetricsConfiguration.defaults();
+	}
+
+	public static RpcClientConfiguration defaults() {
+		return new RpcClientConfiguration();
+	}
+
+	public RpcClientConfiguration writeBufferWaterMarks(int lowWaterMark,
+			int highWaterMark) {
+		if (lowWaterMark > highWaterMark) {
+			throw new IllegalArgumentException(String.format(
+					"Low water mark [%d] cannot exceed high water mark [%d]",
+					lowWaterMark, highWaterMark));
+		}
+		this.writeBufferLowWaterMark = lowWaterMark;
+		this.writeBufferHighWaterMark = highWaterMark;
+		return this;
+	}
+
+	// how long sendAsync waits for a channel over its high water mark to
+	// drain before failing the send, zero fails it straight away
+	public RpcClientConfiguration writabilityTimeoutMillis(
+			long writabilityTimeoutMillis) {
+		if (writabilityTimeoutMillis < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Writability timeout [%d] ms must not be negative",
+					writabilityTimeoutMillis));
+		}
+		this.writabilityTimeoutMillis = writabilityTimeoutMillis;
+		return this;
+	}
+
+	public RpcClientConfiguration codec(Codec codec) {
+		this.codec = codec;
+		return this;
+	}
+
+	public RpcClientConfiguration writeBatching(
+			WriteBatchingConfiguration writeBatching) {
+		this.writeBatching = writeBatching;
+		return this;
+	}
+
+	public RpcClientConfiguration reconnect(ReconnectConfiguration reconnect) {
+		this.reconnect = reconnect;
+		return this;
+	}
+
+	public RpcClientConfiguration transportResources(
+			TransportResources transportResources) {
+		this.transportResources = transportResources;
+		return this;
+	}
+
+	public RpcClientConfiguration metrics(MetricsConfiguration metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	public RpcClientConfiguration tracer(RequestTracer tracer) {
+		this.tracer = tracer;
+		return this;
+	}
+
+	public int writeBufferHighWaterMark() {
+		return this.writeBufferHighWaterMark;
+	}
+
+	public int writeBufferLowWaterMark() {
+		return this.writeBufferLowWaterMark;
+	}
+
+	public long writabilityTimeoutMillis() {
+		return this.writabilityTimeoutMillis;
+	}
+
+	public WriteBatchingConfiguration writeBatching() {
+		return this.writeBatching;
+	}
+
+	public boolean isWriteBatchingEnabled() {
+		return this.writeBatching != null;
+	}
+
+	public ReconnectConfiguration reconnect() {
+		return this.reconnect;
+	}
+
+	public boolean isReconnectEnabled() {
+		return this.reconnect != null;
+	}
+
+	public Codec codec() {
+		return this.codec;
+	}
+
+	// null means the process wide shared resources
+	public TransportResources transportResources() {
+		return this.transportResources;
+	}
+
+	public MetricsConfiguration metrics() {
+		return this.metrics;
+	}
+
+	public RequestTracer tracer() {
+		return this.tracer;
+	}
+
+	public boolean isTracingEnabled() {
+		return this.tracer != null;
+	}
+
+	// this configuration if it already reconnects, otherwise a copy which
+	// reconnects as given
+	RpcClientConfiguration withDefaultReconnect(
+			ReconnectConfiguration defaultReconnect) {
+		if (isReconnectEnabled()) {
+			return this;
+		}
+		RpcClientConfiguration copy = new RpcClientConfiguration();
+		copy.writeBufferHighWaterMark = this.writeBufferHighWaterMark;
+		copy.writeBufferLowWaterMark = this.writeBufferLowWaterMark;
+		copy.writabilityTimeoutMillis = this.writabilityTimeoutMillis;
+		copy.writeBatching = this.writeBatching;
+		copy.reconnect = defaultReconnect;
+		copy.transportResources = this.transportResources;
+		copy.metrics = this.metrics;
+		copy.tracer = this.tracer;
+		copy.codec = this.codec;
+		return copy;
+	}
+}
@@ -0,0 +1,8 @@
+package uk.co.bssd.vesta.client;
+
+import java.io.Serializable;
+
+public interface SendFailureListener {
+
+	void onSendFailed(Serializable message, Throwable cause);
+}
@@ -1,57 +1,133 @@
 package uk.co.bssd.vesta.client;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-
-import org.joda.time.DateTime;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import uk.co.bssd.vesta.ConcurrentLongMap;
 import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.metrics.StripedCounter;
+import uk.co.bssd.vesta.trace.Trace;
+import uk.co.bssd.vesta.trace.TraceStage;
+
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class SynchronousMessageCollector {
 
-	private final Map<UUID, SynchronousResponse> responses;
-	
+	private final ConcurrentLongMap<ResponseFuture<?>> pendingResponses;
+	private final AtomicInteger outstanding;
+	private final StripedCounter timedOut;
+
 	public SynchronousMessageCollector() {
-		this.responses = new HashMap<UUID, SynchronousResponse>();
+		this(new StripedCounter());
 	}
-	
-	public void onMessage(SynchronousResponse response) {
-		synchronized (this.responses) {
-			this.responses.put(response.correlationId(), response);
-			this.responses.notify();
-		}
+
+	public SynchronousMessageCollector(StripedCounter timedOut) {
+		this.pendingResponses = new ConcurrentLongMap<ResponseFuture<?>>();
+		this.outstanding = new AtomicInteger();
+		this.timedOut = timedOut;
+	}
+
+	public <T> ResponseFuture<T> register(long correlationId) {
+		return register(correlationId, null, null);
 	}
-	
-	public SynchronousResponse awaitResponse(UUID correlationId, long timeout) {
-		
-		long expiryTime = nowInMs() + timeout;
-		
-		while (System.currentTimeMillis() < expiryTime) {
-			synchronized (this.responses) {
-				if (!hasResponse(correlationId)){
-					long waitMs = expiryTime - nowInMs();
-					try {
-						this.responses.wait(waitMs);
-					} catch (InterruptedException e) {
-						return null;
-					}
+
+	public <T> ResponseFuture<T> register(final long correlationId,
+			Trace trace, Class<T> responseType) {
+		final ResponseFuture<T> future = new ResponseFuture<T>(correlationId,
+				trace, responseType);
+		this.pendingResponses.put(correlationId, future);
+		this.outstanding.incrementAndGet();
+
+		// however the future completes (response, timeout, send failure or
+		// cancellation by the caller) its slot is released with it
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (pendingResponses.remove(correlationId, future)) {
+					outstanding.decrementAndGet();
 				}
-				
-				if (hasResponse(correlationId)) {
-					return this.responses.remove(correlationId);
-				} 
 			}
+		}, MoreExecutors.sameThreadExecutor());
+
+		return future;
+	}
+
+	public void onMessage(SynchronousResponse response) {
+		onMessage(response, System.nanoTime());
+	}
+
+	// read is when the bytes carrying the response came off the socket
+	public void onMessage(SynchronousResponse response, long readNanos) {
+		ResponseFuture<?> future = removePending(response.correlationId());
+
+		if (future != null && future.trace() != null) {
+			Trace trace = future.trace();
+			trace.mark(TraceStage.CLIENT_RESPONSE_READ, readNanos);
+			trace.mark(TraceStage.CLIENT_RESPONSE_DECODED);
+		}
+
+		// a response arriving after its caller has timed out has nobody
+		// waiting on it, so it is dropped rather than retained
+		if (future != null) {
+			future.complete(response);
+		}
+	}
+
+	public void fail(long correlationId, Throwable cause) {
+		ResponseFuture<?> future = removePending(correlationId);
+		if (future != null) {
+			future.fail(cause);
+		}
+	}
+
+	// once the connection is gone no response can arrive, so waiting
+	// callers are released now rather than at their timeouts
+	public void failAll(Throwable cause) {
+		for (ResponseFuture<?> future : this.pendingResponses.values()) {
+			fail(future.correlationId(), cause);
 		}
-		
-		throw new MessageTimeoutException("Timeout waiting for response with correlation id [" + correlationId + "]");
 	}
 
-	private boolean hasResponse(UUID correlationId) {
-		return this.responses.containsKey(correlationId);
+	public int outstandingRequests() {
+		return this.outstanding.get();
+	}
+
+	public <T> T awaitResponse(ResponseFuture<T> future, long timeoutMillis) {
+		long correlationId = future.correlationId();
+
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new MessageTimeoutException(
+					"Interrupted waiting for response with correlation id ["
+							+ correlationId + "]");
+		} catch (TimeoutException e) {
+			if (future.cancel(false)) {
+				this.timedOut.increment();
+			}
+			throw new MessageTimeoutException(
+					"Timeout waiting for response with correlation id ["
+							+ correlationId + "]");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
 	}
 
-	private long nowInMs() {
-		return new DateTime().getMillis();
+	// whoever removes a pending response releases its slot, before the
+	// caller waiting on it is woken
+	private ResponseFuture<?> removePending(long correlationId) {
+		ResponseFuture<?> future = this.pendingResponses.remove(correlationId);
+		if (future != null) {
+			this.outstanding.decrementAndGet();
+		}
+		return future;
 	}
-}
\ No newline at end of file
+}
@@ -5,14 +5,22 @@ import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 
 import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.trace.ReadTimestampHandler;
 
 public class SynchronousResponseHandler extends SimpleChannelUpstreamHandler {
 
 	private final SynchronousMessageCollector messageCollector;
+	private final boolean tracing;
 
 	public SynchronousResponseHandler(
 			SynchronousMessageCollector messageCollector) {
+		this(messageCollector, false);
+	}
+
+	public SynchronousResponseHandler(
+			SynchronousMessageCollector messageCollector, boolean tracing) {
 		this.messageCollector = messageCollector;
+		this.tracing = tracing;
 	}
 
 	@Override
@@ -20,7 +28,12 @@ public class SynchronousResponseHandler extends SimpleChannelUpstreamHandler {
 			throws Exception {
 		Object message = e.getMessage();
 
-		if (message instanceof SynchronousResponse) {
+		if (message instanceof SynchronousResponse && this.tracing) {
+			ReadTimestampHandler readTimestamp = ctx.getPipeline().get(
+					ReadTimestampHandler.class);
+			this.messageCollector.onMessage((SynchronousResponse) message,
+					readTimestamp.lastReadNanos());
+		} else if (message instanceof SynchronousResponse) {
 			this.messageCollector.onMessage((SynchronousResponse) message);
 		} else {
 			ctx.sendUpstream(e);
@@ -0,0 +1,302 @@
+package uk.co.bssd.vesta.codec;
+
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.serialization.ClassResolver;
+import org.jboss.netty.util.CharsetUtil;
+
+import uk.co.bssd.vesta.message.AsynchronousRequest;
+import uk.co.bssd.vesta.message.CancelRequest;
+import uk.co.bssd.vesta.message.SubscribeChannelRequest;
+import uk.co.bssd.vesta.message.SynchronousRequest;
+import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.message.SynchronousResult;
+import uk.co.bssd.vesta.message.UnsubscribeChannelRequest;
+
+public class BinaryCodec implements Codec {
+
+	public static final int FIRST_USER_TYPE_ID = 32;
+	public static final int MAX_TYPE_ID = Short.MAX_VALUE;
+
+	private static final int NULL_TYPE_ID = 0;
+	private static final int SERIALIZED_TYPE_ID = 1;
+
+	private static final int NO_FLAGS = 0;
+
+	// on a synchronous request, the header is followed by [trace id:long]
+	// then [timeout millis:long] for each flag that is set
+	private static final int TRACED_FLAG = 0x01;
+	private static final int TIMEOUT_FLAG = 0x02;
+	private static final int NO_SEQUENCE = 0;
+
+	private static final SynchronousResult[] RESULTS = SynchronousResult
+			.values();
+
+	private static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+	private static final int ESTIMATED_LENGTH = 64;
+
+	private final ConcurrentMap<Class<?>, TypeRegistration<?>> registrationsByType;
+	private final ConcurrentMap<Integer, TypeRegistration<?>> registrationsById;
+	private final int maxFrameLength;
+	private final ClassResolver classResolver;
+
+	public BinaryCodec() {
+		this(DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	public BinaryCodec(int maxFrameLength) {
+		this(maxFrameLength, BoundedClassResolver.shared());
+	}
+
+	public BinaryCodec(int maxFrameLength, ClassResolver classResolver) {
+		this.registrationsByType = new ConcurrentHashMap<Class<?>, TypeRegistration<?>>();
+		this.registrationsById = new ConcurrentHashMap<Integer, TypeRegistration<?>>();
+		this.maxFrameLength = maxFrameLength;
+		this.classResolver = classResolver;
+		BuiltInSerializers.registerWith(this);
+	}
+
+	public <T> BinaryCodec register(int typeId, Class<T> type,
+			BinarySerializer<T> serializer) {
+		if (typeId < FIRST_USER_TYPE_ID || typeId > MAX_TYPE_ID) {
+			throw new IllegalArgumentException(String.format(
+					"Type id [%d] for [%s] must be between [%d] and [%d]",
+					typeId, type.getName(), FIRST_USER_TYPE_ID, MAX_TYPE_ID));
+		}
+		registerType(typeId, type, serializer);
+		return this;
+	}
+
+	<T> void registerType(int typeId, Class<T> type,
+			BinarySerializer<T> serializer) {
+		TypeRegistration<T> registration = new TypeRegistration<T>(typeId,
+				type, serializer);
+
+		if (this.registrationsById.putIfAbsent(typeId, registration) != null) {
+			throw new IllegalArgumentException(String.format(
+					"Type id [%d] is already registered", typeId));
+		}
+		if (this.registrationsByType.putIfAbsent(type, registration) != null) {
+			this.registrationsById.remove(typeId, registration);
+			throw new IllegalArgumentException(String.format(
+					"Type [%s] is already registered", type.getName()));
+		}
+	}
+
+	// every frame is [length:int][kind:byte][flags:byte][sequence:long]
+	// followed by any flagged header fields, then the payload's
+	// [type id:short] and its serialized body
+	@Override
+	public ChannelBuffer encode(Object message) throws Exception {
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ESTIMATED_LENGTH);
+		buffer.writeInt(0);
+
+		if (message instanceof SynchronousRequest) {
+			SynchronousRequest request = (SynchronousRequest) message;
+			int flags = (request.isTraced() ? TRACED_FLAG : NO_FLAGS)
+					| (request.hasTimeout() ? TIMEOUT_FLAG : NO_FLAGS);
+			writeHeader(buffer, MessageKind.SYNCHRONOUS_REQUEST, flags,
+					request.correlationId());
+			if (request.isTraced()) {
+				buffer.writeLong(request.traceId());
+			}
+			if (request.hasTimeout()) {
+				buffer.writeLong(request.timeoutMillis());
+			}
+			writeObject(buffer, request.payload());
+		} else if (message instanceof SynchronousResponse) {
+			SynchronousResponse response = (SynchronousResponse) message;
+			writeHeader(buffer, MessageKind.SYNCHRONOUS_RESPONSE, response
+					.result().ordinal(), response.correlationId());
+			writeObject(buffer, response.payload());
+		} else if (message instanceof AsynchronousRequest) {
+			AsynchronousRequest request = (AsynchronousRequest) message;
+			writeHeader(buffer, MessageKind.ASYNCHRONOUS_REQUEST, NO_FLAGS,
+					request.messageId());
+			writeObject(buffer, request.payload());
+		} else if (message instanceof CancelRequest) {
+			writeHeader(buffer, MessageKind.CANCEL, NO_FLAGS,
+					((CancelRequest) message).correlationId());
+			writeObject(buffer, null);
+		} else if (message instanceof SubscribeChannelRequest) {
+			writeHeader(buffer, MessageKind.SUBSCRIBE, NO_FLAGS, NO_SEQUENCE);
+			writeObject(buffer,
+					((SubscribeChannelRequest) message).channelName());
+		} else if (message instanceof UnsubscribeChannelRequest) {
+			writeHeader(buffer, MessageKind.UNSUBSCRIBE, NO_FLAGS, NO_SEQUENCE);
+			writeObject(buffer,
+					((UnsubscribeChannelRequest) message).channelName());
+		} else {
+			writeHeader(buffer, MessageKind.MESSAGE, NO_FLAGS, NO_SEQUENCE);
+			writeObject(buffer, message);
+		}
+
+		buffer.setInt(0, buffer.readableBytes() - 4);
+		return buffer;
+	}
+
+	public Object decode(ChannelBuffer frame) throws Exception {
+		MessageKind kind = MessageKind.forCode(frame.readUnsignedByte());
+		int flags = frame.readUnsignedByte();
+		long sequence = frame.readLong();
+		long traceId = 0;
+		long timeoutMillis = 0;
+		if (kind == MessageKind.SYNCHRONOUS_REQUEST) {
+			if ((flags & TRACED_FLAG) != 0) {
+				traceId = frame.readLong();
+			}
+			if ((flags & TIMEOUT_FLAG) != 0) {
+				timeoutMillis = frame.readLong();
+			}
+		}
+		Object payload = readObject(frame);
+
+		switch (kind) {
+		case SYNCHRONOUS_REQUEST:
+			return new SynchronousRequest(sequence, (Serializable) payload,
+					traceId, timeoutMillis);
+		case SYNCHRONOUS_RESPONSE:
+			return new SynchronousResponse(sequence, result(flags),
+					(Serializable) payload);
+		case ASYNCHRONOUS_REQUEST:
+			return new AsynchronousRequest(sequence, (Serializable) payload);
+		case SUBSCRIBE:
+			return new SubscribeChannelRequest((String) payload);
+		case UNSUBSCRIBE:
+			return new UnsubscribeChannelRequest((String) payload);
+		case CANCEL:
+			return new CancelRequest(sequence);
+		default:
+			return payload;
+		}
+	}
+
+	private static SynchronousResult result(int flags)
+			throws CorruptedFrameException {
+		if (flags >= RESULTS.length) {
+			throw new CorruptedFrameException(String.format(
+					"Unknown synchronous result [%d]", flags));
+		}
+		return RESULTS[flags];
+	}
+
+	@Override
+	public ChannelHandler newDecoder() {
+		return new BinaryFrameDecoder(this, this.maxFrameLength);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void writeObject(ChannelBuffer buffer, Object value)
+			throws Exception {
+		if (value == null) {
+			buffer.writeShort(NULL_TYPE_ID);
+			return;
+		}
+
+		TypeRegistration<Object> registration = (TypeRegistration<Object>) this.registrationsByType
+				.get(value.getClass());
+
+		if (registration == null) {
+			buffer.writeShort(SERIALIZED_TYPE_ID);
+			writeSerialized(buffer, value);
+		} else {
+			buffer.writeShort(registration.typeId());
+			registration.serializer().write(this, buffer, value);
+		}
+	}
+
+	public Object readObject(ChannelBuffer buffer) throws Exception {
+		int typeId = buffer.readUnsignedShort();
+
+		if (typeId == NULL_TYPE_ID) {
+			return null;
+		}
+		if (typeId == SERIALIZED_TYPE_ID) {
+			return readSerialized(buffer);
+		}
+
+		TypeRegistration<?> registration = this.registrationsById.get(typeId);
+		if (registration == null) {
+			throw new IllegalStateException(String.format(
+					"No type registered with id [%d]", typeId));
+		}
+		return registration.serializer().read(this, buffer);
+	}
+
+	private void writeHeader(ChannelBuffer buffer, MessageKind kind,
+			int flags, long sequence) {
+		buffer.writeByte(kind.code());
+		buffer.writeByte(flags);
+		buffer.writeLong(sequence);
+	}
+
+	public void writeString(ChannelBuffer buffer, String value) {
+		if (value == null) {
+			buffer.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(CharsetUtil.UTF_8);
+		buffer.writeInt(bytes.length);
+		buffer.writeBytes(bytes);
+	}
+
+	public String readString(ChannelBuffer buffer) {
+		int length = buffer.readInt();
+		if (length < 0) {
+			return null;
+		}
+		String value = buffer.toString(buffer.readerIndex(), length,
+				CharsetUtil.UTF_8);
+		buffer.skipBytes(length);
+		return value;
+	}
+
+	public void writeUuid(ChannelBuffer buffer, UUID value) {
+		buffer.writeLong(value.getMostSignificantBits());
+		buffer.writeLong(value.getLeastSignificantBits());
+	}
+
+	public UUID readUuid(ChannelBuffer buffer) {
+		return new UUID(buffer.readLong(), buffer.readLong());
+	}
+
+	// types without a registration fall back to java serialization so that
+	// exceptions and other ad hoc payloads still cross the wire
+	private void writeSerialized(ChannelBuffer buffer, Object value)
+			throws Exception {
+		int lengthIndex = buffer.writerIndex();
+		buffer.writeInt(0);
+
+		ObjectOutputStream objectStream = new ObjectOutputStream(
+				new ChannelBufferOutputStream(buffer));
+		objectStream.writeObject(value);
+		objectStream.close();
+
+		buffer.setInt(lengthIndex, buffer.writerIndex() - lengthIndex - 4);
+	}
+
+	private Object readSerialized(ChannelBuffer buffer) throws Exception {
+		int length = buffer.readInt();
+		int endIndex = buffer.readerIndex() + length;
+
+		ResolvingObjectInputStream objectStream = new ResolvingObjectInputStream(
+				new ChannelBufferInputStream(buffer, length),
+				this.classResolver);
+		try {
+			return objectStream.readObject();
+		} finally {
+			objectStream.close();
+			buffer.readerIndex(endIndex);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package uk.co.bssd.vesta.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+public class BinaryFrameDecoder extends FrameDecoder {
+
+	private static final int LENGTH_FIELD_SIZE = 4;
+
+	private final BinaryCodec codec;
+	private final int maxFrameLength;
+
+	public BinaryFrameDecoder(BinaryCodec codec, int maxFrameLength) {
+		this.codec = codec;
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel,
+			ChannelBuffer buffer) throws Exception {
+		if (buffer.readableBytes() < LENGTH_FIELD_SIZE) {
+			return null;
+		}
+
+		int frameLength = buffer.getInt(buffer.readerIndex());
+		if (frameLength < 0) {
+			buffer.skipBytes(buffer.readableBytes());
+			throw new CorruptedFrameException(String.format(
+					"Negative frame length [%d]", frameLength));
+		}
+		if (frameLength > this.maxFrameLength) {
+			buffer.skipBytes(buffer.readableBytes());
+			throw new TooLongFrameException(String.format(
+					"Frame length [%d] exceeds maximum of [%d] bytes",
+					frameLength, this.maxFrameLength));
+		}
+
+		if (buffer.readableBytes() < LENGTH_FIELD_SIZE + frameLength) {
+			return null;
+		}
+
+		buffer.skipBytes(LENGTH_FIELD_SIZE);
+		return this.codec.decode(buffer.readSlice(frameLength));
+	}
+
+	// once a length cannot be trusted nothing after it can be framed, so
+	// the connection is closed rather than left accumulating bytes
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
+			throws Exception {
+		if (e.getCause() instanceof CorruptedFrameException
+				|| e.getCause() instanceof TooLongFrameException) {
+			ctx.getChannel().close();
+		}
+		super.exceptionCaught(ctx, e);
+	}
+}
@@ -0,0 +1,11 @@
+package uk.co.bssd.vesta.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+public interface BinarySerializer<T> {
+
+	void write(BinaryCodec codec, ChannelBuffer buffer, T value)
+			throws Exception;
+
+	T read(BinaryCodec codec, ChannelBuffer buffer) throws Exception;
+}
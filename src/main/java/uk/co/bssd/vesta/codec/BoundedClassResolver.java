@@ -0,0 +1,101 @@
+package uk.co.bssd.vesta.codec;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.jboss.netty.handler.codec.serialization.ClassResolver;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.MapMaker;
+
+// nothing here holds the class loader strongly, so a shared resolver never
+// keeps an undeployed loader, or the classes it loaded, alive
+public class BoundedClassResolver implements ClassResolver {
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+	private static final ConcurrentMap<ClassLoader, BoundedClassResolver> SHARED = new MapMaker()
+			.weakKeys().makeMap();
+
+	private final LoadingCache<String, Class<?>> cache;
+	private final ClassAllowList allowList;
+
+	public BoundedClassResolver(ClassLoader classLoader) {
+		this(classLoader, DEFAULT_MAXIMUM_SIZE, null);
+	}
+
+	public BoundedClassResolver(ClassLoader classLoader, int maximumSize,
+			ClassAllowList allowList) {
+		this.allowList = allowList;
+
+		// a loader holds every class it loaded, so weak values lose nothing
+		// whilst the loader is alive and do not keep it alive themselves
+		final WeakReference<ClassLoader> loaderReference = new WeakReference<ClassLoader>(
+				classLoader);
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.weakValues().build(new CacheLoader<String, Class<?>>() {
+					@Override
+					public Class<?> load(String className)
+							throws ClassNotFoundException {
+						ClassLoader loader = loaderReference.get();
+						if (loader == null) {
+							throw new ClassNotFoundException(String.format(
+									"Class loader for [%s] has been collected",
+									className));
+						}
+						return Class.forName(className, false, loader);
+					}
+				});
+
+		if (allowList != null) {
+			for (Class<?> clazz : allowList.allowedClasses()) {
+				this.cache.put(clazz.getName(), clazz);
+			}
+		}
+	}
+
+	public static BoundedClassResolver shared() {
+		return shared(defaultClassLoader());
+	}
+
+	public static BoundedClassResolver shared(ClassLoader classLoader) {
+		BoundedClassResolver resolver = SHARED.get(classLoader);
+		if (resolver == null) {
+			BoundedClassResolver created = new BoundedClassResolver(classLoader);
+			resolver = SHARED.putIfAbsent(classLoader, created);
+			if (resolver == null) {
+				resolver = created;
+			}
+		}
+		return resolver;
+	}
+
+	@Override
+	public Class<?> resolve(String className) throws ClassNotFoundException {
+		if (this.allowList != null && !this.allowList.permits(className)) {
+			throw new ClassNotFoundException(String.format(
+					"Class [%s] is not on the allow list", className));
+		}
+
+		try {
+			return this.cache.get(className);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ClassNotFoundException) {
+				throw (ClassNotFoundException) e.getCause();
+			}
+			throw new ClassNotFoundException(className, e.getCause());
+		}
+	}
+
+	private static ClassLoader defaultClassLoader() {
+		ClassLoader contextClassLoader = Thread.currentThread()
+				.getContextClassLoader();
+		if (contextClassLoader != null) {
+			return contextClassLoader;
+		}
+		return BoundedClassResolver.class.getClassLoader();
+	}
+}
@@ -0,0 +1,112 @@
+package uk.co.bssd.vesta.codec;
+
+import java.util.UUID;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+final class BuiltInSerializers {
+
+	private static final int STRING_TYPE_ID = 2;
+	private static final int INTEGER_TYPE_ID = 3;
+	private static final int LONG_TYPE_ID = 4;
+	private static final int BOOLEAN_TYPE_ID = 5;
+	private static final int DOUBLE_TYPE_ID = 6;
+	private static final int UUID_TYPE_ID = 7;
+
+	private BuiltInSerializers() {
+	}
+
+	static void registerWith(BinaryCodec codec) {
+		codec.registerType(STRING_TYPE_ID, String.class, new StringSerializer());
+		codec.registerType(INTEGER_TYPE_ID, Integer.class,
+				new IntegerSerializer());
+		codec.registerType(LONG_TYPE_ID, Long.class, new LongSerializer());
+		codec.registerType(BOOLEAN_TYPE_ID, Boolean.class,
+				new BooleanSerializer());
+		codec.registerType(DOUBLE_TYPE_ID, Double.class,
+				new DoubleSerializer());
+		codec.registerType(UUID_TYPE_ID, UUID.class, new UuidSerializer());
+	}
+
+	private static class StringSerializer implements BinarySerializer<String> {
+
+		@Override
+		public void write(BinaryCodec codec, ChannelBuffer buffer, String value) {
+			codec.writeString(buffer, value);
+		}
+
+		@Override
+		public String read(BinaryCodec codec, ChannelBuffer buffer) {
+			return codec.readString(buffer);
+		}
+	}
+
+	private static class IntegerSerializer implements
+			BinarySerializer<Integer> {
+
+		@Override
+		public void write(BinaryCodec codec, ChannelBuffer buffer,
+				Integer value) {
+			buffer.writeInt(value.intValue());
+		}
+
+		@Override
+		public Integer read(BinaryCodec codec, ChannelBuffer buffer) {
+			return Integer.valueOf(buffer.readInt());
+		}
+	}
+
+	private static class LongSerializer implements BinarySerializer<Long> {
+
+		@Override
+		public void write(BinaryCodec codec, ChannelBuffer buffer, Long value) {
+			buffer.writeLong(value.longValue());
+		}
+
+		@Override
+		public Long read(BinaryCodec codec, ChannelBuffer buffer) {
+			return Long.valueOf(buffer.readLong());
+		}
+	}
+
+	private static class BooleanSerializer implements
+			BinarySerializer<Boolean> {
+
+		@Override
+		public void write(BinaryCodec codec, ChannelBuffer buffer,
+				Boolean value) {
+			buffer.writeByte(value.booleanValue() ? 1 : 0);
+		}
+
+		@Override
+		public Boolean read(BinaryCodec codec, ChannelBuffer buffer) {
+			return Boolean.valueOf(buffer.readByte() != 0);
+		}
+	}
+
+	private static class DoubleSerializer implements BinarySerializer<Double> {
+
+		@Override
+		public void write(BinaryCodec codec, ChannelBuffer buffer, Double value) {
+			buffer.writeDouble(value.doubleValue());
+		}
+
+		@Override
+		public Double read(BinaryCodec codec, ChannelBuffer buffer) {
+			return Double.valueOf(buffer.readDouble());
+		}
+	}
+
+	private static class UuidSerializer implements BinarySerializer<UUID> {
+
+		@Override
+		public void write(BinaryCodec codec, ChannelBuffer buffer, UUID value) {
+			codec.writeUuid(buffer, value);
+		}
+
+		@Override
+		public UUID read(BinaryCodec codec, ChannelBuffer buffer) {
+			return codec.readUuid(buffer);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package uk.co.bssd.vesta.codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+public class ClassAllowList {
+
+	private static final String VESTA_MESSAGE_PACKAGE = "uk.co.bssd.vesta.message.";
+
+	private final Map<String, Class<?>> allowedClasses;
+	private final Set<String> allowedPackages;
+	private final Set<String> allowedPackageClasses;
+
+	public ClassAllowList() {
+		this.allowedClasses = new ConcurrentHashMap<String, Class<?>>();
+		this.allowedPackages = new CopyOnWriteArraySet<String>();
+		this.allowedPackageClasses = new CopyOnWriteArraySet<String>();
+	}
+
+	// vesta's own messages, java.lang's values and the exceptions handlers
+	// throw back to callers, and the common collection and value classes
+	public static ClassAllowList standard() {
+		// a serialized Throwable holds its suppressed exceptions in one of
+		// these, so every failure response needs them
+		Class<?> unmodifiableList = Collections.unmodifiableList(
+				new ArrayList<Object>()).getClass();
+
+		return new ClassAllowList().allowPackage(VESTA_MESSAGE_PACKAGE)
+				.allowPackageClasses("java.lang")
+				.allow(BigDecimal.class, BigInteger.class)
+				.allow(ArrayList.class, LinkedList.class, HashMap.class,
+						LinkedHashMap.class, TreeMap.class, HashSet.class,
+						LinkedHashSet.class, TreeSet.class, Date.class,
+						UUID.class)
+				.allow(unmodifiableList, unmodifiableList.getSuperclass(),
+						unmodifiableList.getSuperclass().getSuperclass());
+	}
+
+	public ClassAllowList allow(Class<?>... classes) {
+		for (Class<?> clazz : classes) {
+			this.allowedClasses.put(clazz.getName(), clazz);
+		}
+		return this;
+	}
+
+	public ClassAllowList allowPackage(String packagePrefix) {
+		this.allowedPackages.add(packagePrefix.endsWith(".") ? packagePrefix
+				: packagePrefix + ".");
+		return this;
+	}
+
+	// the classes directly in the package, none from its subpackages
+	public ClassAllowList allowPackageClasses(String packageName) {
+		this.allowedPackageClasses.add(packageName.endsWith(".") ? packageName
+				.substring(0, packageName.length() - 1) : packageName);
+		return this;
+	}
+
+	public boolean permits(String className) {
+		String elementClassName = elementClassName(className);
+		if (elementClassName == null
+				|| this.allowedClasses.containsKey(elementClassName)) {
+			return true;
+		}
+		int lastDot = elementClassName.lastIndexOf('.');
+		if (lastDot > 0
+				&& this.allowedPackageClasses.contains(elementClassName
+						.substring(0, lastDot))) {
+			return true;
+		}
+		for (String packagePrefix : this.allowedPackages) {
+			if (elementClassName.startsWith(packagePrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public Collection<Class<?>> allowedClasses() {
+		return Collections.unmodifiableCollection(this.allowedClasses.values());
+	}
+
+	// arrays are judged by their element type, primitive arrays are always
+	// permitted and so have no element class name
+	private String elementClassName(String className) {
+		int dimensions = 0;
+		while (dimensions < className.length()
+				&& className.charAt(dimensions) == '[') {
+			dimensions++;
+		}
+		if (dimensions == 0) {
+			return className;
+		}
+		if (className.charAt(dimensions) != 'L') {
+			return null;
+		}
+		return className.substring(dimensions + 1, className.length() - 1);
+	}
+}
@@ -0,0 +1,11 @@
+package uk.co.bssd.vesta.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler;
+
+public interface Codec {
+
+	ChannelBuffer encode(Object message) throws Exception;
+
+	ChannelHandler newDecoder();
+}
@@ -0,0 +1,57 @@
+package uk.co.bssd.vesta.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+import uk.co.bssd.vesta.message.SynchronousRequest;
+import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.trace.RequestTracer;
+import uk.co.bssd.vesta.trace.Trace;
+import uk.co.bssd.vesta.trace.TraceStage;
+
+public class CodecEncoder extends OneToOneEncoder {
+
+	private final Codec codec;
+	private final RequestTracer tracer;
+
+	public CodecEncoder(Codec codec) {
+		this(codec, null);
+	}
+
+	public CodecEncoder(Codec codec, RequestTracer tracer) {
+		this.codec = codec;
+		this.tracer = tracer;
+	}
+
+	@Override
+	protected Object encode(ChannelHandlerContext ctx, Channel channel,
+			Object message) throws Exception {
+		// already encoded frames are written through untouched
+		if (message instanceof ChannelBuffer) {
+			return message;
+		}
+		Object encoded = this.codec.encode(message);
+		if (this.tracer != null) {
+			onEncoded(message);
+		}
+		return encoded;
+	}
+
+	// encoding the response is the last stage a server traces
+	private void onEncoded(Object message) {
+		if (message instanceof SynchronousRequest) {
+			Trace trace = ((SynchronousRequest) message).trace();
+			if (trace != null) {
+				trace.mark(TraceStage.CLIENT_ENCODED);
+			}
+		} else if (message instanceof SynchronousResponse) {
+			Trace trace = ((SynchronousResponse) message).trace();
+			if (trace != null) {
+				trace.mark(TraceStage.SERVER_RESPONSE_ENCODED);
+				this.tracer.onTraceCompleted(trace);
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package uk.co.bssd.vesta.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+
+import org.jboss.netty.handler.codec.serialization.ClassResolver;
+
+// reads the compact stream format written by netty's ObjectEncoder
+public class CompactObjectInputStream extends ResolvingObjectInputStream {
+
+	private static final int STREAM_VERSION = 5;
+	private static final int TYPE_FAT_DESCRIPTOR = 0;
+	private static final int TYPE_THIN_DESCRIPTOR = 1;
+
+	public CompactObjectInputStream(InputStream in, ClassResolver classResolver)
+			throws IOException {
+		super(in, classResolver);
+	}
+
+	@Override
+	protected void readStreamHeader() throws IOException {
+		int version = readByte() & 0xFF;
+		if (version != STREAM_VERSION) {
+			throw new StreamCorruptedException("Unsupported version: "
+					+ version);
+		}
+	}
+
+	@Override
+	protected ObjectStreamClass readClassDescriptor() throws IOException,
+			ClassNotFoundException {
+		int type = read();
+		if (type < 0) {
+			throw new EOFException();
+		}
+
+		switch (type) {
+		case TYPE_FAT_DESCRIPTOR:
+			return super.readClassDescriptor();
+		case TYPE_THIN_DESCRIPTOR:
+			String className = readUTF();
+			Class<?> clazz = classResolver().resolve(className);
+			return ObjectStreamClass.lookupAny(clazz);
+		default:
+			throw new StreamCorruptedException(
+					"Unexpected class descriptor type: " + type);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package uk.co.bssd.vesta.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.handler.codec.serialization.ClassResolver;
+import org.jboss.netty.handler.codec.serialization.ObjectEncoderOutputStream;
+
+public class JavaSerializationCodec implements Codec {
+
+	private static final int ESTIMATED_LENGTH = 512;
+	private static final int DEFAULT_MAX_OBJECT_SIZE = 1024 * 1024;
+
+	private final ClassResolver classResolver;
+	private final int maxObjectSize;
+
+	public JavaSerializationCodec() {
+		this(BoundedClassResolver.shared());
+	}
+
+	public JavaSerializationCodec(ClassResolver classResolver) {
+		this(classResolver, DEFAULT_MAX_OBJECT_SIZE);
+	}
+
+	public JavaSerializationCodec(ClassResolver classResolver,
+			int maxObjectSize) {
+		this.classResolver = classResolver;
+		this.maxObjectSize = maxObjectSize;
+	}
+
+	@Override
+	public ChannelBuffer encode(Object message) throws Exception {
+		ChannelBufferOutputStream bufferStream = new ChannelBufferOutputStream(
+				ChannelBuffers.dynamicBuffer(ESTIMATED_LENGTH));
+
+		// produces the same length prefixed frames as netty's ObjectEncoder
+		ObjectEncoderOutputStream objectStream = new ObjectEncoderOutputStream(
+				bufferStream, ESTIMATED_LENGTH);
+		objectStream.writeObject(message);
+		objectStream.flush();
+
+		return bufferStream.buffer();
+	}
+
+	@Override
+	public ChannelHandler newDecoder() {
+		return new JavaSerializationDecoder(this.maxObjectSize,
+				this.classResolver);
+	}
+}
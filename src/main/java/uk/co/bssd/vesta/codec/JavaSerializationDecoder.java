@@ -0,0 +1,47 @@
+package uk.co.bssd.vesta.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.serialization.ClassResolver;
+
+public class JavaSerializationDecoder extends LengthFieldBasedFrameDecoder {
+
+	private static final int LENGTH_FIELD_SIZE = 4;
+
+	private final ClassResolver classResolver;
+
+	public JavaSerializationDecoder(int maxObjectSize,
+			ClassResolver classResolver) {
+		super(maxObjectSize, 0, LENGTH_FIELD_SIZE, 0, LENGTH_FIELD_SIZE);
+		this.classResolver = classResolver;
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel,
+			ChannelBuffer buffer) throws Exception {
+		ChannelBuffer frame = (ChannelBuffer) super
+				.decode(ctx, channel, buffer);
+		if (frame == null) {
+			return null;
+		}
+
+		CompactObjectInputStream objectStream = new CompactObjectInputStream(
+				new ChannelBufferInputStream(frame), this.classResolver);
+		try {
+			return objectStream.readObject();
+		} finally {
+			objectStream.close();
+		}
+	}
+
+	@Override
+	protected ChannelBuffer extractFrame(ChannelBuffer buffer, int index,
+			int length) {
+		// the frame is fully consumed before decode returns so a view of the
+		// cumulation buffer is enough
+		return buffer.slice(index, length);
+	}
+}
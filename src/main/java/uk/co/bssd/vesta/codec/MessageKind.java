@@ -0,0 +1,20 @@
+package uk.co.bssd.vesta.codec;
+
+public enum MessageKind {
+
+	MESSAGE, ASYNCHRONOUS_REQUEST, SYNCHRONOUS_REQUEST, SYNCHRONOUS_RESPONSE, SUBSCRIBE, UNSUBSCRIBE, CANCEL;
+
+	private static final MessageKind[] KINDS = values();
+
+	public static MessageKind forCode(int code) {
+		if (code < 0 || code >= KINDS.length) {
+			throw new IllegalArgumentException(String.format(
+					"Unknown message kind [%d]", code));
+		}
+		return KINDS[code];
+	}
+
+	public int code() {
+		return ordinal();
+	}
+}
@@ -0,0 +1,43 @@
+package uk.co.bssd.vesta.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jboss.netty.handler.codec.serialization.ClassResolver;
+
+public class ResolvingObjectInputStream extends ObjectInputStream {
+
+	private static final Set<String> PRIMITIVE_TYPES = new HashSet<String>(
+			Arrays.asList("boolean", "byte", "char", "short", "int", "long",
+					"float", "double", "void"));
+
+	private final ClassResolver classResolver;
+
+	public ResolvingObjectInputStream(InputStream in,
+			ClassResolver classResolver) throws IOException {
+		super(in);
+		this.classResolver = classResolver;
+	}
+
+	protected ClassResolver classResolver() {
+		return this.classResolver;
+	}
+
+	@Override
+	protected Class<?> resolveClass(ObjectStreamClass descriptor)
+			throws IOException, ClassNotFoundException {
+		String className = descriptor.getName();
+
+		// primitives cannot be loaded by name, everything else must go
+		// through the resolver so that an allow list cannot be bypassed
+		if (PRIMITIVE_TYPES.contains(className)) {
+			return super.resolveClass(descriptor);
+		}
+		return this.classResolver.resolve(className);
+	}
+}
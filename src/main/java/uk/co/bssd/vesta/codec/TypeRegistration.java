@@ -0,0 +1,27 @@
+package uk.co.bssd.vesta.codec;
+
+public class TypeRegistration<T> {
+
+	private final int typeId;
+	private final Class<T> type;
+	private final BinarySerializer<T> serializer;
+
+	public TypeRegistration(int typeId, Class<T> type,
+			BinarySerializer<T> serializer) {
+		this.typeId = typeId;
+		this.type = type;
+		this.serializer = serializer;
+	}
+
+	public int typeId() {
+		return this.typeId;
+	}
+
+	public Class<T> type() {
+		return this.type;
+	}
+
+	public BinarySerializer<T> serializer() {
+		return this.serializer;
+	}
+}
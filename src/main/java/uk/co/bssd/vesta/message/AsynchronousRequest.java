@@ -1,26 +1,25 @@
 package uk.co.bssd.vesta.message;
 
 import java.io.Serializable;
-import java.util.UUID;
 
 public class AsynchronousRequest implements Serializable{
 
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
-	private final UUID messageId;
+	private final long messageId;
 	
 	private final Serializable payload;
 	
-	public AsynchronousRequest(Serializable payload) {
-		this.messageId = UUID.randomUUID();
+	public AsynchronousRequest(long messageId, Serializable payload) {
+		this.messageId = messageId;
 		this.payload = payload;
 	}
 	
-	public UUID messageId() {
+	public long messageId() {
 		return this.messageId;
 	}
 	
 	public Serializable payload() {
 		return this.payload;
 	}
-}
\ No newline at end of file
+}
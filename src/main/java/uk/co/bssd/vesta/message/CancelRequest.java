@@ -0,0 +1,20 @@
+package uk.co.bssd.vesta.message;
+
+import java.io.Serializable;
+
+// sent by a client that has stopped waiting for the response to one of its
+// synchronous requests
+public class CancelRequest implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long correlationId;
+
+	public CancelRequest(long correlationId) {
+		this.correlationId = correlationId;
+	}
+
+	public long correlationId() {
+		return this.correlationId;
+	}
+}
@@ -1,26 +1,84 @@
 package uk.co.bssd.vesta.message;
 
 import java.io.Serializable;
-import java.util.UUID;
+
+import uk.co.bssd.vesta.Deadline;
+import uk.co.bssd.vesta.trace.Trace;
 
 public class SynchronousRequest implements Serializable{
 
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 3L;
 
-	private final UUID correlationId;
+	private final long correlationId;
 	
 	private final Serializable payload;
 	
-	public SynchronousRequest(Serializable payload) {
-		this.correlationId = UUID.randomUUID();
+	// the trace context carried on the wire, zero when the request is not
+	// traced. the trace itself is local to each side
+	private final long traceId;
+	
+	// how long the caller will wait, zero for no limit. relative rather than
+	// absolute as the two sides' clocks cannot be compared, the receiver
+	// turns it into a deadline on its own clock
+	private final long timeoutMillis;
+	
+	private transient Trace trace;
+	
+	private transient Deadline deadline;
+	
+	public SynchronousRequest(long correlationId, Serializable payload) {
+		this(correlationId, payload, 0, 0);
+	}
+	
+	public SynchronousRequest(long correlationId, Serializable payload, long traceId, long timeoutMillis) {
+		this.correlationId = correlationId;
 		this.payload = payload;
+		this.traceId = traceId;
+		this.timeoutMillis = timeoutMillis;
 	}
 	
-	public UUID correlationId() {
+	public SynchronousRequest(long correlationId, Serializable payload, Trace trace, long timeoutMillis) {
+		this(correlationId, payload, trace == null ? 0 : trace.traceId(), timeoutMillis);
+		this.trace = trace;
+	}
+	
+	public long correlationId() {
 		return this.correlationId;
 	}
 	
 	public Serializable payload() {
 		return this.payload;
 	}
-}
\ No newline at end of file
+	
+	public long traceId() {
+		return this.traceId;
+	}
+	
+	public boolean isTraced() {
+		return this.traceId != 0;
+	}
+	
+	public Trace trace() {
+		return this.trace;
+	}
+	
+	public void attachTrace(Trace trace) {
+		this.trace = trace;
+	}
+	
+	public long timeoutMillis() {
+		return this.timeoutMillis;
+	}
+	
+	public boolean hasTimeout() {
+		return this.timeoutMillis > 0;
+	}
+	
+	public Deadline deadline() {
+		return this.deadline == null ? Deadline.none() : this.deadline;
+	}
+	
+	public void attachDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+}
@@ -1,23 +1,32 @@
 package uk.co.bssd.vesta.message;
 
 import java.io.Serializable;
-import java.util.UUID;
+
+import uk.co.bssd.vesta.trace.Trace;
 
 public class SynchronousResponse implements Serializable {
 
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
-	private final UUID correlationId;
+	private final long correlationId;
 	private final SynchronousResult result;
 	private final Serializable payload;
+	
+	// the responding side's trace of the request, never sent
+	private final transient Trace trace;
+
+	public SynchronousResponse(long correlationId, SynchronousResult result, Serializable payload) {
+		this(correlationId, result, payload, null);
+	}
 
-	public SynchronousResponse(UUID correlationId, SynchronousResult result, Serializable payload) {
+	public SynchronousResponse(long correlationId, SynchronousResult result, Serializable payload, Trace trace) {
 		this.correlationId = correlationId;
 		this.result = result;
 		this.payload = payload;
+		this.trace = trace;
 	}
 	
-	public UUID correlationId() {
+	public long correlationId() {
 		return this.correlationId;
 	}
 	
@@ -32,4 +41,8 @@ public class SynchronousResponse implements Serializable {
 	public Serializable payload() {
 		return this.payload;
 	}
+	
+	public Trace trace() {
+		return this.trace;
+	}
 }
\ No newline at end of file
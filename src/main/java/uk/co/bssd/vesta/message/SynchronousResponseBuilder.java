@@ -1,21 +1,25 @@
 package uk.co.bssd.vesta.message;
 
 import java.io.Serializable;
-import java.util.UUID;
+
+import uk.co.bssd.vesta.ServerOverloadedException;
+import uk.co.bssd.vesta.trace.Trace;
 
 public class SynchronousResponseBuilder {
 
-	private final UUID correlationId;
+	private final long correlationId;
+	private final Trace trace;
 	
 	private SynchronousResult result;
 	private Serializable payload;
 
-	private SynchronousResponseBuilder(UUID correlationId) {
+	private SynchronousResponseBuilder(long correlationId, Trace trace) {
 		this.correlationId = correlationId;
+		this.trace = trace;
 	}
 	
 	public static SynchronousResponseBuilder responseFor(SynchronousRequest request) {
-		return new SynchronousResponseBuilder(request.correlationId());
+		return new SynchronousResponseBuilder(request.correlationId(), request.trace());
 	}
 	
 	public SynchronousResponseBuilder success(Serializable response) {
@@ -30,7 +34,13 @@ public class SynchronousResponseBuilder {
 		return this;
 	}
 	
+	public SynchronousResponseBuilder overloaded(ServerOverloadedException e) {
+		this.result = SynchronousResult.OVERLOADED;
+		this.payload = e;
+		return this;
+	}
+	
 	public SynchronousResponse build() {
-		return new SynchronousResponse(this.correlationId, this.result, this.payload);
+		return new SynchronousResponse(this.correlationId, this.result, this.payload, this.trace);
 	}
 }
\ No newline at end of file
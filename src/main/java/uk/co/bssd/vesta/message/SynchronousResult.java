@@ -2,5 +2,5 @@ package uk.co.bssd.vesta.message;
 
 public enum SynchronousResult {
 
-	SUCCESS, FAILURE;
-}
\ No newline at end of file
+	SUCCESS, FAILURE, OVERLOADED;
+}
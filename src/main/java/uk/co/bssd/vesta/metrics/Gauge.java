@@ -0,0 +1,6 @@
+package uk.co.bssd.vesta.metrics;
+
+public interface Gauge {
+
+	long value();
+}
@@ -0,0 +1,10 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.Map;
+
+// a family of gauges whose names are only known when they are read, such as
+// one per topic
+public interface GaugeSet {
+
+	Map<String, ? extends Number> values();
+}
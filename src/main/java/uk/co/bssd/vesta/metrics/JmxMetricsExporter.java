@@ -0,0 +1,115 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// every metric in the registry is a read only long attribute. the attribute
+// list is rebuilt on each request as per channel and per topic metrics come
+// and go
+public class JmxMetricsExporter implements DynamicMBean {
+
+	private final MetricsRegistry registry;
+
+	private MBeanServer server;
+	private ObjectName name;
+
+	public JmxMetricsExporter(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	public synchronized void register(MBeanServer server, ObjectName name) {
+		if (this.server != null) {
+			throw new IllegalStateException(String.format(
+					"Metrics already exported as [%s]", this.name));
+		}
+		try {
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			throw new IllegalStateException(String.format(
+					"Unable to export metrics as [%s]", name), e);
+		}
+		this.server = server;
+		this.name = name;
+	}
+
+	public synchronized void unregister() {
+		if (this.server == null) {
+			return;
+		}
+		try {
+			this.server.unregisterMBean(this.name);
+		} catch (JMException e) {
+			// already gone
+		}
+		this.server = null;
+		this.name = null;
+	}
+
+	@Override
+	public Object getAttribute(String attribute)
+			throws AttributeNotFoundException {
+		Number value = this.registry.snapshot().get(attribute);
+		if (value == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return Long.valueOf(value.longValue());
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		SortedMap<String, Number> snapshot = this.registry.snapshot();
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			Number value = snapshot.get(attribute);
+			if (value != null) {
+				list.add(new Attribute(attribute, Long.valueOf(value
+						.longValue())));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute)
+			throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(String.format(
+				"Metric [%s] is read only", attribute.getName()));
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) {
+		throw new UnsupportedOperationException(actionName);
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (String metric : this.registry.snapshot().keySet()) {
+			attributes.add(new MBeanAttributeInfo(metric, Long.class.getName(),
+					metric, true, false, false));
+		}
+		return new MBeanInfo(getClass().getName(), "Vesta metrics",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+				new MBeanConstructorInfo[0], new MBeanOperationInfo[0],
+				new MBeanNotificationInfo[0]);
+	}
+}
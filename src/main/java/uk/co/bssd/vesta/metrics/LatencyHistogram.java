@@ -0,0 +1,144 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// log-linear buckets: every power of two range is split into eight equal
+// sub buckets, so a recorded value is within 12.5% of its bucket's bounds.
+// values are nanoseconds, recording is a single add into a fixed array.
+// like StripedCounter, each thread records into one of several stripes of
+// buckets so threads seeing similar latencies rarely share a cache line
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	// a stripe is about 4KB, so their number is kept small
+	private static final int MAX_STRIPES = 8;
+
+	// a 64 byte cache line holds eight longs, between stripes
+	private static final int PADDING = 8;
+	private static final int STRIPE_LENGTH = BUCKETS + PADDING;
+
+	private final AtomicLongArray buckets;
+	private final int mask;
+	private final StripedCounter total;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		this(defaultStripes());
+	}
+
+	public LatencyHistogram(int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException(String.format(
+					"Stripes [%d] must be at least one", stripes));
+		}
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes) {
+			size <<= 1;
+		}
+		this.buckets = new AtomicLongArray(size * STRIPE_LENGTH);
+		this.mask = size - 1;
+		this.total = new StripedCounter(size);
+		this.max = new AtomicLong();
+	}
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		int stripe = StripedCounter.threadHash() & this.mask;
+		this.buckets.incrementAndGet(stripe * STRIPE_LENGTH
+				+ bucketIndex(value));
+		this.total.add(value);
+		updateMax(value);
+	}
+
+	public long count() {
+		long count = 0;
+		for (long bucket : bucketCounts()) {
+			count += bucket;
+		}
+		return count;
+	}
+
+	public long max() {
+		return this.max.get();
+	}
+
+	public long mean() {
+		long count = count();
+		return count == 0 ? 0 : this.total.sum() / count;
+	}
+
+	// the upper bound of the bucket holding the value at the percentile,
+	// never more than the largest value recorded
+	public long percentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(String.format(
+					"Percentile [%s] must be between 0 and 100", percentile));
+		}
+		long[] counts = bucketCounts();
+		long count = 0;
+		for (long bucket : counts) {
+			count += bucket;
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), max());
+			}
+		}
+		return max();
+	}
+
+	// every stripe's buckets added together
+	private long[] bucketCounts() {
+		long[] counts = new long[BUCKETS];
+		for (int stripe = 0; stripe <= this.mask; stripe++) {
+			int base = stripe * STRIPE_LENGTH;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] += this.buckets.get(base + i);
+			}
+		}
+		return counts;
+	}
+
+	private void updateMax(long value) {
+		long current;
+		while (value > (current = this.max.get())) {
+			if (this.max.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+
+	private static int defaultStripes() {
+		return Math.min(MAX_STRIPES, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,26 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+public class LoggingMetricsReporter implements MetricsReporter {
+
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(LoggingMetricsReporter.class);
+
+	@Override
+	public void report(SortedMap<String, Number> metrics) {
+		if (!logger.isInfoEnabled()) {
+			return;
+		}
+		StringBuilder builder = new StringBuilder("Metrics");
+		for (Map.Entry<String, Number> metric : metrics.entrySet()) {
+			builder.append(' ').append(metric.getKey()).append('=')
+					.append(metric.getValue());
+		}
+		logger.info(builder.toString());
+	}
+}
@@ -0,0 +1,82 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.Hashtable;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+public class MetricsConfiguration {
+
+	private MetricsReporter reporter;
+	private long reportPeriodMillis;
+	private ObjectName jmxObjectName;
+
+	public static MetricsConfiguration defaults() {
+		return new MetricsConfiguration();
+	}
+
+	public MetricsConfiguration reporter(MetricsReporter reporter,
+			long reportPeriodMillis) {
+		if (reportPeriodMillis <= 0) {
+			throw new IllegalArgumentException(String.format(
+					"Report period [%d] ms must be positive",
+					reportPeriodMillis));
+		}
+		this.reporter = reporter;
+		this.reportPeriodMillis = reportPeriodMillis;
+		return this;
+	}
+
+	public MetricsConfiguration jmxObjectName(String jmxObjectName) {
+		try {
+			this.jmxObjectName = new ObjectName(jmxObjectName);
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid JMX object name [%s]", jmxObjectName), e);
+		}
+		return this;
+	}
+
+	// a copy exported under the same name with one more key property, so
+	// that several owners sharing a configuration each get their own MBean
+	public MetricsConfiguration withJmxKeyProperty(String key, String value) {
+		if (this.jmxObjectName == null) {
+			return this;
+		}
+		Hashtable<String, String> properties = new Hashtable<String, String>(
+				this.jmxObjectName.getKeyPropertyList());
+		properties.put(key, value);
+
+		MetricsConfiguration copy = new MetricsConfiguration();
+		copy.reporter = this.reporter;
+		copy.reportPeriodMillis = this.reportPeriodMillis;
+		try {
+			copy.jmxObjectName = new ObjectName(
+					this.jmxObjectName.getDomain(), properties);
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid JMX key property [%s=%s]", key, value), e);
+		}
+		return copy;
+	}
+
+	public MetricsReporter reporter() {
+		return this.reporter;
+	}
+
+	public long reportPeriodMillis() {
+		return this.reportPeriodMillis;
+	}
+
+	public boolean isReportingEnabled() {
+		return this.reporter != null;
+	}
+
+	public ObjectName jmxObjectName() {
+		return this.jmxObjectName;
+	}
+
+	public boolean isJmxEnabled() {
+		return this.jmxObjectName != null;
+	}
+}
@@ -0,0 +1,95 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// metrics are created on first use and then held by whoever records into
+// them, so the registry is only consulted when a metric is created or read
+public class MetricsRegistry {
+
+	private final ConcurrentMap<String, StripedCounter> counters;
+	private final ConcurrentMap<String, LatencyHistogram> histograms;
+	private final ConcurrentMap<String, Gauge> gauges;
+	private final ConcurrentMap<String, GaugeSet> gaugeSets;
+
+	public MetricsRegistry() {
+		this.counters = new ConcurrentHashMap<String, StripedCounter>();
+		this.histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+		this.gauges = new ConcurrentHashMap<String, Gauge>();
+		this.gaugeSets = new ConcurrentHashMap<String, GaugeSet>();
+	}
+
+	public StripedCounter counter(String name) {
+		StripedCounter counter = this.counters.get(name);
+		if (counter == null) {
+			StripedCounter created = new StripedCounter();
+			counter = this.counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	public LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = this.histograms.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = this.histograms.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	public void gauge(String name, Gauge gauge) {
+		this.gauges.put(name, gauge);
+	}
+
+	// each value of the set is reported as prefix.key
+	public void gaugeSet(String prefix, GaugeSet gaugeSet) {
+		this.gaugeSets.put(prefix, gaugeSet);
+	}
+
+	public void remove(String name) {
+		this.counters.remove(name);
+		this.histograms.remove(name);
+		this.gauges.remove(name);
+		this.gaugeSets.remove(name);
+	}
+
+	// histograms are flattened into their count, mean, percentiles and max
+	public SortedMap<String, Number> snapshot() {
+		SortedMap<String, Number> snapshot = new TreeMap<String, Number>();
+		for (Map.Entry<String, StripedCounter> counter : this.counters
+				.entrySet()) {
+			snapshot.put(counter.getKey(), counter.getValue().sum());
+		}
+		for (Map.Entry<String, LatencyHistogram> histogram : this.histograms
+				.entrySet()) {
+			String name = histogram.getKey();
+			LatencyHistogram value = histogram.getValue();
+			snapshot.put(name + ".count", value.count());
+			snapshot.put(name + ".mean", value.mean());
+			snapshot.put(name + ".p50", value.percentile(50));
+			snapshot.put(name + ".p99", value.percentile(99));
+			snapshot.put(name + ".p999", value.percentile(99.9));
+			snapshot.put(name + ".max", value.max());
+		}
+		for (Map.Entry<String, Gauge> gauge : this.gauges.entrySet()) {
+			snapshot.put(gauge.getKey(), gauge.getValue().value());
+		}
+		for (Map.Entry<String, GaugeSet> gaugeSet : this.gaugeSets.entrySet()) {
+			String prefix = gaugeSet.getKey();
+			for (Map.Entry<String, ? extends Number> value : gaugeSet
+					.getValue().values().entrySet()) {
+				snapshot.put(prefix + "." + value.getKey(), value.getValue());
+			}
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,8 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.SortedMap;
+
+public interface MetricsReporter {
+
+	void report(SortedMap<String, Number> metrics);
+}
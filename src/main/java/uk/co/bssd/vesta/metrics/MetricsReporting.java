@@ -0,0 +1,75 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+// publishes a registry as configured for as long as its owner is running.
+// the timer is usually shared, so reporting reschedules itself rather than
+// relying on the timer being stopped
+public class MetricsReporting {
+
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(MetricsReporting.class);
+
+	private final MetricsRegistry registry;
+	private final MetricsConfiguration configuration;
+	private final JmxMetricsExporter jmxExporter;
+
+	private Timer timer;
+	private Timeout nextReport;
+
+	public MetricsReporting(MetricsRegistry registry,
+			MetricsConfiguration configuration) {
+		this.registry = registry;
+		this.configuration = configuration;
+		this.jmxExporter = new JmxMetricsExporter(registry);
+	}
+
+	public synchronized void start(Timer timer) {
+		if (this.configuration.isJmxEnabled() && this.timer == null) {
+			this.jmxExporter.register(
+					ManagementFactory.getPlatformMBeanServer(),
+					this.configuration.jmxObjectName());
+		}
+		this.timer = timer;
+		if (this.configuration.isReportingEnabled()) {
+			scheduleReport();
+		}
+	}
+
+	public synchronized void stop() {
+		if (this.nextReport != null) {
+			this.nextReport.cancel();
+			this.nextReport = null;
+		}
+		this.timer = null;
+		this.jmxExporter.unregister();
+	}
+
+	private synchronized void scheduleReport() {
+		if (this.timer != null) {
+			this.nextReport = this.timer.newTimeout(new ReportTask(),
+					this.configuration.reportPeriodMillis(),
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private class ReportTask implements TimerTask {
+
+		@Override
+		public void run(Timeout timeout) {
+			try {
+				configuration.reporter().report(registry.snapshot());
+			} catch (RuntimeException e) {
+				logger.warn("Metrics reporter failed", e);
+			}
+			scheduleReport();
+		}
+	}
+}
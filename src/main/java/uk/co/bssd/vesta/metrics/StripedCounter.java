@@ -0,0 +1,69 @@
+package uk.co.bssd.vesta.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// each thread adds to one of several cells, each cell on its own cache line,
+// so concurrent recorders rarely contend. reading sums every cell
+public class StripedCounter {
+
+	private static final int MAX_STRIPES = 64;
+
+	// a 64 byte cache line holds eight longs
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	public StripedCounter() {
+		this(defaultStripes());
+	}
+
+	public StripedCounter(int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException(String.format(
+					"Stripes [%d] must be at least one", stripes));
+		}
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes) {
+			size <<= 1;
+		}
+		this.cells = new AtomicLongArray(size * PADDING);
+		this.mask = size - 1;
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void decrement() {
+		add(-1);
+	}
+
+	public void add(long delta) {
+		this.cells.getAndAdd(cellIndex(), delta);
+	}
+
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < this.cells.length(); i += PADDING) {
+			sum += this.cells.get(i);
+		}
+		return sum;
+	}
+
+	private int cellIndex() {
+		return (threadHash() & this.mask) * PADDING;
+	}
+
+	// spreads consecutive thread ids over the low bits
+	static int threadHash() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int defaultStripes() {
+		return Math.min(MAX_STRIPES, Runtime.getRuntime()
+				.availableProcessors() * 2);
+	}
+}
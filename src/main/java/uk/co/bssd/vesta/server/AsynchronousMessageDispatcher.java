@@ -1,17 +1,23 @@
 package uk.co.bssd.vesta.server;
 
 import java.io.Serializable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
 
 import uk.co.bssd.vesta.message.AsynchronousRequest;
 
 public class AsynchronousMessageDispatcher {
 
-	private final ExecutorService executor;
+	private final DispatchExecutor executor;
+	private final DispatchKeySelector keySelector;
 	private final AsynchronousMessageHandlers<Serializable> messageHandlers;
+	private final ServerMetrics metrics;
 	
-	public AsynchronousMessageDispatcher(ExecutorService executor) {
+	public AsynchronousMessageDispatcher(DispatchExecutor executor, DispatchKeySelector keySelector, ServerMetrics metrics) {
 		this.executor = executor;
+		this.keySelector = keySelector;
+		this.metrics = metrics;
 		this.messageHandlers = new AsynchronousMessageHandlers<Serializable>();
 	}
 	
@@ -21,9 +27,27 @@ public class AsynchronousMessageDispatcher {
 		this.messageHandlers.add(clazz,  (AsynchronousMessageHandler<Serializable>)handler);
 	}
 	
-	public void dispatch(AsynchronousRequest request) {
-		AsynchronousMessageHandler<Serializable> handler = this.messageHandlers.forType(request.payload().getClass());
-		AsynchronousMessageTask task = new AsynchronousMessageTask(handler, request);
-		this.executor.submit(task);
+	public void dispatch(AsynchronousRequest request, Channel channel) {
+		Class<? extends Serializable> messageType = request.payload().getClass();
+		AsynchronousMessageHandler<Serializable> handler = this.messageHandlers.forType(messageType);
+		MessageTypeMetrics messageTypeMetrics = this.metrics.forMessageType(messageType);
+		messageTypeMetrics.onRequest();
+		
+		AsynchronousMessageTask task = new AsynchronousMessageTask(handler, request, this.metrics, messageTypeMetrics);
+		this.metrics.onQueued();
+		try {
+			this.executor.execute(this.keySelector.keyFor(channel, request.payload()), task);
+		} catch (RuntimeException e) {
+			this.metrics.onNotQueued();
+			throw e;
+		}
+	}
+	
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+	
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.executor.awaitTermination(timeout, unit);
 	}
 }
\ No newline at end of file
@@ -2,28 +2,49 @@ package uk.co.bssd.vesta.server;
 
 import java.io.Serializable;
 
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
 import uk.co.bssd.vesta.message.AsynchronousRequest;
 
 public class AsynchronousMessageTask implements Runnable {
 
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(AsynchronousMessageTask.class);
+
 	private final AsynchronousMessageHandler<Serializable> handler;
 	private final AsynchronousRequest request;
+	private final ServerMetrics metrics;
+	private final MessageTypeMetrics messageTypeMetrics;
+	private final long queuedNanos;
 
 	public AsynchronousMessageTask(AsynchronousMessageHandler<Serializable> handler,
-			AsynchronousRequest request) {
+			AsynchronousRequest request, ServerMetrics metrics,
+			MessageTypeMetrics messageTypeMetrics) {
 		this.handler = handler;
 		this.request = request;
+		this.metrics = metrics;
+		this.messageTypeMetrics = messageTypeMetrics;
+		this.queuedNanos = System.nanoTime();
 	}
 
 	@Override
 	public void run() {
+		long start = System.nanoTime();
+		this.metrics.onDequeued(start - this.queuedNanos);
 		Serializable payload = this.request.payload();
 		
 		try {
 			this.handler.onMessage(payload);
 		}
 		catch (RuntimeException e) {
-			// TODO log exception
+			// there is nobody to respond to, so the failure is only logged
+			this.messageTypeMetrics.onError();
+			logger.warn("Asynchronous handler for ["
+					+ payload.getClass().getName() + "] failed", e);
+		}
+		finally {
+			this.messageTypeMetrics.onHandled(System.nanoTime() - start);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.bssd.vesta.ServerOverloadedException;
+
+class Bulkhead {
+
+	private static final String TEMPLATE_MESSAGE = "Too many requests of type [%s], limit is %d executing and %d queued";
+
+	private final Class<?> messageType;
+	private final DispatchExecutor executor;
+	private final boolean ownsExecutor;
+	private final Semaphore permits;
+	private final int maxConcurrent;
+	private final int queueCapacity;
+
+	public Bulkhead(Class<?> messageType, DispatchExecutor executor,
+			boolean ownsExecutor, int maxConcurrent, int queueCapacity) {
+		this.messageType = messageType;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.maxConcurrent = maxConcurrent;
+		this.queueCapacity = queueCapacity;
+		this.permits = new Semaphore(maxConcurrent + queueCapacity);
+	}
+
+	public boolean tryExecute(Object partitionKey, final Runnable task) {
+		if (!this.permits.tryAcquire()) {
+			return false;
+		}
+		try {
+			this.executor.execute(partitionKey, new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						permits.release();
+					}
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			this.permits.release();
+			return false;
+		}
+	}
+
+	public ServerOverloadedException overloaded() {
+		return new ServerOverloadedException(String.format(TEMPLATE_MESSAGE,
+				this.messageType.getName(), this.maxConcurrent,
+				this.queueCapacity));
+	}
+
+	public void shutdown() {
+		if (this.ownsExecutor) {
+			this.executor.shutdown();
+		}
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return !this.ownsExecutor
+				|| this.executor.awaitTermination(timeout, unit);
+	}
+}
@@ -1,50 +1,90 @@
 package uk.co.bssd.vesta.server;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.ImmutableSet;
 
 public class ChannelSubscriptions {
 
-	private final Multimap<String, Channel> subscriptionsByChannelName;
-	private final Multimap<Channel, String> subscriptionsByChannel;
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(ChannelSubscriptions.class);
+
+	private final CopyOnWriteSetMultimap<String, Channel> subscriptionsByChannelName;
+	private final CopyOnWriteSetMultimap<Channel, String> subscriptionsByChannel;
+	private final WildcardSubscriptions wildcardSubscriptions;
 
 	private final Set<SubscribeListener> subscribeListeners;
 	private final Set<UnsubscribeListener> unsubscribeListeners;
 	
 	public ChannelSubscriptions() {
-		this.subscriptionsByChannelName = HashMultimap.create();
-		this.subscriptionsByChannel = HashMultimap.create();
-		this.subscribeListeners = new HashSet<SubscribeListener>();
-		this.unsubscribeListeners = new HashSet<UnsubscribeListener>();
+		this.subscriptionsByChannelName = new CopyOnWriteSetMultimap<String, Channel>();
+		this.subscriptionsByChannel = new CopyOnWriteSetMultimap<Channel, String>();
+		this.wildcardSubscriptions = new WildcardSubscriptions();
+		this.subscribeListeners = new CopyOnWriteArraySet<SubscribeListener>();
+		this.unsubscribeListeners = new CopyOnWriteArraySet<UnsubscribeListener>();
 	}
 
 	public void subscribe(Channel channel, String channelName) {
-		this.subscriptionsByChannelName.put(channelName, channel);
+		if (TopicTrie.isPattern(channelName)) {
+			this.wildcardSubscriptions.subscribe(channelName, channel);
+		} else {
+			this.subscriptionsByChannelName.put(channelName, channel);
+		}
 		this.subscriptionsByChannel.put(channel, channelName);
 		notifySubscribeListeners(channel, channelName);
 	}
 	
 	public void unsubscribe(Channel channel, String channelName) {
-		this.subscriptionsByChannelName.remove(channelName, channel);
+		if (TopicTrie.isPattern(channelName)) {
+			this.wildcardSubscriptions.unsubscribe(channelName, channel);
+		} else {
+			this.subscriptionsByChannelName.remove(channelName, channel);
+		}
 		this.subscriptionsByChannel.remove(channel, channelName);
 		notifyUnsubscribeListeners(channel, channelName);
 	}
 
 	public void unsubscribeAll(Channel channel) {
-		Collection<String> channelNames = new HashSet<String>(this.subscriptionsByChannel.get(channel));
+		// the snapshot is immutable so it is safe to unsubscribe whilst iterating
+		Collection<String> channelNames = this.subscriptionsByChannel.get(channel);
 		for (String channelName : channelNames) {
 			unsubscribe(channel, channelName);
 		}
 	}
 	
+	// an immutable snapshot of clients subscribed to the channel by name or
+	// through a matching pattern, later subscriptions are not reflected in it
 	public Collection<Channel> subscribedClients(String channelName) {
-		return this.subscriptionsByChannelName.get(channelName);
+		ImmutableSet<Channel> exact = this.subscriptionsByChannelName.get(channelName);
+		ImmutableSet<Channel> matched = this.wildcardSubscriptions.match(channelName);
+		if (matched.isEmpty()) {
+			return exact;
+		}
+		if (exact.isEmpty()) {
+			return matched;
+		}
+		return ImmutableSet.<Channel>builder().addAll(exact).addAll(matched).build();
+	}
+	
+	// subscribers per topic name or pattern, counted from each channel's
+	// subscriptions so patterns are included without walking the trie
+	public Map<String, Integer> subscriberCounts() {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (Set<String> channelNames : this.subscriptionsByChannel.asMap().values()) {
+			for (String channelName : channelNames) {
+				Integer count = counts.get(channelName);
+				counts.put(channelName, count == null ? 1 : count + 1);
+			}
+		}
+		return counts;
 	}
 	
 	public void addSubscribeListener(SubscribeListener listener) {
@@ -60,7 +100,7 @@ public class ChannelSubscriptions {
 			try {
 				listener.onSubscribe(channel.getRemoteAddress(), channelName);
 			} catch (RuntimeException e) {
-				// TODO : log exception
+				logger.warn("Subscribe listener failed for channel [" + channelName + "]", e);
 			}
 		}
 	}
@@ -70,7 +110,7 @@ public class ChannelSubscriptions {
 			try {
 				listener.onUnsubscribe(channel.getRemoteAddress(), channelName);
 			} catch (RuntimeException e) {
-				// TODO : log exception
+				logger.warn("Unsubscribe listener failed for channel [" + channelName + "]", e);
 			}
 		}
 	}
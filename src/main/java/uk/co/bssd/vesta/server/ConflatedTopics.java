@@ -0,0 +1,27 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+class ConflatedTopics {
+
+	private final ConcurrentMap<String, ConflationKeyResolver> resolvers;
+
+	public ConflatedTopics() {
+		this.resolvers = new ConcurrentHashMap<String, ConflationKeyResolver>();
+	}
+
+	public void conflate(String topic, ConflationKeyResolver resolver) {
+		this.resolvers.put(topic, resolver);
+	}
+
+	// null when the topic is not conflated
+	public ConflationKey keyFor(String topic, Serializable message) {
+		ConflationKeyResolver resolver = this.resolvers.get(topic);
+		if (resolver == null) {
+			return null;
+		}
+		return new ConflationKey(topic, resolver.keyFor(message));
+	}
+}
@@ -0,0 +1,32 @@
+package uk.co.bssd.vesta.server;
+
+class ConflationKey {
+
+	private final String topic;
+	private final Object key;
+
+	public ConflationKey(String topic, Object key) {
+		this.topic = topic;
+		this.key = key;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * this.topic.hashCode()
+				+ (this.key == null ? 0 : this.key.hashCode());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ConflationKey)) {
+			return false;
+		}
+		ConflationKey other = (ConflationKey) obj;
+		return this.topic.equals(other.topic)
+				&& (this.key == null ? other.key == null : this.key
+						.equals(other.key));
+	}
+}
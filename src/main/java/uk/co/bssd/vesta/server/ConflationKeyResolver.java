@@ -0,0 +1,9 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+
+public interface ConflationKeyResolver {
+
+	// messages with equal keys on a conflated topic supersede one another
+	Object keyFor(Serializable message);
+}
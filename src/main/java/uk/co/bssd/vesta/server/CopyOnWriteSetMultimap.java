@@ -0,0 +1,76 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableSet;
+
+// readers get an immutable snapshot of the values for a key without locking,
+// writers replace the snapshot with compare and set
+public class CopyOnWriteSetMultimap<K, V> {
+
+	private final ConcurrentMap<K, ImmutableSet<V>> map;
+
+	public CopyOnWriteSetMultimap() {
+		this.map = new ConcurrentHashMap<K, ImmutableSet<V>>();
+	}
+
+	public ImmutableSet<V> get(K key) {
+		ImmutableSet<V> values = this.map.get(key);
+		return values == null ? ImmutableSet.<V> of() : values;
+	}
+
+	public boolean put(K key, V value) {
+		while (true) {
+			ImmutableSet<V> current = this.map.get(key);
+			if (current == null) {
+				if (this.map.putIfAbsent(key, ImmutableSet.of(value)) == null) {
+					return true;
+				}
+			} else if (current.contains(value)) {
+				return false;
+			} else {
+				ImmutableSet<V> updated = ImmutableSet.<V> builder()
+						.addAll(current).add(value).build();
+				if (this.map.replace(key, current, updated)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	public boolean remove(K key, V value) {
+		while (true) {
+			ImmutableSet<V> current = this.map.get(key);
+			if (current == null || !current.contains(value)) {
+				return false;
+			}
+			if (current.size() == 1) {
+				if (this.map.remove(key, current)) {
+					return true;
+				}
+			} else {
+				ImmutableSet.Builder<V> builder = ImmutableSet.builder();
+				for (V existing : current) {
+					if (!existing.equals(value)) {
+						builder.add(existing);
+					}
+				}
+				if (this.map.replace(key, current, builder.build())) {
+					return true;
+				}
+			}
+		}
+	}
+
+	public int keyCount() {
+		return this.map.size();
+	}
+
+	// a live read only view, each value is itself an immutable snapshot
+	public Map<K, ImmutableSet<V>> asMap() {
+		return Collections.unmodifiableMap(this.map);
+	}
+}
@@ -0,0 +1,15 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.TimeUnit;
+
+public interface DispatchExecutor {
+
+	// tasks submitted with equal partition keys must run in submission order
+	void execute(Object partitionKey, Runnable task);
+
+	void shutdown();
+
+	// true once every task submitted before shutdown has finished
+	boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException;
+}
@@ -0,0 +1,57 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public final class DispatchExecutors {
+
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	private DispatchExecutors() {
+	}
+
+	public static DispatchExecutor partitioned() {
+		return partitioned(Runtime.getRuntime().availableProcessors());
+	}
+
+	public static DispatchExecutor partitioned(int partitions) {
+		return partitioned(partitions, UNBOUNDED,
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	// one single threaded worker per partition, so ordering holds per key
+	public static DispatchExecutor partitioned(int partitions,
+			int queueCapacityPerPartition,
+			RejectedExecutionHandler rejectionPolicy) {
+		return new PartitionedDispatchExecutor(partitions,
+				queueCapacityPerPartition, rejectionPolicy);
+	}
+
+	// no ordering guarantees between tasks
+	public static DispatchExecutor pooled(int threads, int queueCapacity,
+			RejectedExecutionHandler rejectionPolicy) {
+		return new PooledDispatchExecutor(threads, queueCapacity,
+				rejectionPolicy);
+	}
+
+	// runs on an externally owned executor which is left running on shutdown
+	public static DispatchExecutor shared(final Executor executor) {
+		return new DispatchExecutor() {
+			@Override
+			public void execute(Object partitionKey, Runnable task) {
+				executor.execute(task);
+			}
+
+			@Override
+			public void shutdown() {
+			}
+
+			@Override
+			public boolean awaitTermination(long timeout, TimeUnit unit) {
+				return true;
+			}
+		};
+	}
+}
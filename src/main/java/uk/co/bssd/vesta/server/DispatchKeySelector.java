@@ -0,0 +1,10 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+
+import org.jboss.netty.channel.Channel;
+
+public interface DispatchKeySelector {
+
+	Object keyFor(Channel channel, Serializable payload);
+}
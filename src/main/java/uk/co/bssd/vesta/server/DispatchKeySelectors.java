@@ -0,0 +1,33 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+
+import org.jboss.netty.channel.Channel;
+
+public final class DispatchKeySelectors {
+
+	private static final DispatchKeySelector PER_CONNECTION = new DispatchKeySelector() {
+		@Override
+		public Object keyFor(Channel channel, Serializable payload) {
+			return channel.getId();
+		}
+	};
+
+	private static final DispatchKeySelector PER_MESSAGE_TYPE = new DispatchKeySelector() {
+		@Override
+		public Object keyFor(Channel channel, Serializable payload) {
+			return payload == null ? null : payload.getClass();
+		}
+	};
+
+	private DispatchKeySelectors() {
+	}
+
+	public static DispatchKeySelector perConnection() {
+		return PER_CONNECTION;
+	}
+
+	public static DispatchKeySelector perMessageType() {
+		return PER_MESSAGE_TYPE;
+	}
+}
@@ -0,0 +1,79 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+public class DispatchPolicy {
+
+	private static final DispatchPolicy SHARED = new DispatchPolicy(false, null, 0, 0);
+	private static final DispatchPolicy INLINE = new DispatchPolicy(true, null, 0, 0);
+
+	private final boolean inline;
+	private final DispatchExecutor executor;
+	private final int maxConcurrent;
+	private final int queueCapacity;
+
+	private DispatchPolicy(boolean inline, DispatchExecutor executor,
+			int maxConcurrent, int queueCapacity) {
+		this.inline = inline;
+		this.executor = executor;
+		this.maxConcurrent = maxConcurrent;
+		this.queueCapacity = queueCapacity;
+	}
+
+	// runs on the server's synchronous dispatch executor
+	public static DispatchPolicy shared() {
+		return SHARED;
+	}
+
+	// runs directly on the netty I/O thread, only for handlers that never
+	// block and complete in microseconds
+	public static DispatchPolicy inline() {
+		return INLINE;
+	}
+
+	// runs on a dedicated pool of maxConcurrent threads, requests beyond
+	// maxConcurrent + queueCapacity are rejected as overloaded. each message
+	// type registered with the policy gets a pool of its own
+	public static DispatchPolicy bulkhead(int maxConcurrent, int queueCapacity) {
+		validate(maxConcurrent, queueCapacity);
+		return new DispatchPolicy(false, null, maxConcurrent, queueCapacity);
+	}
+
+	// the executor belongs to the caller and is left running when the
+	// bulkhead is replaced or the server stops
+	public static DispatchPolicy bulkhead(DispatchExecutor executor,
+			int maxConcurrent, int queueCapacity) {
+		validate(maxConcurrent, queueCapacity);
+		return new DispatchPolicy(false, executor, maxConcurrent,
+				queueCapacity);
+	}
+
+	boolean isInline() {
+		return this.inline;
+	}
+
+	Bulkhead newBulkhead(Class<?> messageType) {
+		if (this.maxConcurrent == 0) {
+			return null;
+		}
+		if (this.executor == null) {
+			return new Bulkhead(messageType, DispatchExecutors.pooled(
+					this.maxConcurrent, DispatchExecutors.UNBOUNDED,
+					new ThreadPoolExecutor.AbortPolicy()), true,
+					this.maxConcurrent, this.queueCapacity);
+		}
+		return new Bulkhead(messageType, this.executor, false,
+				this.maxConcurrent, this.queueCapacity);
+	}
+
+	private static void validate(int maxConcurrent, int queueCapacity) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException(
+					"maxConcurrent must be positive");
+		}
+		if (queueCapacity < 0) {
+			throw new IllegalArgumentException(
+					"queueCapacity must not be negative");
+		}
+	}
+}
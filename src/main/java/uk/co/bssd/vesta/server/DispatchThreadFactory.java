@@ -0,0 +1,26 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class DispatchThreadFactory implements ThreadFactory {
+
+	private static final AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+
+	private final String prefix;
+	private final AtomicInteger threadSequence;
+
+	public DispatchThreadFactory(String name) {
+		this.prefix = "vesta-" + name + "-" + POOL_SEQUENCE.incrementAndGet()
+				+ "-";
+		this.threadSequence = new AtomicInteger();
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, this.prefix
+				+ this.threadSequence.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
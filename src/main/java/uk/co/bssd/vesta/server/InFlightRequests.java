@@ -0,0 +1,32 @@
+package uk.co.bssd.vesta.server;
+
+import uk.co.bssd.vesta.ConcurrentLongMap;
+import uk.co.bssd.vesta.message.SynchronousRequest;
+
+// one channel's synchronous requests that are queued but not yet started.
+// a cancel from the client takes its request out, so it never starts
+public class InFlightRequests {
+
+	private static final int CONCURRENCY_LEVEL = 2;
+
+	private final ConcurrentLongMap<SynchronousRequest> queued;
+
+	public InFlightRequests() {
+		this.queued = new ConcurrentLongMap<SynchronousRequest>(
+				CONCURRENCY_LEVEL);
+	}
+
+	public void add(SynchronousRequest request) {
+		this.queued.put(request.correlationId(), request);
+	}
+
+	// false when the client cancelled the request whilst it was queued
+	public boolean start(SynchronousRequest request) {
+		return this.queued.remove(request.correlationId(), request);
+	}
+
+	// the cancelled request, or null if it has already started
+	public SynchronousRequest cancel(long correlationId) {
+		return this.queued.remove(correlationId);
+	}
+}
@@ -0,0 +1,29 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.TimeUnit;
+
+public class InlineHandlerBudget {
+
+	private final long budgetNanos;
+	private final InlineHandlerBudgetListener listener;
+
+	public InlineHandlerBudget(long budget, TimeUnit unit) {
+		this(budget, unit, new LoggingInlineHandlerBudgetListener());
+	}
+
+	public InlineHandlerBudget(long budget, TimeUnit unit,
+			InlineHandlerBudgetListener listener) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("budget must be positive");
+		}
+		this.budgetNanos = unit.toNanos(budget);
+		this.listener = listener;
+	}
+
+	public void check(Class<?> messageType, long elapsedNanos) {
+		if (elapsedNanos > this.budgetNanos) {
+			this.listener.onBudgetExceeded(messageType, elapsedNanos,
+					this.budgetNanos);
+		}
+	}
+}
@@ -0,0 +1,7 @@
+package uk.co.bssd.vesta.server;
+
+public interface InlineHandlerBudgetListener {
+
+	void onBudgetExceeded(Class<?> messageType, long elapsedNanos,
+			long budgetNanos);
+}
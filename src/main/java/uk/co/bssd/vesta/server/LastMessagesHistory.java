@@ -0,0 +1,39 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+class LastMessagesHistory implements TopicHistory {
+
+	private final int maxMessages;
+	private final long maxBytes;
+	private final Deque<ChannelBuffer> messages;
+
+	private long bytes;
+
+	public LastMessagesHistory(int maxMessages, long maxBytes) {
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+		this.messages = new ArrayDeque<ChannelBuffer>();
+	}
+
+	@Override
+	public void retain(Serializable message, ChannelBuffer encoded) {
+		this.messages.addLast(encoded);
+		this.bytes += encoded.readableBytes();
+		while (this.messages.size() > this.maxMessages
+				|| (this.bytes > this.maxBytes && !this.messages.isEmpty())) {
+			this.bytes -= this.messages.removeFirst().readableBytes();
+		}
+	}
+
+	@Override
+	public List<ChannelBuffer> snapshot() {
+		return new ArrayList<ChannelBuffer>(this.messages);
+	}
+}
@@ -0,0 +1,50 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+// the newest message per key, the least recently updated key is evicted
+// first when over the byte limit
+class LastValueHistory implements TopicHistory {
+
+	private final ConflationKeyResolver keyResolver;
+	private final long maxBytes;
+	private final Map<Object, ChannelBuffer> valuesByKey;
+
+	private long bytes;
+
+	public LastValueHistory(ConflationKeyResolver keyResolver, long maxBytes) {
+		this.keyResolver = keyResolver;
+		this.maxBytes = maxBytes;
+		this.valuesByKey = new LinkedHashMap<Object, ChannelBuffer>();
+	}
+
+	@Override
+	public void retain(Serializable message, ChannelBuffer encoded) {
+		// removed first so an updated key moves to the newest position
+		Object key = this.keyResolver.keyFor(message);
+		ChannelBuffer previous = this.valuesByKey.remove(key);
+		if (previous != null) {
+			this.bytes -= previous.readableBytes();
+		}
+		this.valuesByKey.put(key, encoded);
+		this.bytes += encoded.readableBytes();
+
+		Iterator<ChannelBuffer> oldest = this.valuesByKey.values().iterator();
+		while (this.bytes > this.maxBytes && oldest.hasNext()) {
+			this.bytes -= oldest.next().readableBytes();
+			oldest.remove();
+		}
+	}
+
+	@Override
+	public List<ChannelBuffer> snapshot() {
+		return new ArrayList<ChannelBuffer>(this.valuesByKey.values());
+	}
+}
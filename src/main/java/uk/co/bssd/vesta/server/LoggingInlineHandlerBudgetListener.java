@@ -0,0 +1,24 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+public class LoggingInlineHandlerBudgetListener implements
+		InlineHandlerBudgetListener {
+
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(LoggingInlineHandlerBudgetListener.class);
+
+	@Override
+	public void onBudgetExceeded(Class<?> messageType, long elapsedNanos,
+			long budgetNanos) {
+		String message = String
+				.format("Inline handler for [%s] took %dus on an I/O thread, budget is %dus; register it with a non-inline dispatch policy",
+						messageType.getName(),
+						TimeUnit.NANOSECONDS.toMicros(elapsedNanos),
+						TimeUnit.NANOSECONDS.toMicros(budgetNanos));
+		logger.warn(message);
+	}
+}
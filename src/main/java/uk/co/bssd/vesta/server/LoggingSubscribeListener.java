@@ -2,11 +2,17 @@ package uk.co.bssd.vesta.server;
 
 import java.net.SocketAddress;
 
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
 public class LoggingSubscribeListener implements SubscribeListener {
 
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(LoggingSubscribeListener.class);
+
 	@Override
 	public void onSubscribe(SocketAddress clientAddress, String channelName) {
 		String message = String.format("Client with remote address [%s] has subscribed to channel with name [%s]", clientAddress.toString(), channelName);
-		System.out.println(message);
+		logger.info(message);
 	}
 }
\ No newline at end of file
@@ -2,11 +2,17 @@ package uk.co.bssd.vesta.server;
 
 import java.net.SocketAddress;
 
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
 public class LoggingUnsubscribeListener implements UnsubscribeListener {
 
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(LoggingUnsubscribeListener.class);
+
 	@Override
 	public void onUnsubscribe(SocketAddress clientAddress, String channelName) {
 		String message = String.format("Client with remote address [%s] has unsubscribed to channel with name [%s]", clientAddress.toString(), channelName);
-		System.out.println(message);
+		logger.info(message);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package uk.co.bssd.vesta.server;
+
+import uk.co.bssd.vesta.metrics.LatencyHistogram;
+import uk.co.bssd.vesta.metrics.MetricsRegistry;
+import uk.co.bssd.vesta.metrics.StripedCounter;
+
+public class MessageTypeMetrics {
+
+	private final StripedCounter requests;
+	private final StripedCounter errors;
+	private final StripedCounter rejected;
+	private final StripedCounter expired;
+	private final StripedCounter cancelled;
+	private final LatencyHistogram handlerLatency;
+
+	MessageTypeMetrics(MetricsRegistry registry, Class<?> messageType) {
+		String prefix = "messages." + messageType.getName();
+		this.requests = registry.counter(prefix + ".requests");
+		this.errors = registry.counter(prefix + ".errors");
+		this.rejected = registry.counter(prefix + ".rejected");
+		this.expired = registry.counter(prefix + ".expired");
+		this.cancelled = registry.counter(prefix + ".cancelled");
+		this.handlerLatency = registry.histogram(prefix + ".handlerNanos");
+	}
+
+	public void onRequest() {
+		this.requests.increment();
+	}
+
+	public void onError() {
+		this.errors.increment();
+	}
+
+	// turned away by a saturated bulkhead without reaching the handler
+	public void onRejected() {
+		this.rejected.increment();
+	}
+
+	// dropped because the caller had given up before the handler could start
+	public void onExpired() {
+		this.expired.increment();
+	}
+
+	// cancelled by the caller whilst still queued
+	public void onCancelled() {
+		this.cancelled.increment();
+	}
+
+	public void onHandled(long elapsedNanos) {
+		this.handlerLatency.record(elapsedNanos);
+	}
+
+	public long requests() {
+		return this.requests.sum();
+	}
+
+	public long errors() {
+		return this.errors.sum();
+	}
+
+	public long rejected() {
+		return this.rejected.sum();
+	}
+
+	public long expired() {
+		return this.expired.sum();
+	}
+
+	public long cancelled() {
+		return this.cancelled.sum();
+	}
+
+	public LatencyHistogram handlerLatency() {
+		return this.handlerLatency;
+	}
+}
@@ -0,0 +1,61 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class PartitionedDispatchExecutor implements DispatchExecutor {
+
+	private final ThreadPoolExecutor[] partitions;
+
+	public PartitionedDispatchExecutor(int partitions, int queueCapacity,
+			RejectedExecutionHandler rejectionPolicy) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("partitions must be positive");
+		}
+		DispatchThreadFactory threadFactory = new DispatchThreadFactory(
+				"partition");
+		this.partitions = new ThreadPoolExecutor[partitions];
+		for (int i = 0; i < partitions; i++) {
+			this.partitions[i] = new ThreadPoolExecutor(1, 1, 0L,
+					TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
+							queueCapacity), threadFactory, rejectionPolicy);
+		}
+	}
+
+	@Override
+	public void execute(Object partitionKey, Runnable task) {
+		partitionFor(partitionKey).execute(task);
+	}
+
+	@Override
+	public void shutdown() {
+		for (ThreadPoolExecutor partition : this.partitions) {
+			partition.shutdown();
+		}
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ThreadPoolExecutor partition : this.partitions) {
+			if (!partition.awaitTermination(deadline - System.nanoTime(),
+					TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private ThreadPoolExecutor partitionFor(Object partitionKey) {
+		if (partitionKey == null) {
+			return this.partitions[0];
+		}
+		int hash = partitionKey.hashCode();
+		hash ^= (hash >>> 16);
+		return this.partitions[(hash & Integer.MAX_VALUE)
+				% this.partitions.length];
+	}
+}
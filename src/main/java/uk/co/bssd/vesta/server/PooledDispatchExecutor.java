@@ -0,0 +1,38 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class PooledDispatchExecutor implements DispatchExecutor {
+
+	private final ThreadPoolExecutor executor;
+
+	public PooledDispatchExecutor(int threads, int queueCapacity,
+			RejectedExecutionHandler rejectionPolicy) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
+						queueCapacity), new DispatchThreadFactory("dispatch"),
+				rejectionPolicy);
+	}
+
+	@Override
+	public void execute(Object partitionKey, Runnable task) {
+		this.executor.execute(task);
+	}
+
+	@Override
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return this.executor.awaitTermination(timeout, unit);
+	}
+}
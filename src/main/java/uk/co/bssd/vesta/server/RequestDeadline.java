@@ -0,0 +1,35 @@
+package uk.co.bssd.vesta.server;
+
+import uk.co.bssd.vesta.Deadline;
+
+// the deadline of the synchronous request whose handler is running on the
+// current thread, so a handler can fit its work to the caller's remaining
+// budget. without a timeout from the caller there is no deadline
+public final class RequestDeadline {
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+	private RequestDeadline() {
+	}
+
+	public static Deadline current() {
+		Deadline deadline = CURRENT.get();
+		return deadline == null ? Deadline.none() : deadline;
+	}
+
+	public static long remainingMillis() {
+		return current().remainingMillis();
+	}
+
+	public static boolean isExpired() {
+		return current().isExpired();
+	}
+
+	static void set(Deadline deadline) {
+		CURRENT.set(deadline);
+	}
+
+	static void clear() {
+		CURRENT.remove();
+	}
+}
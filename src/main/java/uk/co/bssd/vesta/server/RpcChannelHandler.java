@@ -1,25 +1,37 @@
 package uk.co.bssd.vesta.server;
 
 import java.io.Serializable;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 
+import uk.co.bssd.vesta.Deadline;
 import uk.co.bssd.vesta.message.AsynchronousRequest;
+import uk.co.bssd.vesta.message.CancelRequest;
 import uk.co.bssd.vesta.message.SynchronousRequest;
+import uk.co.bssd.vesta.trace.ReadTimestampHandler;
+import uk.co.bssd.vesta.trace.RequestTracer;
+import uk.co.bssd.vesta.trace.Trace;
+import uk.co.bssd.vesta.trace.TraceStage;
 
 public class RpcChannelHandler extends SimpleChannelUpstreamHandler {
 
 	private final AsynchronousMessageDispatcher asynchronousMessageDispatcher;
 	private final SynchronousMessageDispatcher synchronousMessageDispatcher;
+	private final RequestTracer tracer;
 
-	public RpcChannelHandler() {
+	public RpcChannelHandler(RpcServerConfiguration configuration,
+			ServerMetrics metrics) {
 		this.asynchronousMessageDispatcher = new AsynchronousMessageDispatcher(
-				Executors.newFixedThreadPool(1));
+				orDefault(configuration.asynchronousDispatchExecutor()),
+				configuration.dispatchKeySelector(), metrics);
 		this.synchronousMessageDispatcher = new SynchronousMessageDispatcher(
-				Executors.newFixedThreadPool(1));
+				orDefault(configuration.synchronousDispatchExecutor()),
+				configuration.dispatchKeySelector(),
+				configuration.inlineHandlerBudget(), metrics);
+		this.tracer = configuration.tracer();
 	}
 
 	@Override
@@ -29,10 +41,20 @@ public class RpcChannelHandler extends SimpleChannelUpstreamHandler {
 
 		if (message instanceof AsynchronousRequest) {
 			this.asynchronousMessageDispatcher
-					.dispatch((AsynchronousRequest) message);
+					.dispatch((AsynchronousRequest) message, e.getChannel());
 		} else if (message instanceof SynchronousRequest) {
-			this.synchronousMessageDispatcher.dispatch(
-					(SynchronousRequest) message, e.getChannel());
+			SynchronousRequest request = (SynchronousRequest) message;
+			if (this.tracer != null) {
+				startTrace(ctx, request);
+			}
+			if (request.hasTimeout()) {
+				request.attachDeadline(Deadline.after(request.timeoutMillis(),
+						TimeUnit.MILLISECONDS));
+			}
+			this.synchronousMessageDispatcher.dispatch(request, e.getChannel());
+		} else if (message instanceof CancelRequest) {
+			this.synchronousMessageDispatcher.cancel(
+					((CancelRequest) message).correlationId(), e.getChannel());
 		} else {
 			ctx.sendUpstream(e);
 		}
@@ -49,4 +71,47 @@ public class RpcChannelHandler extends SimpleChannelUpstreamHandler {
 			SynchronousMessageHandler<? extends Serializable, ? extends Serializable> handler) {
 		this.synchronousMessageDispatcher.registerHandler(clazz, handler);
 	}
-}
\ No newline at end of file
+
+	public void registerSynchronousMessageHandler(
+			Class<? extends Serializable> clazz,
+			SynchronousMessageHandler<? extends Serializable, ? extends Serializable> handler,
+			DispatchPolicy policy) {
+		this.synchronousMessageDispatcher.registerHandler(clazz, handler,
+				policy);
+	}
+
+	public void shutdown() {
+		this.asynchronousMessageDispatcher.shutdown();
+		this.synchronousMessageDispatcher.shutdown();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		return this.asynchronousMessageDispatcher.awaitTermination(timeout,
+				unit)
+				&& this.synchronousMessageDispatcher.awaitTermination(
+						deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	// a request the client traced is always traced here too, under the
+	// client's trace id
+	private void startTrace(ChannelHandlerContext ctx,
+			SynchronousRequest request) {
+		Trace trace;
+		if (request.isTraced()) {
+			trace = new Trace(request.traceId(), request.payload().getClass());
+		} else if (this.tracer.sample()) {
+			trace = Trace.start(request.payload().getClass());
+		} else {
+			return;
+		}
+		ReadTimestampHandler.markRead(ctx, trace, TraceStage.SERVER_READ);
+		trace.mark(TraceStage.SERVER_DECODED);
+		request.attachTrace(trace);
+	}
+
+	private static DispatchExecutor orDefault(DispatchExecutor executor) {
+		return executor == null ? DispatchExecutors.partitioned() : executor;
+	}
+}
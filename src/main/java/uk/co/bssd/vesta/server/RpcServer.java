@@ -4,56 +4,119 @@ import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.ChannelGroupFuture;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
-import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.Timer;
 
 import uk.co.bssd.vesta.ChannelFutureAdapter;
 import uk.co.bssd.vesta.MessageFuture;
+import uk.co.bssd.vesta.TransportResources;
+import uk.co.bssd.vesta.WriteBatchingStatistics;
+import uk.co.bssd.vesta.codec.Codec;
+import uk.co.bssd.vesta.metrics.MetricsRegistry;
+import uk.co.bssd.vesta.metrics.MetricsReporting;
 
 public class RpcServer {
 
-	private final ServerBootstrap bootstrap;
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(RpcServer.class);
+
+	private static final long DISPATCH_TERMINATION_TIMEOUT_SECONDS = 5;
+
+	private final RpcServerConfiguration configuration;
 	private final ChannelGroup channelGroup;
 
 	private final ChannelSubscriptions channelSubscriptions;
 	private final RpcServerChannelPipelineFactory pipelineFactory;
+	private final WriteBatchingStatistics writeBatchingStatistics;
+	private final SlowConsumerStatistics slowConsumerStatistics;
+	private final TopicPublisher topicPublisher;
+	private final MetricsRegistry metricsRegistry;
+	private final MetricsReporting metricsReporting;
+
+	private final Codec codec;
 
 	private Channel serverChannel;
+	private TransportResources transport;
+	private Timer timer;
 
 	public RpcServer() {
-		this.channelGroup = new DefaultChannelGroup(getClass().getName());
+		this(RpcServerConfiguration.defaults());
+	}
 
+	public RpcServer(RpcServerConfiguration configuration) {
+		this.configuration = configuration;
+		this.channelGroup = new DefaultChannelGroup(getClass().getName());
+		this.writeBatchingStatistics = new WriteBatchingStatistics();
+		this.slowConsumerStatistics = new SlowConsumerStatistics();
+		this.codec = configuration.codec();
 		this.channelSubscriptions = new ChannelSubscriptions();
+		this.topicPublisher = new TopicPublisher(this.channelSubscriptions);
 		registerSubscribeListener(new LoggingSubscribeListener());
 		registerUnsubscribeListener(new LoggingUnsubscribeListener());
 
-		this.pipelineFactory = new RpcServerChannelPipelineFactory(
-				this.channelGroup, this.channelSubscriptions);
+		this.metricsRegistry = new MetricsRegistry();
+		this.metricsReporting = new MetricsReporting(this.metricsRegistry,
+				configuration.metrics());
+		ServerMetrics metrics = new ServerMetrics(this.metricsRegistry);
+		metrics.registerConnections(this.channelGroup);
+		metrics.registerSubscribers(this.channelSubscriptions);
 
-		this.bootstrap = new ServerBootstrap(channelFactory());
-		this.bootstrap.setPipelineFactory(this.pipelineFactory);
+		this.pipelineFactory = new RpcServerChannelPipelineFactory(
+				this.channelGroup, this.channelSubscriptions,
+				this.topicPublisher, configuration,
+				this.writeBatchingStatistics, this.slowConsumerStatistics,
+				metrics);
 	}
 
+	// the transport is only held whilst the server runs
 	public void start(String host, int port) {
+		this.transport = TransportResources.acquire(this.configuration
+				.transportResources());
+		this.timer = this.transport.timer();
+		this.pipelineFactory.start(lingerTimer());
+
+		ServerBootstrap bootstrap = new ServerBootstrap(
+				this.transport.serverChannelFactory());
+		bootstrap.setPipelineFactory(this.pipelineFactory);
+		bootstrap.setOption("child.bufferFactory",
+				this.transport.bufferFactory());
+		bootstrap.setOption("child.writeBufferHighWaterMark",
+				this.configuration.writeBufferHighWaterMark());
+		bootstrap.setOption("child.writeBufferLowWaterMark",
+				this.configuration.writeBufferLowWaterMark());
+
 		SocketAddress localAddress = new InetSocketAddress(host, port);
-		this.serverChannel = this.bootstrap.bind(localAddress);
+		try {
+			this.serverChannel = bootstrap.bind(localAddress);
+		} catch (RuntimeException e) {
+			releaseTransport();
+			throw e;
+		}
+		this.metricsReporting.start(this.timer);
 	}
 
+	// handlers still running may write responses, so the transport is only
+	// released once they have finished
 	public void stop() {
-		this.serverChannel.close().awaitUninterruptibly();
+		this.metricsReporting.stop();
+		if (this.serverChannel != null) {
+			this.serverChannel.close().awaitUninterruptibly();
+			this.serverChannel = null;
+		}
 		closeAllChannels();
-		this.bootstrap.releaseExternalResources();
+		this.pipelineFactory.shutdown();
+		awaitDispatchTermination();
+		releaseTransport();
 	}
 
 	public void registerSubscribeListener(SubscribeListener listener) {
@@ -78,31 +141,96 @@ public class RpcServer {
 				handler);
 	}
 
+	public void registerSynchronousMessageHandler(
+			Class<? extends Serializable> messageType,
+			SynchronousMessageHandler<? extends Serializable, ? extends Serializable> handler,
+			DispatchPolicy policy) {
+		this.pipelineFactory.registerSynchronousMessageHandler(messageType,
+				handler, policy);
+	}
+
+	// subscribers that fall behind on the topic keep only the newest pending
+	// message per conflation key
+	public void registerConflatedTopic(String channelName,
+			ConflationKeyResolver resolver) {
+		this.topicPublisher.registerConflatedTopic(channelName, resolver);
+	}
+
+	// new subscribers to the topic are sent its retained messages before any
+	// live ones
+	public void registerRetainedTopic(String channelName,
+			TopicRetention retention) {
+		this.topicPublisher.registerRetainedTopic(channelName, retention);
+	}
+
+	public WriteBatchingStatistics writeBatchingStatistics() {
+		return this.writeBatchingStatistics;
+	}
+
+	public SlowConsumerStatistics slowConsumerStatistics() {
+		return this.slowConsumerStatistics;
+	}
+
+	public MetricsRegistry metrics() {
+		return this.metricsRegistry;
+	}
+
 	public void broadcast(Serializable message) {
-		this.channelGroup.write(message);
+		ChannelBuffer encoded = encode(message);
+		for (Channel client : this.channelGroup) {
+			TopicPublisher.publish(client, encoded.duplicate(), null, null);
+		}
 	}
 
 	public MessageFuture broadcast(Serializable message, String channelName) {
-		Collection<Channel> subscribedClients = this.channelSubscriptions
-				.subscribedClients(channelName);
-
-		List<ChannelFuture> channelFutures = new ArrayList<ChannelFuture>();
-		
-		for (Channel client : subscribedClients) {
-			ChannelFuture channelFuture = client.write( message);
-			channelFutures.add(channelFuture);
+		if (!this.topicPublisher.isRetained(channelName)
+				&& this.channelSubscriptions.subscribedClients(channelName)
+						.isEmpty()) {
+			return new ChannelFutureAdapter(new ArrayList<ChannelFuture>());
+		}
+
+		// encode once, each channel gets its own view of the same bytes
+		return this.topicPublisher.publish(channelName, message,
+				encode(message));
+	}
+
+	private ChannelBuffer encode(Serializable message) {
+		try {
+			return this.codec.encode(message);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Unable to encode message of type ["
+					+ message.getClass().getName() + "]", e);
+		}
+	}
+
+	private Timer lingerTimer() {
+		if (this.configuration.isWriteBatchingEnabled()) {
+			return this.transport.lingerTimer();
 		}
-		
-		return new ChannelFutureAdapter(channelFutures);
+		return this.timer;
 	}
 
-	private ChannelFactory channelFactory() {
-		ExecutorService bossExecutor = Executors.newCachedThreadPool();
-		ExecutorService workerExecutor = Executors.newCachedThreadPool();
+	// the bootstrap's own releaseExternalResources would shut down the
+	// channel factory other clients and servers are sharing
+	private void releaseTransport() {
+		if (this.transport != null) {
+			this.transport.release();
+			this.transport = null;
+			this.timer = null;
+		}
+	}
 
-		ChannelFactory channelFactory = new NioServerSocketChannelFactory(
-				bossExecutor, workerExecutor);
-		return channelFactory;
+	private void awaitDispatchTermination() {
+		try {
+			if (!this.pipelineFactory.awaitTermination(
+					DISPATCH_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				logger.warn("Handlers still running after "
+						+ DISPATCH_TERMINATION_TIMEOUT_SECONDS
+						+ "s, releasing transport regardless");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	private void closeAllChannels() {
@@ -1,14 +1,18 @@
 package uk.co.bssd.vesta.server;
 
 import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.group.ChannelGroup;
-import org.jboss.netty.handler.codec.serialization.ClassResolvers;
-import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
-import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
+import org.jboss.netty.util.Timer;
+
+import uk.co.bssd.vesta.WriteBatchingHandler;
+import uk.co.bssd.vesta.WriteBatchingStatistics;
+import uk.co.bssd.vesta.codec.CodecEncoder;
+import uk.co.bssd.vesta.trace.ReadTimestampHandler;
 
 public class RpcServerChannelPipelineFactory implements ChannelPipelineFactory {
 
@@ -16,21 +20,42 @@ public class RpcServerChannelPipelineFactory implements ChannelPipelineFactory {
 	private final ServerChannelEventHandler channelEventHandler;
 	private final SubscribeChannelRequestHandler subscribeChannelHandler;
 	private final UnsubscribeChannelRequestHandler unsubscribeChannelHandler;
+	private final RpcServerConfiguration configuration;
+	private final WriteBatchingStatistics writeBatchingStatistics;
+	private final SlowConsumerStatistics slowConsumerStatistics;
+	private volatile Timer timer;
+	private final CodecEncoder encoder;
+	private final ServerMetrics metrics;
 	
-	public RpcServerChannelPipelineFactory(ChannelGroup channelGroup, ChannelSubscriptions channelSubscriptions) {
-		this.rpcChannelHandler = new RpcChannelHandler();
+	public RpcServerChannelPipelineFactory(ChannelGroup channelGroup, ChannelSubscriptions channelSubscriptions, TopicPublisher topicPublisher, RpcServerConfiguration configuration, WriteBatchingStatistics writeBatchingStatistics, SlowConsumerStatistics slowConsumerStatistics, ServerMetrics metrics) {
+		this.rpcChannelHandler = new RpcChannelHandler(configuration, metrics);
 		this.channelEventHandler = new ServerChannelEventHandler(channelGroup, channelSubscriptions);
-		this.subscribeChannelHandler = new SubscribeChannelRequestHandler(channelSubscriptions);
+		this.subscribeChannelHandler = new SubscribeChannelRequestHandler(topicPublisher);
 		this.unsubscribeChannelHandler = new UnsubscribeChannelRequestHandler(channelSubscriptions);
+		this.configuration = configuration;
+		this.writeBatchingStatistics = writeBatchingStatistics;
+		this.slowConsumerStatistics = slowConsumerStatistics;
+		this.encoder = new CodecEncoder(configuration.codec(), configuration.tracer());
+		this.metrics = metrics;
 	}
 
 	@Override
 	public ChannelPipeline getPipeline() throws Exception {
 		ChannelPipeline pipeline = Channels.pipeline();
-		pipeline.addLast("objectDecoder",
-				new ObjectDecoder(ClassResolvers.cacheDisabled(null)));
-		pipeline.addLast("objectEncoder", new ObjectEncoder());
+		if (this.configuration.isTracingEnabled()) {
+			pipeline.addLast(ReadTimestampHandler.NAME, new ReadTimestampHandler());
+		}
+		pipeline.addLast(TrafficMetricsHandler.NAME, new TrafficMetricsHandler(this.metrics));
+		if (this.configuration.isWriteBatchingEnabled()) {
+			pipeline.addLast("writeBatchingHandler", new WriteBatchingHandler(
+					this.configuration.writeBatching(),
+					this.writeBatchingStatistics, this.timer));
+		}
+		pipeline.addLast("decoder", this.configuration.codec().newDecoder());
+		pipeline.addLast("encoder", this.encoder);
 		pipeline.addLast("channelEventHandler", this.channelEventHandler);
+		pipeline.addLast(SubscriberOutboundHandler.NAME, new SubscriberOutboundHandler(
+				this.configuration.slowConsumer(), this.slowConsumerStatistics));
 		pipeline.addLast("rpcHandler", this.rpcChannelHandler);
 		pipeline.addLast("subscribeHandler", this.subscribeChannelHandler);
 		pipeline.addLast("unsubscribeHandler", this.unsubscribeChannelHandler);
@@ -44,4 +69,21 @@ public class RpcServerChannelPipelineFactory implements ChannelPipelineFactory {
 	public void registerSynchronousMessageHandler(Class<? extends Serializable> clazz, SynchronousMessageHandler<? extends Serializable, ? extends Serializable> handler) {
 		this.rpcChannelHandler.registerSynchronousMessageHandler(clazz, handler);
 	}
-}
\ No newline at end of file
+	
+	public void registerSynchronousMessageHandler(Class<? extends Serializable> clazz, SynchronousMessageHandler<? extends Serializable, ? extends Serializable> handler, DispatchPolicy policy) {
+		this.rpcChannelHandler.registerSynchronousMessageHandler(clazz, handler, policy);
+	}
+
+	// the timer comes with the transport, which is only acquired on start
+	public void start(Timer timer) {
+		this.timer = timer;
+	}
+
+	public void shutdown() {
+		this.rpcChannelHandler.shutdown();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.rpcChannelHandler.awaitTermination(timeout, unit);
+	}
+}
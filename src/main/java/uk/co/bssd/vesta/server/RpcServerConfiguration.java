@@ -0,0 +1,173 @@
+package uk.co.bssd.vesta.server;
+
+import uk.co.bssd.vesta.TransportResources;
+import uk.co.bssd.vesta.WriteBatchingConfiguration;
+import uk.co.bssd.vesta.codec.Codec;
+import uk.co.bssd.vesta.codec.JavaSerializationCodec;
+import uk.co.bssd.vesta.metrics.MetricsConfiguration;
+import uk.co.bssd.vesta.trace.RequestTracer;
+
+public class RpcServerConfiguration {
+
+	private static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+	private static final int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 32 * 1024;
+
+	private int writeBufferHighWaterMark;
+	private int writeBufferLowWaterMark;
+	private SlowConsumerConfiguration slowConsumer;
+	private WriteBatchingConfiguration writeBatching;
+	private Codec codec;
+	private DispatchExecutor asynchronousDispatchExecutor;
+	private DispatchExecutor synchronousDispatchExecutor;
+	private DispatchKeySelector dispatchKeySelector;
+	private InlineHandlerBudget inlineHandlerBudget;
+	private TransportResources transportResources;
+	private MetricsConfiguration metrics;
+	private RequestTracer tracer;
+
+	public RpcServerConfiguration() {
+		this.writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+		this.writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+		this.slowConsumer = SlowConsumerConfiguration.defaults();
+		this.codec = new JavaSerializationCodec();
+		this.dispatchKeySelector = DispatchKeySelectors.perConnection();
+		this.metrics = MetricsConfiguration.defaults();
+	}
+
+	public static RpcServerConfiguration defaults() {
+		return new RpcServerConfiguration();
+	}
+
+	// a client channel stops being writable above the high water mark, from
+	// then on published messages are queued under the slow consumer policy
+	public RpcServerConfiguration writeBufferWaterMarks(int lowWaterMark,
+			int highWaterMark) {
+		if (lowWaterMark > highWaterMark) {
+			throw new IllegalArgumentException(String.format(
+					"Low water mark [%d] cannot exceed high water mark [%d]",
+					lowWaterMark, highWaterMark));
+		}
+		this.writeBufferLowWaterMark = lowWaterMark;
+		this.writeBufferHighWaterMark = highWaterMark;
+		return this;
+	}
+
+	public RpcServerConfiguration slowConsumer(
+			SlowConsumerConfiguration slowConsumer) {
+		this.slowConsumer = slowConsumer;
+		return this;
+	}
+
+	public RpcServerConfiguration codec(Codec codec) {
+		this.codec = codec;
+		return this;
+	}
+
+	public RpcServerConfiguration writeBatching(
+			WriteBatchingConfiguration writeBatching) {
+		this.writeBatching = writeBatching;
+		return this;
+	}
+
+	// the server shuts these down when stopped, use DispatchExecutors.shared
+	// to keep ownership of an existing executor
+	public RpcServerConfiguration asynchronousDispatchExecutor(
+			DispatchExecutor executor) {
+		this.asynchronousDispatchExecutor = executor;
+		return this;
+	}
+
+	public RpcServerConfiguration synchronousDispatchExecutor(
+			DispatchExecutor executor) {
+		this.synchronousDispatchExecutor = executor;
+		return this;
+	}
+
+	public RpcServerConfiguration dispatchKeySelector(
+			DispatchKeySelector dispatchKeySelector) {
+		this.dispatchKeySelector = dispatchKeySelector;
+		return this;
+	}
+
+	// development mode check, times every inline handler and reports those
+	// that overrun the budget
+	public RpcServerConfiguration inlineHandlerBudget(
+			InlineHandlerBudget inlineHandlerBudget) {
+		this.inlineHandlerBudget = inlineHandlerBudget;
+		return this;
+	}
+
+	public RpcServerConfiguration transportResources(
+			TransportResources transportResources) {
+		this.transportResources = transportResources;
+		return this;
+	}
+
+	public RpcServerConfiguration metrics(MetricsConfiguration metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	public RpcServerConfiguration tracer(RequestTracer tracer) {
+		this.tracer = tracer;
+		return this;
+	}
+
+	public int writeBufferHighWaterMark() {
+		return this.writeBufferHighWaterMark;
+	}
+
+	public int writeBufferLowWaterMark() {
+		return this.writeBufferLowWaterMark;
+	}
+
+	public SlowConsumerConfiguration slowConsumer() {
+		return this.slowConsumer;
+	}
+
+	public WriteBatchingConfiguration writeBatching() {
+		return this.writeBatching;
+	}
+
+	public boolean isWriteBatchingEnabled() {
+		return this.writeBatching != null;
+	}
+
+	public Codec codec() {
+		return this.codec;
+	}
+
+	// null means the server creates its own partitioned executor
+	public DispatchExecutor asynchronousDispatchExecutor() {
+		return this.asynchronousDispatchExecutor;
+	}
+
+	public DispatchExecutor synchronousDispatchExecutor() {
+		return this.synchronousDispatchExecutor;
+	}
+
+	public DispatchKeySelector dispatchKeySelector() {
+		return this.dispatchKeySelector;
+	}
+
+	public InlineHandlerBudget inlineHandlerBudget() {
+		return this.inlineHandlerBudget;
+	}
+
+	// null means the process wide shared resources
+	public TransportResources transportResources() {
+		return this.transportResources;
+	}
+
+	public MetricsConfiguration metrics() {
+		return this.metrics;
+	}
+
+	public RequestTracer tracer() {
+		return this.tracer;
+	}
+
+	public boolean isTracingEnabled() {
+		return this.tracer != null;
+	}
+}
@@ -0,0 +1,137 @@
+package uk.co.bssd.vesta.server;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.netty.channel.group.ChannelGroup;
+
+import uk.co.bssd.vesta.metrics.Gauge;
+import uk.co.bssd.vesta.metrics.GaugeSet;
+import uk.co.bssd.vesta.metrics.LatencyHistogram;
+import uk.co.bssd.vesta.metrics.MetricsRegistry;
+import uk.co.bssd.vesta.metrics.StripedCounter;
+
+// the server's metrics, created up front or once per message type or
+// channel so that recording on the request path never allocates
+public class ServerMetrics {
+
+	private final MetricsRegistry registry;
+	private final ConcurrentMap<Class<?>, MessageTypeMetrics> byMessageType;
+	private final StripedCounter queueDepth;
+	private final LatencyHistogram queueWait;
+	private final StripedCounter bytesIn;
+	private final StripedCounter bytesOut;
+
+	public ServerMetrics(MetricsRegistry registry) {
+		this.registry = registry;
+		this.byMessageType = new ConcurrentHashMap<Class<?>, MessageTypeMetrics>();
+		this.queueDepth = registry.counter("dispatch.queueDepth");
+		this.queueWait = registry.histogram("dispatch.waitNanos");
+		this.bytesIn = registry.counter("bytes.in");
+		this.bytesOut = registry.counter("bytes.out");
+	}
+
+	public MessageTypeMetrics forMessageType(Class<?> messageType) {
+		MessageTypeMetrics metrics = this.byMessageType.get(messageType);
+		if (metrics == null) {
+			MessageTypeMetrics created = new MessageTypeMetrics(this.registry,
+					messageType);
+			metrics = this.byMessageType.putIfAbsent(messageType, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	public void onQueued() {
+		this.queueDepth.increment();
+	}
+
+	public void onDequeued(long waitNanos) {
+		this.queueDepth.decrement();
+		this.queueWait.record(waitNanos);
+	}
+
+	// a queued task the executor refused, it never waited
+	public void onNotQueued() {
+		this.queueDepth.decrement();
+	}
+
+	public long queueDepth() {
+		return this.queueDepth.sum();
+	}
+
+	public LatencyHistogram queueWait() {
+		return this.queueWait;
+	}
+
+	public ChannelTraffic forChannel(SocketAddress remoteAddress) {
+		String prefix = "channels." + name(remoteAddress);
+		return new ChannelTraffic(prefix, this.registry.counter(prefix
+				+ ".bytesIn"), this.registry.counter(prefix + ".bytesOut"));
+	}
+
+	// per channel counts are discarded once the channel closes
+	public void removeChannel(ChannelTraffic traffic) {
+		this.registry.remove(traffic.prefix + ".bytesIn");
+		this.registry.remove(traffic.prefix + ".bytesOut");
+	}
+
+	public long bytesIn() {
+		return this.bytesIn.sum();
+	}
+
+	public long bytesOut() {
+		return this.bytesOut.sum();
+	}
+
+	void registerConnections(final ChannelGroup channelGroup) {
+		this.registry.gauge("connections.active", new Gauge() {
+			@Override
+			public long value() {
+				return channelGroup.size();
+			}
+		});
+	}
+
+	void registerSubscribers(final ChannelSubscriptions subscriptions) {
+		this.registry.gaugeSet("subscribers", new GaugeSet() {
+			@Override
+			public Map<String, Integer> values() {
+				return subscriptions.subscriberCounts();
+			}
+		});
+	}
+
+	private static String name(SocketAddress address) {
+		String name = String.valueOf(address);
+		return name.startsWith("/") ? name.substring(1) : name;
+	}
+
+	public class ChannelTraffic {
+
+		private final String prefix;
+		private final StripedCounter channelBytesIn;
+		private final StripedCounter channelBytesOut;
+
+		private ChannelTraffic(String prefix, StripedCounter channelBytesIn,
+				StripedCounter channelBytesOut) {
+			this.prefix = prefix;
+			this.channelBytesIn = channelBytesIn;
+			this.channelBytesOut = channelBytesOut;
+		}
+
+		public void onRead(int bytes) {
+			this.channelBytesIn.add(bytes);
+			bytesIn.add(bytes);
+		}
+
+		public void onWritten(int bytes) {
+			this.channelBytesOut.add(bytes);
+			bytesOut.add(bytes);
+		}
+	}
+}
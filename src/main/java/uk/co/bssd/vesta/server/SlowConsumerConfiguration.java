@@ -0,0 +1,53 @@
+package uk.co.bssd.vesta.server;
+
+public class SlowConsumerConfiguration {
+
+	private static final int DEFAULT_MAX_QUEUED_MESSAGES = 8192;
+	private static final long DEFAULT_MAX_BLOCK_MILLIS = 1000;
+
+	private final SlowConsumerPolicy policy;
+	private final int maxQueuedMessages;
+	private final long maxBlockMillis;
+
+	public SlowConsumerConfiguration(SlowConsumerPolicy policy,
+			int maxQueuedMessages) {
+		this(policy, maxQueuedMessages, DEFAULT_MAX_BLOCK_MILLIS);
+	}
+
+	// maxBlockMillis bounds how long BLOCK_PUBLISHER waits for room before
+	// dropping the message
+	public SlowConsumerConfiguration(SlowConsumerPolicy policy,
+			int maxQueuedMessages, long maxBlockMillis) {
+		if (policy == null) {
+			throw new IllegalArgumentException("Policy must be given");
+		}
+		if (maxQueuedMessages < 0) {
+			throw new IllegalArgumentException(
+					"Queued message limit cannot be negative");
+		}
+		if (maxBlockMillis < 0) {
+			throw new IllegalArgumentException(
+					"Block time cannot be negative");
+		}
+		this.policy = policy;
+		this.maxQueuedMessages = maxQueuedMessages;
+		this.maxBlockMillis = maxBlockMillis;
+	}
+
+	public static SlowConsumerConfiguration defaults() {
+		return new SlowConsumerConfiguration(SlowConsumerPolicy.DROP_OLDEST,
+				DEFAULT_MAX_QUEUED_MESSAGES);
+	}
+
+	public SlowConsumerPolicy policy() {
+		return this.policy;
+	}
+
+	public int maxQueuedMessages() {
+		return this.maxQueuedMessages;
+	}
+
+	public long maxBlockMillis() {
+		return this.maxBlockMillis;
+	}
+}
@@ -0,0 +1,6 @@
+package uk.co.bssd.vesta.server;
+
+public enum SlowConsumerPolicy {
+
+	DROP_OLDEST, DROP_NEWEST, DISCONNECT, BLOCK_PUBLISHER;
+}
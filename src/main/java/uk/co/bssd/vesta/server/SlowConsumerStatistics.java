@@ -0,0 +1,86 @@
+package uk.co.bssd.vesta.server;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SlowConsumerStatistics {
+
+	private final AtomicLong droppedMessages;
+	private final AtomicLong disconnections;
+	private final AtomicLong conflatedMessages;
+	private final ConcurrentMap<String, AtomicLong> droppedByTopic;
+	private final ConcurrentMap<SocketAddress, AtomicLong> droppedBySubscriber;
+
+	public SlowConsumerStatistics() {
+		this.droppedMessages = new AtomicLong();
+		this.disconnections = new AtomicLong();
+		this.conflatedMessages = new AtomicLong();
+		this.droppedByTopic = new ConcurrentHashMap<String, AtomicLong>();
+		this.droppedBySubscriber = new ConcurrentHashMap<SocketAddress, AtomicLong>();
+	}
+
+	public void onDropped(SocketAddress subscriber, String topic) {
+		this.droppedMessages.incrementAndGet();
+		if (subscriber != null) {
+			counter(this.droppedBySubscriber, subscriber).incrementAndGet();
+		}
+		if (topic != null) {
+			counter(this.droppedByTopic, topic).incrementAndGet();
+		}
+	}
+
+	// a queued message replaced by a newer one on a conflated topic
+	public void onConflated() {
+		this.conflatedMessages.incrementAndGet();
+	}
+
+	public void onDisconnected() {
+		this.disconnections.incrementAndGet();
+	}
+
+	// per subscriber counts are discarded once the subscriber disconnects
+	public void onSubscriberClosed(SocketAddress subscriber) {
+		if (subscriber != null) {
+			this.droppedBySubscriber.remove(subscriber);
+		}
+	}
+
+	public long droppedMessages() {
+		return this.droppedMessages.get();
+	}
+
+	public long droppedMessages(String topic) {
+		return count(this.droppedByTopic.get(topic));
+	}
+
+	public long droppedMessages(SocketAddress subscriber) {
+		return count(this.droppedBySubscriber.get(subscriber));
+	}
+
+	public long conflatedMessages() {
+		return this.conflatedMessages.get();
+	}
+
+	public long disconnections() {
+		return this.disconnections.get();
+	}
+
+	private static <K> AtomicLong counter(ConcurrentMap<K, AtomicLong> counters,
+			K key) {
+		AtomicLong counter = counters.get(key);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(key, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	private static long count(AtomicLong counter) {
+		return counter == null ? 0 : counter.get();
+	}
+}
@@ -8,10 +8,10 @@ import uk.co.bssd.vesta.message.SubscribeChannelRequest;
 
 public class SubscribeChannelRequestHandler extends SimpleChannelUpstreamHandler {
 
-	private final ChannelSubscriptions channelSubscriptions;
+	private final TopicPublisher topicPublisher;
 	
-	public SubscribeChannelRequestHandler(ChannelSubscriptions subscriptions) {
-		this.channelSubscriptions = subscriptions;
+	SubscribeChannelRequestHandler(TopicPublisher topicPublisher) {
+		this.topicPublisher = topicPublisher;
 	}
 	
 	@Override
@@ -21,7 +21,7 @@ public class SubscribeChannelRequestHandler extends SimpleChannelUpstreamHandler
 		
 		if (message instanceof SubscribeChannelRequest) {
 			String channelName = ((SubscribeChannelRequest)message).channelName();
-			this.channelSubscriptions.subscribe(e.getChannel(), channelName);
+			this.topicPublisher.subscribe(e.getChannel(), channelName);
 		} else {
 			ctx.sendUpstream(e);
 		}
@@ -0,0 +1,322 @@
+package uk.co.bssd.vesta.server;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+import uk.co.bssd.vesta.MessageConflatedException;
+import uk.co.bssd.vesta.SlowConsumerException;
+
+// holds published messages for a subscriber whilst its channel is not
+// writable, applying the slow consumer policy once the queue is full. on
+// conflated topics a newer message replaces a queued one with the same key
+public class SubscriberOutboundHandler extends SimpleChannelUpstreamHandler {
+
+	public static final String NAME = "subscriberOutbound";
+
+	private static final String TEMPLATE_MESSAGE = "Subscriber [%s] is not keeping up, message dropped by policy %s";
+	private static final String CONFLATED_TEMPLATE_MESSAGE = "Subscriber [%s] is not keeping up, message on [%s] replaced by a newer one";
+
+	private final SlowConsumerConfiguration configuration;
+	private final SlowConsumerStatistics statistics;
+	private final Queue<PendingMessage> pending;
+	private final Map<ConflationKey, PendingMessage> pendingByConflationKey;
+
+	// failures decided whilst holding our lock, completed once it is
+	// released so future listeners never run under it
+	private List<DeferredFailure> deferredFailures;
+	private boolean draining;
+	private boolean disconnecting;
+
+	public SubscriberOutboundHandler(SlowConsumerConfiguration configuration,
+			SlowConsumerStatistics statistics) {
+		this.configuration = configuration;
+		this.statistics = statistics;
+		this.pending = new ArrayDeque<PendingMessage>();
+		this.pendingByConflationKey = new HashMap<ConflationKey, PendingMessage>();
+		this.deferredFailures = new ArrayList<DeferredFailure>();
+	}
+
+	public ChannelFuture publish(Channel channel, ChannelBuffer message,
+			String topic) {
+		return publish(channel, message, topic, null);
+	}
+
+	ChannelFuture publish(Channel channel, ChannelBuffer message,
+			String topic, ConflationKey conflationKey) {
+		ChannelFuture future = publishOrQueue(channel, message, topic,
+				conflationKey);
+		completeDeferredFailures();
+		// closing takes the I/O worker's write lock, which is held whilst it
+		// drains into this handler, so it must happen outside our lock
+		if (shouldDisconnect()) {
+			channel.close();
+		}
+		return future;
+	}
+
+	private ChannelFuture publishOrQueue(Channel channel,
+			ChannelBuffer message, String topic, ConflationKey conflationKey) {
+		synchronized (this) {
+			if (this.pending.isEmpty() && channel.isWritable()) {
+				return channel.write(message);
+			}
+			if (conflationKey != null) {
+				PendingMessage superseded = this.pendingByConflationKey
+						.get(conflationKey);
+				if (superseded != null) {
+					return conflate(channel, superseded, message);
+				}
+			}
+			if (this.pending.size() < this.configuration.maxQueuedMessages()) {
+				ChannelFuture future = enqueue(channel, message, topic,
+						conflationKey);
+				if (channel.isWritable()) {
+					drain(channel);
+				}
+				return future;
+			}
+			return overflow(channel, message, topic, conflationKey);
+		}
+	}
+
+	@Override
+	public void channelInterestChanged(ChannelHandlerContext ctx,
+			ChannelStateEvent e) throws Exception {
+		drain(e.getChannel());
+		super.channelInterestChanged(ctx, e);
+	}
+
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+			throws Exception {
+		Channel channel = e.getChannel();
+		synchronized (this) {
+			ClosedChannelException cause = new ClosedChannelException();
+			PendingMessage message;
+			while ((message = this.pending.poll()) != null) {
+				failLater(message.future, cause);
+			}
+			this.pendingByConflationKey.clear();
+			notifyAll();
+		}
+		completeDeferredFailures();
+		this.statistics.onSubscriberClosed(channel.getRemoteAddress());
+		super.channelClosed(ctx, e);
+	}
+
+	private synchronized boolean shouldDisconnect() {
+		return this.disconnecting;
+	}
+
+	private ChannelFuture overflow(Channel channel, ChannelBuffer message,
+			String topic, ConflationKey conflationKey) {
+		switch (this.configuration.policy()) {
+		case DROP_OLDEST:
+			PendingMessage oldest = poll();
+			if (oldest == null) {
+				return dropped(channel, topic);
+			}
+			drop(channel, oldest, oldest.topic);
+			return enqueue(channel, message, topic, conflationKey);
+		case DISCONNECT:
+			if (!this.disconnecting) {
+				this.disconnecting = true;
+				this.statistics.onDisconnected();
+			}
+			return dropped(channel, topic);
+		case BLOCK_PUBLISHER:
+			if (awaitRoom(channel)) {
+				return publishAfterWait(channel, message, topic, conflationKey);
+			}
+			return dropped(channel, topic);
+		default:
+			return dropped(channel, topic);
+		}
+	}
+
+	// a publisher on this channel's own I/O thread cannot be unblocked by a
+	// drain, so it only waits out maxBlockMillis
+	private boolean awaitRoom(Channel channel) {
+		long deadline = System.currentTimeMillis()
+				+ this.configuration.maxBlockMillis();
+		while (this.pending.size() >= this.configuration.maxQueuedMessages()
+				&& channel.isOpen()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return channel.isOpen();
+	}
+
+	private ChannelFuture publishAfterWait(Channel channel,
+			ChannelBuffer message, String topic, ConflationKey conflationKey) {
+		if (this.pending.isEmpty() && channel.isWritable()) {
+			return channel.write(message);
+		}
+		return enqueue(channel, message, topic, conflationKey);
+	}
+
+	private ChannelFuture enqueue(Channel channel, ChannelBuffer message,
+			String topic, ConflationKey conflationKey) {
+		ChannelFuture future = Channels.future(channel);
+		PendingMessage pendingMessage = new PendingMessage(message, topic,
+				conflationKey, future);
+		this.pending.add(pendingMessage);
+		if (conflationKey != null) {
+			this.pendingByConflationKey.put(conflationKey, pendingMessage);
+		}
+		return future;
+	}
+
+	// the newer message takes the queued one's place. the superseded
+	// message will never be written, so its future fails once our lock is
+	// released
+	private ChannelFuture conflate(Channel channel, PendingMessage superseded,
+			ChannelBuffer message) {
+		ChannelFuture future = Channels.future(channel);
+		ChannelFuture supersededFuture = superseded.replace(message, future);
+		this.statistics.onConflated();
+		failLater(supersededFuture, new MessageConflatedException(String
+				.format(CONFLATED_TEMPLATE_MESSAGE, channel.getRemoteAddress(),
+						superseded.topic)));
+		return future;
+	}
+
+	private PendingMessage poll() {
+		PendingMessage message = this.pending.poll();
+		if (message != null && message.conflationKey != null) {
+			this.pendingByConflationKey.remove(message.conflationKey);
+		}
+		return message;
+	}
+
+	private ChannelFuture dropped(Channel channel, String topic) {
+		ChannelFuture future = Channels.future(channel);
+		this.statistics.onDropped(channel.getRemoteAddress(), topic);
+		future.setFailure(slowConsumer(channel));
+		return future;
+	}
+
+	private void drop(Channel channel, PendingMessage message, String topic) {
+		this.statistics.onDropped(channel.getRemoteAddress(), topic);
+		failLater(message.future, slowConsumer(channel));
+	}
+
+	private void failLater(ChannelFuture future, Throwable cause) {
+		this.deferredFailures.add(new DeferredFailure(future, cause));
+	}
+
+	private void completeDeferredFailures() {
+		List<DeferredFailure> failures;
+		synchronized (this) {
+			if (this.deferredFailures.isEmpty()) {
+				return;
+			}
+			failures = this.deferredFailures;
+			this.deferredFailures = new ArrayList<DeferredFailure>();
+		}
+		for (DeferredFailure failure : failures) {
+			failure.future.setFailure(failure.cause);
+		}
+	}
+
+	private SlowConsumerException slowConsumer(Channel channel) {
+		return new SlowConsumerException(String.format(TEMPLATE_MESSAGE,
+				channel.getRemoteAddress(), this.configuration.policy()));
+	}
+
+	private void drain(Channel channel) {
+		synchronized (this) {
+			// writes on the I/O thread can change interest and re-enter
+			if (this.draining) {
+				return;
+			}
+			this.draining = true;
+			try {
+				while (!this.pending.isEmpty() && channel.isWritable()) {
+					PendingMessage message = poll();
+					channel.write(message.message).addListener(
+							new CompletionRelay(message.future));
+				}
+				notifyAll();
+			} finally {
+				this.draining = false;
+			}
+		}
+	}
+
+	private static class PendingMessage {
+
+		private final String topic;
+		private final ConflationKey conflationKey;
+		private ChannelBuffer message;
+		private ChannelFuture future;
+
+		private PendingMessage(ChannelBuffer message, String topic,
+				ConflationKey conflationKey, ChannelFuture future) {
+			this.message = message;
+			this.topic = topic;
+			this.conflationKey = conflationKey;
+			this.future = future;
+		}
+
+		// the replaced message's future, for the caller to complete
+		private ChannelFuture replace(ChannelBuffer message,
+				ChannelFuture future) {
+			ChannelFuture replaced = this.future;
+			this.message = message;
+			this.future = future;
+			return replaced;
+		}
+	}
+
+	private static class DeferredFailure {
+
+		private final ChannelFuture future;
+		private final Throwable cause;
+
+		private DeferredFailure(ChannelFuture future, Throwable cause) {
+			this.future = future;
+			this.cause = cause;
+		}
+	}
+
+	private static class CompletionRelay implements ChannelFutureListener {
+
+		private final ChannelFuture target;
+
+		private CompletionRelay(ChannelFuture target) {
+			this.target = target;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			if (future.isSuccess()) {
+				this.target.setSuccess();
+			} else {
+				this.target.setFailure(future.getCause());
+			}
+		}
+	}
+}
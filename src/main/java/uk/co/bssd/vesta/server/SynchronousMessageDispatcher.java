@@ -1,31 +1,158 @@
 package uk.co.bssd.vesta.server;
 
 import java.io.Serializable;
-import java.util.concurrent.ExecutorService;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelLocal;
 
 import uk.co.bssd.vesta.message.SynchronousRequest;
+import uk.co.bssd.vesta.message.SynchronousResponseBuilder;
+import uk.co.bssd.vesta.trace.TraceStage;
 
 public class SynchronousMessageDispatcher {
 
-	private final ExecutorService executor;
+	private final DispatchExecutor executor;
+	private final DispatchKeySelector keySelector;
 	private final SynchronousMessageHandlers<Serializable,  Serializable> messageHandlers;
+	private final Map<Class<?>, Bulkhead> bulkheads;
+	private final Set<Class<?>> inlineTypes;
+	private final InlineHandlerBudget inlineHandlerBudget;
+	private final ServerMetrics metrics;
+	private final ChannelLocal<InFlightRequests> inFlight;
 	
-	public SynchronousMessageDispatcher(ExecutorService executor) {
+	public SynchronousMessageDispatcher(DispatchExecutor executor, DispatchKeySelector keySelector, ServerMetrics metrics) {
+		this(executor, keySelector, null, metrics);
+	}
+	
+	public SynchronousMessageDispatcher(DispatchExecutor executor, DispatchKeySelector keySelector, InlineHandlerBudget inlineHandlerBudget, ServerMetrics metrics) {
 		this.executor = executor;
+		this.keySelector = keySelector;
+		this.metrics = metrics;
+		this.inlineHandlerBudget = inlineHandlerBudget;
+		this.inlineTypes = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 		this.messageHandlers = new SynchronousMessageHandlers<Serializable,Serializable>();
+		this.bulkheads = new ConcurrentHashMap<Class<?>, Bulkhead>();
+		this.inFlight = new ChannelLocal<InFlightRequests>(true) {
+			@Override
+			protected InFlightRequests initialValue(Channel channel) {
+				return new InFlightRequests();
+			}
+		};
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void registerHandler(Class<? extends Serializable> clazz,
 			SynchronousMessageHandler<? extends Serializable, ? extends Serializable> handler) {
+		registerHandler(clazz, handler, DispatchPolicy.shared());
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void registerHandler(Class<? extends Serializable> clazz,
+			SynchronousMessageHandler<? extends Serializable, ? extends Serializable> handler, DispatchPolicy policy) {
 		this.messageHandlers.add(clazz,  (SynchronousMessageHandler<Serializable, Serializable>)handler);
+		
+		if (policy.isInline()) {
+			this.inlineTypes.add(clazz);
+		} else {
+			this.inlineTypes.remove(clazz);
+		}
+		
+		Bulkhead bulkhead = policy.newBulkhead(clazz);
+		Bulkhead previous = bulkhead == null ? this.bulkheads.remove(clazz) : this.bulkheads.put(clazz, bulkhead);
+		if (previous != null) {
+			previous.shutdown();
+		}
 	}
 	
 	public void dispatch(SynchronousRequest request, Channel responseChannel) {
-		SynchronousMessageHandler<Serializable, Serializable> handler = this.messageHandlers.forType(request.payload().getClass());
-		SynchronousMessageTask task = new SynchronousMessageTask(handler, request, responseChannel);
-		this.executor.submit(task);
+		Class<? extends Serializable> messageType = request.payload().getClass();
+		SynchronousMessageHandler<Serializable, Serializable> handler = this.messageHandlers.forType(messageType);
+		MessageTypeMetrics messageTypeMetrics = this.metrics.forMessageType(messageType);
+		messageTypeMetrics.onRequest();
+		
+		if (request.deadline().isExpired()) {
+			messageTypeMetrics.onExpired();
+			return;
+		}
+		
+		if (this.inlineTypes.contains(messageType)) {
+			dispatchInline(handler, request, responseChannel, messageTypeMetrics);
+			return;
+		}
+		
+		InFlightRequests inFlight = this.inFlight.get(responseChannel);
+		SynchronousMessageTask task = new SynchronousMessageTask(handler, request, responseChannel, this.metrics, messageTypeMetrics, inFlight);
+		Object partitionKey = this.keySelector.keyFor(responseChannel, request.payload());
+		
+		Bulkhead bulkhead = this.bulkheads.get(messageType);
+		if (request.trace() != null) {
+			request.trace().mark(TraceStage.SERVER_QUEUED);
+		}
+		this.metrics.onQueued();
+		inFlight.add(request);
+		if (bulkhead == null) {
+			execute(partitionKey, task, request, inFlight);
+		}
+		else if (!bulkhead.tryExecute(partitionKey, task)) {
+			// reject straight away rather than queue behind a saturated handler
+			inFlight.start(request);
+			this.metrics.onNotQueued();
+			messageTypeMetrics.onRejected();
+			responseChannel.write(SynchronousResponseBuilder.responseFor(request).overloaded(bulkhead.overloaded()).build());
+		}
+	}
+	
+	// a cancelled request is dropped if it has not started yet, once running
+	// it is left to finish and its response is ignored by the client
+	public void cancel(long correlationId, Channel responseChannel) {
+		InFlightRequests inFlight = this.inFlight.get(responseChannel);
+		SynchronousRequest request = inFlight.cancel(correlationId);
+		if (request != null) {
+			this.metrics.forMessageType(request.payload().getClass()).onCancelled();
+		}
+	}
+	
+	public void shutdown() {
+		this.executor.shutdown();
+		for (Bulkhead bulkhead : this.bulkheads.values()) {
+			bulkhead.shutdown();
+		}
+	}
+	
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		if (!this.executor.awaitTermination(timeout, unit)) {
+			return false;
+		}
+		for (Bulkhead bulkhead : this.bulkheads.values()) {
+			if (!bulkhead.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void execute(Object partitionKey, SynchronousMessageTask task, SynchronousRequest request, InFlightRequests inFlight) {
+		try {
+			this.executor.execute(partitionKey, task);
+		} catch (RuntimeException e) {
+			inFlight.start(request);
+			this.metrics.onNotQueued();
+			throw e;
+		}
+	}
+	
+	private void dispatchInline(SynchronousMessageHandler<Serializable, Serializable> handler, SynchronousRequest request, Channel responseChannel, MessageTypeMetrics messageTypeMetrics) {
+		if (this.inlineHandlerBudget == null) {
+			SynchronousMessageTask.respond(handler, request, responseChannel, messageTypeMetrics);
+			return;
+		}
+		long start = System.nanoTime();
+		SynchronousMessageTask.respond(handler, request, responseChannel, messageTypeMetrics);
+		this.inlineHandlerBudget.check(request.payload().getClass(), System.nanoTime() - start);
 	}
-}
\ No newline at end of file
+}
@@ -6,34 +6,83 @@ import org.jboss.netty.channel.Channel;
 
 import uk.co.bssd.vesta.message.SynchronousRequest;
 import uk.co.bssd.vesta.message.SynchronousResponseBuilder;
+import uk.co.bssd.vesta.trace.Trace;
+import uk.co.bssd.vesta.trace.TraceStage;
 
 public class SynchronousMessageTask implements Runnable {
 
 	private final SynchronousMessageHandler<Serializable, Serializable> handler;
 	private final SynchronousRequest request;
 	private final Channel responseChannel;
+	private final ServerMetrics metrics;
+	private final MessageTypeMetrics messageTypeMetrics;
+	private final InFlightRequests inFlight;
+	private final long queuedNanos;
 
 	public SynchronousMessageTask(SynchronousMessageHandler<Serializable, Serializable> handler,
-			SynchronousRequest request, Channel responseChannel) {
+			SynchronousRequest request, Channel responseChannel,
+			ServerMetrics metrics, MessageTypeMetrics messageTypeMetrics,
+			InFlightRequests inFlight) {
 		this.handler = handler;
 		this.request = request;
 		this.responseChannel = responseChannel;
+		this.metrics = metrics;
+		this.messageTypeMetrics = messageTypeMetrics;
+		this.inFlight = inFlight;
+		this.queuedNanos = System.nanoTime();
 	}
 
 	@Override
 	public void run() {
-		Serializable payload = this.request.payload();
+		this.metrics.onDequeued(System.nanoTime() - this.queuedNanos);
+		if (!this.inFlight.start(this.request)) {
+			// cancelled whilst queued, already counted
+			return;
+		}
+		if (this.request.deadline().isExpired()) {
+			// nobody is waiting for the response, so neither is it sent
+			this.messageTypeMetrics.onExpired();
+			return;
+		}
+		respond(this.handler, this.request, this.responseChannel, this.messageTypeMetrics);
+	}
+
+	public static void respond(SynchronousMessageHandler<Serializable, Serializable> handler,
+			SynchronousRequest request, Channel responseChannel,
+			MessageTypeMetrics messageTypeMetrics) {
+		Serializable payload = request.payload();
 		
-		SynchronousResponseBuilder responseBuilder = SynchronousResponseBuilder.responseFor(this.request);
+		SynchronousResponseBuilder responseBuilder = SynchronousResponseBuilder.responseFor(request);
 
+		Trace trace = request.trace();
+		long start = System.nanoTime();
+		if (trace != null) {
+			trace.mark(TraceStage.SERVER_HANDLER_STARTED, start);
+		}
+		boolean bounded = request.deadline().isBounded();
+		if (bounded) {
+			RequestDeadline.set(request.deadline());
+		}
 		try {
-			Serializable response = this.handler.onMessage(payload);
+			Serializable response = handler.onMessage(payload);
 			responseBuilder.success(response);
 		}
 		catch (RuntimeException e) {
+			// the exception goes back to the caller, it is only counted here
+			messageTypeMetrics.onError();
 			responseBuilder.failure(e);
 		}
+		finally {
+			if (bounded) {
+				RequestDeadline.clear();
+			}
+		}
+		long end = System.nanoTime();
+		messageTypeMetrics.onHandled(end - start);
+		if (trace != null) {
+			trace.mark(TraceStage.SERVER_HANDLER_COMPLETED, end);
+		}
 		
-		this.responseChannel.write(responseBuilder.build());
+		responseChannel.write(responseBuilder.build());
 	}
-}
\ No newline at end of file
+}
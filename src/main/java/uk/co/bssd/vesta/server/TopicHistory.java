@@ -0,0 +1,14 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+interface TopicHistory {
+
+	void retain(Serializable message, ChannelBuffer encoded);
+
+	// oldest first
+	List<ChannelBuffer> snapshot();
+}
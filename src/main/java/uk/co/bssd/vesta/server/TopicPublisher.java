@@ -0,0 +1,143 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+
+import uk.co.bssd.vesta.ChannelFutureAdapter;
+import uk.co.bssd.vesta.MessageFuture;
+
+// publishes to topic subscribers through their outbound handlers. a retained
+// topic's history is its lock: publishes to it, and a subscribe matching it
+// along with the replay, happen holding it, so a new subscriber sees every
+// message exactly once, either in the replay or live. subscribes matching no
+// retained topic take no lock at all
+class TopicPublisher {
+
+	private final ChannelSubscriptions subscriptions;
+	private final ConflatedTopics conflatedTopics;
+	private final Map<String, TopicHistory> retainedTopics;
+
+	public TopicPublisher(ChannelSubscriptions subscriptions) {
+		this.subscriptions = subscriptions;
+		this.conflatedTopics = new ConflatedTopics();
+		this.retainedTopics = new ConcurrentHashMap<String, TopicHistory>();
+	}
+
+	public void registerConflatedTopic(String channelName,
+			ConflationKeyResolver resolver) {
+		this.conflatedTopics.conflate(channelName, resolver);
+	}
+
+	public void registerRetainedTopic(String channelName,
+			TopicRetention retention) {
+		this.retainedTopics.put(channelName, retention.newHistory());
+	}
+
+	public boolean isRetained(String channelName) {
+		return this.retainedTopics.containsKey(channelName);
+	}
+
+	public MessageFuture publish(String channelName, Serializable message,
+			ChannelBuffer encoded) {
+		TopicHistory history = this.retainedTopics.get(channelName);
+		if (history == null) {
+			return publishToSubscribers(channelName, message, encoded);
+		}
+
+		// publishers to the same topic are serialised so the history and
+		// the live stream agree on order
+		synchronized (history) {
+			history.retain(message, encoded);
+			return publishToSubscribers(channelName, message, encoded);
+		}
+	}
+
+	public void subscribe(Channel channel, String channelName) {
+		SortedMap<String, TopicHistory> matched = matchingRetainedTopics(channelName);
+		if (matched.isEmpty()) {
+			this.subscriptions.subscribe(channel, channelName);
+			return;
+		}
+		List<Map.Entry<String, TopicHistory>> histories = new ArrayList<Map.Entry<String, TopicHistory>>(
+				matched.entrySet());
+		subscribeAndReplay(channel, channelName, histories, 0);
+	}
+
+	static ChannelFuture publish(Channel client, ChannelBuffer message,
+			String topic, ConflationKey conflationKey) {
+		SubscriberOutboundHandler outbound = (SubscriberOutboundHandler) client
+				.getPipeline().get(SubscriberOutboundHandler.NAME);
+		if (outbound == null) {
+			return client.write(message);
+		}
+		return outbound.publish(client, message, topic, conflationKey);
+	}
+
+	private MessageFuture publishToSubscribers(String channelName,
+			Serializable message, ChannelBuffer encoded) {
+		Collection<Channel> subscribedClients = this.subscriptions
+				.subscribedClients(channelName);
+
+		List<ChannelFuture> channelFutures = new ArrayList<ChannelFuture>();
+		ConflationKey conflationKey = this.conflatedTopics.keyFor(channelName,
+				message);
+		for (Channel client : subscribedClients) {
+			channelFutures.add(publish(client, encoded.duplicate(),
+					channelName, conflationKey));
+		}
+		return new ChannelFutureAdapter(channelFutures);
+	}
+
+	// sorted by topic, so subscribers to overlapping patterns take the
+	// histories they share in the same order
+	private SortedMap<String, TopicHistory> matchingRetainedTopics(
+			String channelName) {
+		SortedMap<String, TopicHistory> matched = new TreeMap<String, TopicHistory>();
+		if (this.retainedTopics.isEmpty()) {
+			return matched;
+		}
+		if (!TopicTrie.isPattern(channelName)) {
+			TopicHistory history = this.retainedTopics.get(channelName);
+			if (history != null) {
+				matched.put(channelName, history);
+			}
+			return matched;
+		}
+		for (Map.Entry<String, TopicHistory> retained : this.retainedTopics
+				.entrySet()) {
+			if (TopicTrie.matches(channelName, retained.getKey())) {
+				matched.put(retained.getKey(), retained.getValue());
+			}
+		}
+		return matched;
+	}
+
+	// holds every matched history, one level of recursion each, whilst
+	// subscribing and replaying
+	private void subscribeAndReplay(Channel channel, String channelName,
+			List<Map.Entry<String, TopicHistory>> matched, int locked) {
+		if (locked < matched.size()) {
+			synchronized (matched.get(locked).getValue()) {
+				subscribeAndReplay(channel, channelName, matched, locked + 1);
+			}
+			return;
+		}
+
+		this.subscriptions.subscribe(channel, channelName);
+		for (Map.Entry<String, TopicHistory> retained : matched) {
+			for (ChannelBuffer message : retained.getValue().snapshot()) {
+				publish(channel, message.duplicate(), retained.getKey(), null);
+			}
+		}
+	}
+}
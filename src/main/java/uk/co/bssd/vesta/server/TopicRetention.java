@@ -0,0 +1,46 @@
+package uk.co.bssd.vesta.server;
+
+public abstract class TopicRetention {
+
+	private final long maxBytes;
+
+	private TopicRetention(long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException(
+					"Retained bytes must be positive");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	// the last maxMessages published, as long as they fit in maxBytes
+	public static TopicRetention lastMessages(final int maxMessages,
+			long maxBytes) {
+		if (maxMessages < 1) {
+			throw new IllegalArgumentException(
+					"Retained message count must be positive");
+		}
+		return new TopicRetention(maxBytes) {
+			@Override
+			TopicHistory newHistory() {
+				return new LastMessagesHistory(maxMessages, maxBytes());
+			}
+		};
+	}
+
+	// the newest message for each key, as long as they fit in maxBytes
+	public static TopicRetention lastValuePerKey(
+			final ConflationKeyResolver keyResolver, long maxBytes) {
+		return new TopicRetention(maxBytes) {
+			@Override
+			TopicHistory newHistory() {
+				return new LastValueHistory(keyResolver, maxBytes());
+			}
+		};
+	}
+
+	long maxBytes() {
+		return this.maxBytes;
+	}
+
+	abstract TopicHistory newHistory();
+}
@@ -0,0 +1,153 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+// patterns are indexed segment by segment, so matching a topic costs time
+// proportional to its depth rather than to the number of patterns. writers
+// are serialised, readers walk the trie without locking
+class TopicTrie<V> {
+
+	public static final String SINGLE_SEGMENT_WILDCARD = "*";
+	public static final String MULTI_SEGMENT_WILDCARD = "#";
+
+	private static final Splitter SEGMENTS = Splitter.on('.');
+
+	private final Node<V> root;
+
+	public TopicTrie() {
+		this.root = new Node<V>();
+	}
+
+	public static boolean isPattern(String topic) {
+		for (String segment : SEGMENTS.split(topic)) {
+			if (SINGLE_SEGMENT_WILDCARD.equals(segment)
+					|| MULTI_SEGMENT_WILDCARD.equals(segment)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static boolean matches(String pattern, String topic) {
+		return matches(segments(pattern), 0, segments(topic), 0);
+	}
+
+	public synchronized boolean add(String pattern, V value) {
+		Node<V> node = this.root;
+		for (String segment : SEGMENTS.split(pattern)) {
+			Node<V> child = node.children.get(segment);
+			if (child == null) {
+				child = new Node<V>();
+				node.children.put(segment, child);
+			}
+			node = child;
+		}
+		if (node.values.contains(value)) {
+			return false;
+		}
+		node.values = ImmutableSet.<V> builder().addAll(node.values)
+				.add(value).build();
+		return true;
+	}
+
+	public synchronized boolean remove(String pattern, V value) {
+		return remove(this.root, segments(pattern), 0, value);
+	}
+
+	public ImmutableSet<V> match(String topic) {
+		ImmutableSet.Builder<V> matches = ImmutableSet.builder();
+		collect(this.root, segments(topic), 0, matches);
+		return matches.build();
+	}
+
+	private boolean remove(Node<V> node, List<String> segments, int index,
+			V value) {
+		if (index == segments.size()) {
+			if (!node.values.contains(value)) {
+				return false;
+			}
+			ImmutableSet.Builder<V> remaining = ImmutableSet.builder();
+			for (V existing : node.values) {
+				if (!existing.equals(value)) {
+					remaining.add(existing);
+				}
+			}
+			node.values = remaining.build();
+			return true;
+		}
+		String segment = segments.get(index);
+		Node<V> child = node.children.get(segment);
+		if (child == null || !remove(child, segments, index + 1, value)) {
+			return false;
+		}
+		if (child.isEmpty()) {
+			node.children.remove(segment);
+		}
+		return true;
+	}
+
+	private void collect(Node<V> node, List<String> segments, int index,
+			ImmutableSet.Builder<V> matches) {
+		if (index == segments.size()) {
+			matches.addAll(node.values);
+		} else {
+			Node<V> exact = node.children.get(segments.get(index));
+			if (exact != null) {
+				collect(exact, segments, index + 1, matches);
+			}
+			Node<V> single = node.children.get(SINGLE_SEGMENT_WILDCARD);
+			if (single != null) {
+				collect(single, segments, index + 1, matches);
+			}
+		}
+		// '#' consumes zero or more of the remaining segments
+		Node<V> multi = node.children.get(MULTI_SEGMENT_WILDCARD);
+		if (multi != null) {
+			for (int next = index; next <= segments.size(); next++) {
+				collect(multi, segments, next, matches);
+			}
+		}
+	}
+
+	private static boolean matches(List<String> pattern, int patternIndex,
+			List<String> topic, int topicIndex) {
+		if (patternIndex == pattern.size()) {
+			return topicIndex == topic.size();
+		}
+		String segment = pattern.get(patternIndex);
+		if (MULTI_SEGMENT_WILDCARD.equals(segment)) {
+			for (int next = topicIndex; next <= topic.size(); next++) {
+				if (matches(pattern, patternIndex + 1, topic, next)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (topicIndex == topic.size()) {
+			return false;
+		}
+		return (SINGLE_SEGMENT_WILDCARD.equals(segment) || segment
+				.equals(topic.get(topicIndex)))
+				&& matches(pattern, patternIndex + 1, topic, topicIndex + 1);
+	}
+
+	private static List<String> segments(String topic) {
+		return ImmutableList.copyOf(SEGMENTS.split(topic));
+	}
+
+	private static class Node<V> {
+
+		private final ConcurrentMap<String, Node<V>> children = new ConcurrentHashMap<String, Node<V>>();
+		private volatile ImmutableSet<V> values = ImmutableSet.of();
+
+		private boolean isEmpty() {
+			return this.values.isEmpty() && this.children.isEmpty();
+		}
+	}
+}
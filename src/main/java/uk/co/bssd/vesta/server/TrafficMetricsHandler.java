@@ -0,0 +1,61 @@
+package uk.co.bssd.vesta.server;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+// sits nearest the socket so it counts the bytes actually read and written,
+// after any write batching. one instance per channel
+public class TrafficMetricsHandler extends SimpleChannelHandler {
+
+	public static final String NAME = "trafficMetrics";
+
+	private final ServerMetrics metrics;
+
+	private volatile ServerMetrics.ChannelTraffic traffic;
+
+	public TrafficMetricsHandler(ServerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e)
+			throws Exception {
+		this.traffic = this.metrics.forChannel(e.getChannel()
+				.getRemoteAddress());
+		super.channelConnected(ctx, e);
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception {
+		ServerMetrics.ChannelTraffic current = this.traffic;
+		if (current != null && e.getMessage() instanceof ChannelBuffer) {
+			current.onRead(((ChannelBuffer) e.getMessage()).readableBytes());
+		}
+		super.messageReceived(ctx, e);
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception {
+		ServerMetrics.ChannelTraffic current = this.traffic;
+		if (current != null && e.getMessage() instanceof ChannelBuffer) {
+			current.onWritten(((ChannelBuffer) e.getMessage()).readableBytes());
+		}
+		super.writeRequested(ctx, e);
+	}
+
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+			throws Exception {
+		ServerMetrics.ChannelTraffic current = this.traffic;
+		if (current != null) {
+			this.metrics.removeChannel(current);
+			this.traffic = null;
+		}
+		super.channelClosed(ctx, e);
+	}
+}
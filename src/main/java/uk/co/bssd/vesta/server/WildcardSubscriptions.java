@@ -0,0 +1,78 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+// matches of concrete topics against wildcard patterns are cached, every
+// pattern change moves on the generation which invalidates all cached matches
+class WildcardSubscriptions {
+
+	private static final int DEFAULT_MAX_CACHED_TOPICS = 10000;
+
+	private final TopicTrie<Channel> patterns;
+	private final Cache<String, Matches> matchesByTopic;
+	private final AtomicLong generation;
+
+	private volatile boolean empty;
+
+	public WildcardSubscriptions() {
+		this(DEFAULT_MAX_CACHED_TOPICS);
+	}
+
+	public WildcardSubscriptions(int maxCachedTopics) {
+		this.patterns = new TopicTrie<Channel>();
+		this.matchesByTopic = CacheBuilder.newBuilder()
+				.maximumSize(maxCachedTopics).build();
+		this.generation = new AtomicLong();
+		this.empty = true;
+	}
+
+	public boolean subscribe(String pattern, Channel channel) {
+		boolean added = this.patterns.add(pattern, channel);
+		if (added) {
+			this.empty = false;
+			this.generation.incrementAndGet();
+		}
+		return added;
+	}
+
+	public boolean unsubscribe(String pattern, Channel channel) {
+		boolean removed = this.patterns.remove(pattern, channel);
+		if (removed) {
+			this.generation.incrementAndGet();
+		}
+		return removed;
+	}
+
+	public ImmutableSet<Channel> match(String topic) {
+		if (this.empty) {
+			return ImmutableSet.of();
+		}
+		// read the generation first, a match computed while patterns change
+		// is stored against the old generation and never served
+		long current = this.generation.get();
+		Matches cached = this.matchesByTopic.getIfPresent(topic);
+		if (cached != null && cached.generation == current) {
+			return cached.channels;
+		}
+		ImmutableSet<Channel> channels = this.patterns.match(topic);
+		this.matchesByTopic.put(topic, new Matches(current, channels));
+		return channels;
+	}
+
+	private static class Matches {
+
+		private final long generation;
+		private final ImmutableSet<Channel> channels;
+
+		private Matches(long generation, ImmutableSet<Channel> channels) {
+			this.generation = generation;
+			this.channels = channels;
+		}
+	}
+}
@@ -19,12 +19,16 @@ import java.net.InetSocketAddress;
 import java.util.concurrent.Executors;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.CharsetUtil;
 
 /**
  * A HTTP server which serves Web Socket requests at:
@@ -78,7 +82,12 @@ public class WebSocketServer {
 	}
 	
 	public void broadcast(String message) {
-		this.channelGroup.write(new TextWebSocketFrame(message));
+		// encode the text once and give every channel its own frame over it
+		ChannelBuffer text = ChannelBuffers.copiedBuffer(message,
+				CharsetUtil.UTF_8);
+		for (Channel channel : this.channelGroup) {
+			channel.write(new TextWebSocketFrame(text.duplicate()));
+		}
 	}
 
 	public static void main(String[] args) {
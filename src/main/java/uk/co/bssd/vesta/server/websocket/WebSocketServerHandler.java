@@ -41,6 +41,8 @@ import org.jboss.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.CharsetUtil;
 
 /**
@@ -48,6 +50,9 @@ import org.jboss.netty.util.CharsetUtil;
  */
 public class WebSocketServerHandler extends SimpleChannelUpstreamHandler {
 
+	private static final InternalLogger logger = InternalLoggerFactory
+			.getInstance(WebSocketServerHandler.class);
+
 	private static final String WEBSOCKET_PATH = "/websocket";
 
 	private WebSocketServerHandshaker handshaker;
@@ -137,7 +142,8 @@ public class WebSocketServerHandler extends SimpleChannelUpstreamHandler {
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
 			throws Exception {
-		e.getCause().printStackTrace();
+		logger.warn("Closing websocket channel following an exception",
+				e.getCause());
 		e.getChannel().close();
 	}
 
@@ -0,0 +1,38 @@
+package uk.co.bssd.vesta.trace;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+// notes when the channel last read from its socket, ahead of any decoding.
+// a traced message decoded from that read takes this as its arrival. one
+// instance per channel, only installed when tracing is configured
+public class ReadTimestampHandler extends SimpleChannelUpstreamHandler {
+
+	public static final String NAME = "readTimestamp";
+
+	private volatile long lastReadNanos;
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception {
+		if (e.getMessage() instanceof ChannelBuffer) {
+			this.lastReadNanos = System.nanoTime();
+		}
+		super.messageReceived(ctx, e);
+	}
+
+	public long lastReadNanos() {
+		return this.lastReadNanos;
+	}
+
+	public static void markRead(ChannelHandlerContext ctx, Trace trace,
+			TraceStage stage) {
+		ReadTimestampHandler handler = ctx.getPipeline().get(
+				ReadTimestampHandler.class);
+		if (handler != null) {
+			trace.mark(stage, handler.lastReadNanos());
+		}
+	}
+}
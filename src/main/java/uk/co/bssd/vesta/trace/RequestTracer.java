@@ -0,0 +1,11 @@
+package uk.co.bssd.vesta.trace;
+
+public interface RequestTracer {
+
+	// asked for every synchronous request that arrives without a trace, so
+	// it has to be cheap
+	boolean sample();
+
+	// this side has stamped its last stage of the trace
+	void onTraceCompleted(Trace trace);
+}
@@ -0,0 +1,74 @@
+package uk.co.bssd.vesta.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// keeps the most recent completed traces in a fixed ring, overwriting the
+// oldest. with sampling off a request costs one volatile read
+public class SamplingTraceRecorder implements RequestTracer {
+
+	private final AtomicReferenceArray<Trace> traces;
+	private final AtomicLong recorded;
+	private final AtomicLong requests;
+
+	private volatile int sampleEvery;
+
+	public SamplingTraceRecorder(int capacity) {
+		this(capacity, 0);
+	}
+
+	public SamplingTraceRecorder(int capacity, int sampleEvery) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(String.format(
+					"Capacity [%d] must be at least one", capacity));
+		}
+		this.traces = new AtomicReferenceArray<Trace>(capacity);
+		this.recorded = new AtomicLong();
+		this.requests = new AtomicLong();
+		sampleEvery(sampleEvery);
+	}
+
+	// one request in every n is traced, zero turns sampling off
+	public void sampleEvery(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Sample rate [%d] cannot be negative", n));
+		}
+		this.sampleEvery = n;
+	}
+
+	@Override
+	public boolean sample() {
+		int n = this.sampleEvery;
+		if (n == 0) {
+			return false;
+		}
+		return n == 1 || this.requests.getAndIncrement() % n == 0;
+	}
+
+	@Override
+	public void onTraceCompleted(Trace trace) {
+		long slot = this.recorded.getAndIncrement();
+		this.traces.set((int) (slot % this.traces.length()), trace);
+	}
+
+	// the traces still held, oldest first
+	public List<Trace> dump() {
+		long end = this.recorded.get();
+		long start = Math.max(0, end - this.traces.length());
+		List<Trace> dump = new ArrayList<Trace>((int) (end - start));
+		for (long slot = start; slot < end; slot++) {
+			Trace trace = this.traces.get((int) (slot % this.traces.length()));
+			if (trace != null) {
+				dump.add(trace);
+			}
+		}
+		return dump;
+	}
+
+	public long recorded() {
+		return this.recorded.get();
+	}
+}
@@ -0,0 +1,96 @@
+package uk.co.bssd.vesta.trace;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// monotonic timestamps for the stages of one request on one side. the trace
+// id is what travels with the request, so client and server traces of the
+// same request can be matched up
+public class Trace {
+
+	private static final long NOT_REACHED = Long.MIN_VALUE;
+	private static final TraceStage[] STAGES = TraceStage.values();
+
+	private static final AtomicLong TRACE_IDS = new AtomicLong(
+			new Random().nextLong());
+
+	private final long traceId;
+	private final String messageType;
+	private final AtomicLongArray timestamps;
+
+	public Trace(long traceId, Class<?> messageType) {
+		this.traceId = traceId;
+		this.messageType = messageType.getName();
+		this.timestamps = new AtomicLongArray(STAGES.length);
+		for (int i = 0; i < STAGES.length; i++) {
+			this.timestamps.set(i, NOT_REACHED);
+		}
+	}
+
+	public static Trace start(Class<?> messageType) {
+		return new Trace(nextTraceId(), messageType);
+	}
+
+	// zero means untraced on the wire, so it is never handed out
+	private static long nextTraceId() {
+		long traceId;
+		do {
+			traceId = TRACE_IDS.incrementAndGet();
+		} while (traceId == 0);
+		return traceId;
+	}
+
+	public long traceId() {
+		return this.traceId;
+	}
+
+	public String messageType() {
+		return this.messageType;
+	}
+
+	public void mark(TraceStage stage) {
+		mark(stage, System.nanoTime());
+	}
+
+	public void mark(TraceStage stage, long nanoTime) {
+		this.timestamps.set(stage.ordinal(), nanoTime);
+	}
+
+	public boolean reached(TraceStage stage) {
+		return this.timestamps.get(stage.ordinal()) != NOT_REACHED;
+	}
+
+	public long timestamp(TraceStage stage) {
+		return this.timestamps.get(stage.ordinal());
+	}
+
+	// nanoseconds from one stage to another, -1 unless both were reached
+	public long elapsedNanos(TraceStage from, TraceStage to) {
+		if (!reached(from) || !reached(to)) {
+			return -1;
+		}
+		return timestamp(to) - timestamp(from);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(String.format(
+				"Trace [%016x] [%s]", this.traceId, this.messageType));
+		long first = NOT_REACHED;
+		for (TraceStage stage : STAGES) {
+			if (!reached(stage)) {
+				continue;
+			}
+			long timestamp = timestamp(stage);
+			if (first == NOT_REACHED) {
+				first = timestamp;
+			}
+			builder.append(' ').append(stage).append(" +")
+					.append(TimeUnit.NANOSECONDS.toMicros(timestamp - first))
+					.append("us");
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,9 @@
+package uk.co.bssd.vesta.trace;
+
+// the points in a synchronous request's life at which a trace is stamped,
+// in the order they happen. client and server stamp their own stages with
+// their own clocks, so a trace only ever spans one side
+public enum TraceStage {
+
+	CLIENT_SEND, CLIENT_ENCODED, SERVER_READ, SERVER_DECODED, SERVER_QUEUED, SERVER_HANDLER_STARTED, SERVER_HANDLER_COMPLETED, SERVER_RESPONSE_ENCODED, CLIENT_RESPONSE_READ, CLIENT_RESPONSE_DECODED, CLIENT_COMPLETED;
+}
@@ -0,0 +1,78 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.MessageTimeoutException;
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
+import uk.co.bssd.vesta.codec.BoundedClassResolver;
+import uk.co.bssd.vesta.codec.ClassAllowList;
+import uk.co.bssd.vesta.codec.JavaSerializationCodec;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+
+public class AllowListedRpcServerIntegrationTest extends
+		RpcServerIntegrationTest {
+
+	private static final int RESOLVER_CACHE_SIZE = 64;
+	private static final long SHORT_TIMEOUT_MS = 200;
+
+	@Override
+	protected RpcServerConfiguration serverConfiguration() {
+		return RpcServerConfiguration.defaults().codec(allowListedCodec());
+	}
+
+	@Override
+	protected RpcClientConfiguration clientConfiguration() {
+		return RpcClientConfiguration.defaults().codec(allowListedCodec());
+	}
+
+	@Test(expected = MessageTimeoutException.class)
+	public void testPayloadWhichIsNotOnTheAllowListIsNotDispatchedByTheServer() {
+		this.server.registerSynchronousMessageHandler(URI.class,
+				new SynchronousMessageHandler<URI, Serializable>() {
+					@Override
+					public Serializable onMessage(URI message) {
+						return message;
+					}
+				});
+
+		this.client.sendSync(URI.create("http://localhost"),
+				Serializable.class, SHORT_TIMEOUT_MS);
+	}
+
+	@Test
+	public void testStandardListNamesCollectionClassesRatherThanAllOfJavaUtil() {
+		this.server.registerSynchronousMessageHandler(ArrayList.class,
+				new SynchronousMessageHandler<ArrayList<String>, Serializable>() {
+					@Override
+					public Serializable onMessage(ArrayList<String> message) {
+						return message.size();
+					}
+				});
+		ArrayList<String> list = new ArrayList<String>();
+		list.add("hello");
+
+		assertThat(this.client.sendSync(list, Integer.class, SHORT_TIMEOUT_MS),
+				is(1));
+		assertThat(ClassAllowList.standard().permits(
+				PriorityQueue.class.getName()), is(false));
+		assertThat(ClassAllowList.standard().permits(
+				"java.lang.reflect.Proxy"), is(false));
+	}
+
+	private JavaSerializationCodec allowListedCodec() {
+		ClassAllowList allowList = ClassAllowList.standard()
+				.allow(SimpleRequest.class, SimpleResponse.class)
+				.allowPackage("uk.co.bssd.vesta");
+		return new JavaSerializationCodec(new BoundedClassResolver(getClass()
+				.getClassLoader(), RESOLVER_CACHE_SIZE, allowList));
+	}
+}
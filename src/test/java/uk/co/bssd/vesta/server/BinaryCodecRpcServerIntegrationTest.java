@@ -0,0 +1,88 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.DataOutputStream;
+import java.net.Socket;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
+import uk.co.bssd.vesta.codec.BinaryCodec;
+import uk.co.bssd.vesta.codec.BinarySerializer;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+
+public class BinaryCodecRpcServerIntegrationTest extends
+		RpcServerIntegrationTest {
+
+	private static final int SIMPLE_REQUEST_TYPE_ID = BinaryCodec.FIRST_USER_TYPE_ID;
+	private static final int SIMPLE_RESPONSE_TYPE_ID = BinaryCodec.FIRST_USER_TYPE_ID + 1;
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+	private static final int READ_TIMEOUT_MS = 1000;
+	private static final int END_OF_STREAM = -1;
+
+	@Override
+	protected RpcServerConfiguration serverConfiguration() {
+		return RpcServerConfiguration.defaults().codec(binaryCodec());
+	}
+
+	@Override
+	protected RpcClientConfiguration clientConfiguration() {
+		return RpcClientConfiguration.defaults().codec(binaryCodec());
+	}
+
+	@Test
+	public void testServerClosesConnectionWhichSendsANegativeFrameLength()
+			throws Exception {
+		Socket socket = new Socket(HOST, PORT);
+		try {
+			socket.setSoTimeout(READ_TIMEOUT_MS);
+			DataOutputStream out = new DataOutputStream(
+					socket.getOutputStream());
+			out.writeInt(-1);
+			out.flush();
+
+			assertThat(socket.getInputStream().read(), is(END_OF_STREAM));
+		} finally {
+			socket.close();
+		}
+	}
+
+	private BinaryCodec binaryCodec() {
+		BinaryCodec codec = new BinaryCodec();
+		codec.register(SIMPLE_REQUEST_TYPE_ID, SimpleRequest.class,
+				new BinarySerializer<SimpleRequest>() {
+					@Override
+					public void write(BinaryCodec codec, ChannelBuffer buffer,
+							SimpleRequest value) {
+						codec.writeString(buffer, value.payload());
+					}
+
+					@Override
+					public SimpleRequest read(BinaryCodec codec,
+							ChannelBuffer buffer) {
+						return new SimpleRequest(codec.readString(buffer));
+					}
+				});
+		codec.register(SIMPLE_RESPONSE_TYPE_ID, SimpleResponse.class,
+				new BinarySerializer<SimpleResponse>() {
+					@Override
+					public void write(BinaryCodec codec, ChannelBuffer buffer,
+							SimpleResponse value) {
+						codec.writeString(buffer, value.payload());
+					}
+
+					@Override
+					public SimpleResponse read(BinaryCodec codec,
+							ChannelBuffer buffer) {
+						return new SimpleResponse(codec.readString(buffer));
+					}
+				});
+		return codec;
+	}
+}
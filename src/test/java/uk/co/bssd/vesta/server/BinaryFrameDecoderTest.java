@@ -0,0 +1,63 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.codec.BinaryCodec;
+import uk.co.bssd.vesta.codec.BinaryFrameDecoder;
+import uk.co.bssd.vesta.message.SynchronousResponse;
+import uk.co.bssd.vesta.message.SynchronousResult;
+
+public class BinaryFrameDecoderTest {
+
+	private static final int MAX_FRAME_LENGTH = 1024;
+	// after the [length:int] prefix and [kind:byte]
+	private static final int FLAGS_OFFSET = 5;
+
+	private DecoderEmbedder<Object> decoder;
+
+	@Before
+	public void before() {
+		this.decoder = new DecoderEmbedder<Object>(new BinaryFrameDecoder(
+				new BinaryCodec(), MAX_FRAME_LENGTH));
+	}
+
+	@Test
+	public void testNegativeFrameLengthIsRejectedAsCorrupt() {
+		ChannelBuffer frame = ChannelBuffers.buffer(4);
+		frame.writeInt(-1);
+
+		assertThat(decodeFailure(frame),
+				instanceOf(CorruptedFrameException.class));
+	}
+
+	@Test
+	public void testUnknownSynchronousResultIsRejectedAsCorrupt()
+			throws Exception {
+		ChannelBuffer frame = new BinaryCodec().encode(new SynchronousResponse(
+				1, SynchronousResult.SUCCESS, "hello"));
+		frame.setByte(FLAGS_OFFSET, 0xFF);
+
+		assertThat(decodeFailure(frame),
+				instanceOf(CorruptedFrameException.class));
+	}
+
+	private Throwable decodeFailure(ChannelBuffer frame) {
+		try {
+			this.decoder.offer(frame);
+		} catch (CodecEmbedderException e) {
+			return e.getCause();
+		}
+		fail("Expected the frame to be rejected");
+		return null;
+	}
+}
@@ -0,0 +1,131 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.MessageFuture;
+import uk.co.bssd.vesta.MessageFutureListener;
+import uk.co.bssd.vesta.client.RpcClient;
+
+public class BroadcastFanOutIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS = 1000;
+	private static final long SUBSCRIBE_TIMEOUT_MS = 1000;
+
+	private static final int NUMBER_CLIENTS = 5;
+
+	private static final String MESSAGE_CHANNEL = "channel";
+	private static final String MESSAGE = "fan out";
+
+	private CountingCodec codec;
+	private SubscribeLatch subscribeLatch;
+
+	private List<RpcClient> clients;
+	private RpcServer server;
+
+	@Before
+	public void before() {
+		this.codec = new CountingCodec(MESSAGE);
+		this.subscribeLatch = new SubscribeLatch(NUMBER_CLIENTS,
+				SUBSCRIBE_TIMEOUT_MS);
+
+		this.server = new RpcServer(RpcServerConfiguration.defaults().codec(
+				this.codec));
+		this.server.registerSubscribeListener(this.subscribeLatch);
+		this.server.start(HOST, PORT);
+
+		this.clients = new ArrayList<RpcClient>();
+		for (int i = 0; i < NUMBER_CLIENTS; i++) {
+			RpcClient client = new RpcClient();
+			client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+			client.subscribe(MESSAGE_CHANNEL);
+			this.clients.add(client);
+		}
+		this.subscribeLatch.awaitSubscriptionComplete();
+	}
+
+	@After
+	public void after() {
+		for (RpcClient client : this.clients) {
+			client.stop();
+		}
+		this.server.stop();
+	}
+
+	@Test
+	public void testBroadcastOnChannelIsEncodedOnceForAllSubscribers() {
+		MessageFuture future = this.server.broadcast(MESSAGE, MESSAGE_CHANNEL);
+		future.awaitUninterruptibly();
+
+		assertThat(future.isSuccessful(), is(true));
+		assertAllClientsReceived(MESSAGE);
+		assertThat(this.codec.encodings(), is(1));
+	}
+
+	@Test
+	public void testBroadcastToAllClientsIsEncodedOnce() {
+		this.server.broadcast(MESSAGE);
+
+		assertAllClientsReceived(MESSAGE);
+		assertThat(this.codec.encodings(), is(1));
+	}
+
+	@Test
+	public void testListenerIsNotifiedOnceEverySubscriberWriteCompletes()
+			throws Exception {
+		final CountDownLatch notified = new CountDownLatch(1);
+		MessageFuture future = this.server.broadcast(MESSAGE, MESSAGE_CHANNEL);
+		future.addListener(new MessageFutureListener() {
+			@Override
+			public void operationComplete(MessageFuture completed) {
+				notified.countDown();
+			}
+		});
+
+		assertThat(notified.await(SUBSCRIBE_TIMEOUT_MS, TimeUnit.MILLISECONDS),
+				is(true));
+		assertThat(future.isDone(), is(true));
+		assertThat(future.succeededCount(), is(NUMBER_CLIENTS));
+		assertThat(future.failedCount(), is(0));
+	}
+
+	@Test
+	public void testTimedAwaitCompletesWithEverySubscriberWriteSucceeded()
+			throws Exception {
+		MessageFuture future = this.server.broadcast(MESSAGE, MESSAGE_CHANNEL);
+
+		assertThat(future.await(SUBSCRIBE_TIMEOUT_MS, TimeUnit.MILLISECONDS),
+				is(true));
+		assertThat(future.recipientCount(), is(NUMBER_CLIENTS));
+		assertThat(future.isSuccessful(), is(true));
+	}
+
+	@Test
+	public void testBroadcastWithoutSubscribersCompletesStraightAway() {
+		MessageFuture future = this.server.broadcast(MESSAGE, "unsubscribed");
+
+		assertThat(future.isDone(), is(true));
+		assertThat(future.recipientCount(), is(0));
+	}
+
+	private void assertAllClientsReceived(Serializable message) {
+		for (RpcClient client : this.clients) {
+			assertThat(client.awaitMessage(CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS),
+					is(message));
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.ServerOverloadedException;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class BulkheadIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long RESPONSE_TIMEOUT_MS = 5000;
+	private static final long CHEAP_RESPONSE_TIMEOUT_MS = 500;
+
+	private static final String LOOKUP = "lookup";
+
+	private CountDownLatch releaseSlowHandler;
+
+	private RpcClient client;
+	private RpcServer server;
+
+	@Before
+	public void before() {
+		this.releaseSlowHandler = new CountDownLatch(1);
+
+		this.server = new RpcServer();
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new SynchronousMessageHandler<SimpleRequest, SimpleResponse>() {
+					@Override
+					public SimpleResponse onMessage(SimpleRequest request) {
+						awaitRelease();
+						return new SimpleResponse(request.payload());
+					}
+				}, DispatchPolicy.bulkhead(1, 1));
+		this.server.registerSynchronousMessageHandler(String.class,
+				new SynchronousMessageHandler<String, String>() {
+					@Override
+					public String onMessage(String request) {
+						return request;
+					}
+				});
+		this.server.start(HOST, PORT);
+
+		this.client = new RpcClient();
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	@After
+	public void after() {
+		this.releaseSlowHandler.countDown();
+		this.client.stop();
+		this.server.stop();
+	}
+
+	@Test(expected = ServerOverloadedException.class)
+	public void testRequestBeyondBulkheadCapacityIsRejectedAsOverloaded() {
+		sendSlowRequest("executing");
+		sendSlowRequest("queued");
+		this.client.sendSync(new SimpleRequest("rejected"),
+				SimpleResponse.class, RESPONSE_TIMEOUT_MS);
+	}
+
+	@Test
+	public void testOtherMessageTypesAreAnsweredWhilstBulkheadIsSaturated() {
+		sendSlowRequest("executing");
+		sendSlowRequest("queued");
+		String response = this.client.sendSync(LOOKUP, String.class,
+				CHEAP_RESPONSE_TIMEOUT_MS);
+		assertThat(response, is(LOOKUP));
+	}
+
+	@Test
+	public void testAcceptedRequestsCompleteOnceBulkheadDrains()
+			throws Exception {
+		ListenableFuture<SimpleResponse> executing = sendSlowRequest("executing");
+		ListenableFuture<SimpleResponse> queued = sendSlowRequest("queued");
+		this.releaseSlowHandler.countDown();
+		assertThat(executing.get().payload(), is("executing"));
+		assertThat(queued.get().payload(), is("queued"));
+	}
+
+	@Test
+	public void testReregisteringOneTypeLeavesOthersOnTheSamePolicyRunning() {
+		DispatchPolicy policy = DispatchPolicy.bulkhead(1, 1);
+		this.server.registerSynchronousMessageHandler(Integer.class,
+				new EchoHandler<Integer>(), policy);
+		this.server.registerSynchronousMessageHandler(Long.class,
+				new EchoHandler<Long>(), policy);
+
+		this.server.registerSynchronousMessageHandler(Integer.class,
+				new EchoHandler<Integer>(), policy);
+
+		assertThat(this.client.sendSync(Long.valueOf(1), Long.class,
+				CHEAP_RESPONSE_TIMEOUT_MS), is(Long.valueOf(1)));
+		assertThat(this.client.sendSync(Integer.valueOf(2), Integer.class,
+				CHEAP_RESPONSE_TIMEOUT_MS), is(Integer.valueOf(2)));
+	}
+
+	private ListenableFuture<SimpleResponse> sendSlowRequest(String payload) {
+		return this.client.sendRequest(new SimpleRequest(payload),
+				SimpleResponse.class, RESPONSE_TIMEOUT_MS);
+	}
+
+	private void awaitRelease() {
+		try {
+			this.releaseSlowHandler.await(RESPONSE_TIMEOUT_MS,
+					TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class EchoHandler<T extends Serializable> implements
+			SynchronousMessageHandler<T, T> {
+
+		@Override
+		public T onMessage(T request) {
+			return request;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package uk.co.bssd.vesta.server;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelSubscriptionsConcurrencyTest {
+
+	private static final int NUMBER_WRITERS = 8;
+	private static final int CHANNELS_PER_WRITER = 250;
+	private static final int NUMBER_TOPICS = 100;
+	private static final int TOPICS_PER_CHANNEL = 10;
+	private static final int CHURN_ROUNDS = 5;
+
+	private ChannelSubscriptions subscriptions;
+	private ExecutorService executor;
+
+	@Before
+	public void before() {
+		this.subscriptions = new ChannelSubscriptions();
+		this.executor = Executors.newFixedThreadPool(NUMBER_WRITERS + 1);
+	}
+
+	@After
+	public void after() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void testPublishersCanIterateSubscribersWhilstClientsChurn()
+			throws Exception {
+		final AtomicBoolean churning = new AtomicBoolean(true);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<Void>> writers = new ArrayList<Future<Void>>();
+		for (int i = 0; i < NUMBER_WRITERS; i++) {
+			final long seed = i;
+			writers.add(this.executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					churn(new Random(seed));
+					return null;
+				}
+			}));
+		}
+
+		Future<Void> publisher = this.executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				start.await();
+				while (churning.get()) {
+					for (int topic = 0; topic < NUMBER_TOPICS; topic++) {
+						for (Channel channel : subscriptions
+								.subscribedClients(topicName(topic))) {
+							channel.getId();
+						}
+					}
+				}
+				return null;
+			}
+		});
+
+		start.countDown();
+		for (Future<Void> writer : writers) {
+			writer.get();
+		}
+		churning.set(false);
+		publisher.get();
+
+		for (int topic = 0; topic < NUMBER_TOPICS; topic++) {
+			assertThat(this.subscriptions.subscribedClients(topicName(topic))
+					.isEmpty(), is(true));
+		}
+	}
+
+	private void churn(Random random) {
+		for (int round = 0; round < CHURN_ROUNDS; round++) {
+			List<Channel> channels = new ArrayList<Channel>();
+			for (int i = 0; i < CHANNELS_PER_WRITER; i++) {
+				Channel channel = createNiceMock(Channel.class);
+				replay(channel);
+				channels.add(channel);
+				for (int j = 0; j < TOPICS_PER_CHANNEL; j++) {
+					this.subscriptions.subscribe(channel,
+							topicName(random.nextInt(NUMBER_TOPICS)));
+				}
+			}
+			for (Channel channel : channels) {
+				this.subscriptions.unsubscribeAll(channel);
+			}
+		}
+	}
+
+	private static String topicName(int topic) {
+		return "topic." + topic;
+	}
+}
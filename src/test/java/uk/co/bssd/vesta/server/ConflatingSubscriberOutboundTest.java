@@ -0,0 +1,189 @@
+package uk.co.bssd.vesta.server;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.MessageConflatedException;
+
+public class ConflatingSubscriberOutboundTest {
+
+	private static final String TOPIC = "prices";
+	private static final int MAX_QUEUED_MESSAGES = 16;
+
+	private AtomicBoolean writable;
+	private List<String> written;
+
+	private Channel channel;
+	private ChannelHandlerContext context;
+	private ChannelStateEvent channelEvent;
+
+	private SlowConsumerStatistics statistics;
+	private SubscriberOutboundHandler outbound;
+
+	@Before
+	public void before() {
+		this.writable = new AtomicBoolean(false);
+		this.written = new ArrayList<String>();
+
+		this.channel = createNiceMock(Channel.class);
+		expect(this.channel.isWritable()).andAnswer(new IAnswer<Boolean>() {
+			@Override
+			public Boolean answer() {
+				return Boolean.valueOf(writable.get());
+			}
+		}).anyTimes();
+		expect(this.channel.isOpen()).andReturn(Boolean.TRUE).anyTimes();
+		expect(this.channel.write(anyObject())).andAnswer(
+				new IAnswer<ChannelFuture>() {
+					@Override
+					public ChannelFuture answer() {
+						ChannelBuffer buffer = (ChannelBuffer) EasyMock
+								.getCurrentArguments()[0];
+						written.add(buffer.toString(CharsetUtil.UTF_8));
+						return Channels.succeededFuture(channel);
+					}
+				}).anyTimes();
+		replay(this.channel);
+
+		this.context = createNiceMock(ChannelHandlerContext.class);
+		replay(this.context);
+		this.channelEvent = createNiceMock(ChannelStateEvent.class);
+		expect(this.channelEvent.getChannel()).andReturn(this.channel)
+				.anyTimes();
+		replay(this.channelEvent);
+
+		this.statistics = new SlowConsumerStatistics();
+		this.outbound = new SubscriberOutboundHandler(
+				new SlowConsumerConfiguration(SlowConsumerPolicy.DROP_NEWEST,
+						MAX_QUEUED_MESSAGES), this.statistics);
+	}
+
+	@Test
+	public void testOnlyNewestPendingMessagePerKeyIsWrittenOnceWritable()
+			throws Exception {
+		publish("VOD", "VOD 1");
+		publish("BP", "BP 1");
+		publish("VOD", "VOD 2");
+		publish("VOD", "VOD 3");
+		publish("BP", "BP 2");
+
+		becomeWritable();
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("VOD 3");
+		expected.add("BP 2");
+		assertThat(this.written, is(expected));
+		assertThat(this.statistics.conflatedMessages(), is(3L));
+	}
+
+	@Test
+	public void testSupersededMessagesFailAsConflatedAndAreNeverDelivered()
+			throws Exception {
+		ChannelFuture superseded = publish("VOD", "VOD 1");
+		ChannelFuture replacement = publish("VOD", "VOD 2");
+		assertThat(superseded.isSuccess(), is(false));
+		assertThat(superseded.getCause(),
+				instanceOf(MessageConflatedException.class));
+		assertThat(replacement.isDone(), is(false));
+
+		becomeWritable();
+
+		assertThat(replacement.isSuccess(), is(true));
+	}
+
+	@Test
+	public void testConflatedMessagesDoNotCountTowardsTheQueueLimit()
+			throws Exception {
+		for (int i = 0; i < MAX_QUEUED_MESSAGES * 4; i++) {
+			publish("VOD", "VOD " + i);
+		}
+		assertThat(this.statistics.droppedMessages(), is(0L));
+	}
+
+	@Test
+	public void testMessagesWithoutConflationKeyAreAllWritten()
+			throws Exception {
+		this.outbound.publish(this.channel, buffer("a"), TOPIC);
+		this.outbound.publish(this.channel, buffer("b"), TOPIC);
+
+		becomeWritable();
+
+		assertThat(this.written.size(), is(2));
+	}
+
+	@Test
+	public void testSupersededMessagesNotifyListenersOutsideTheHandlerLock()
+			throws Exception {
+		ChannelFuture superseded = publish("VOD", "VOD 1");
+		LockRecordingListener listener = new LockRecordingListener();
+		superseded.addListener(listener);
+
+		publish("VOD", "VOD 2");
+
+		assertThat(superseded.isSuccess(), is(false));
+		assertThat(listener.notifiedHoldingLock, is(Boolean.FALSE));
+	}
+
+	@Test
+	public void testQueuedMessagesFailedOnCloseNotifyListenersOutsideTheHandlerLock()
+			throws Exception {
+		ChannelFuture queued = this.outbound.publish(this.channel,
+				buffer("a"), TOPIC);
+		LockRecordingListener listener = new LockRecordingListener();
+		queued.addListener(listener);
+
+		this.outbound.channelClosed(this.context, this.channelEvent);
+
+		assertThat(queued.isSuccess(), is(false));
+		assertThat(listener.notifiedHoldingLock, is(Boolean.FALSE));
+	}
+
+	private ChannelFuture publish(String key, String message) {
+		return this.outbound.publish(this.channel, buffer(message), TOPIC,
+				new ConflationKey(TOPIC, key));
+	}
+
+	private void becomeWritable() throws Exception {
+		this.writable.set(true);
+		this.outbound.channelInterestChanged(this.context,
+				this.channelEvent);
+	}
+
+	private static ChannelBuffer buffer(String message) {
+		return ChannelBuffers.copiedBuffer(message, CharsetUtil.UTF_8);
+	}
+
+	private class LockRecordingListener implements ChannelFutureListener {
+
+		private Boolean notifiedHoldingLock;
+
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			this.notifiedHoldingLock = Boolean.valueOf(Thread
+					.holdsLock(outbound));
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package uk.co.bssd.vesta.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler;
+
+import uk.co.bssd.vesta.codec.Codec;
+import uk.co.bssd.vesta.codec.JavaSerializationCodec;
+
+public class CountingCodec implements Codec {
+
+	private final Codec delegate;
+	private final Object countedMessage;
+	private final AtomicInteger encodings;
+
+	public CountingCodec(Object countedMessage) {
+		this.delegate = new JavaSerializationCodec();
+		this.countedMessage = countedMessage;
+		this.encodings = new AtomicInteger();
+	}
+
+	@Override
+	public ChannelBuffer encode(Object message) throws Exception {
+		if (this.countedMessage.equals(message)) {
+			this.encodings.incrementAndGet();
+		}
+		return this.delegate.encode(message);
+	}
+
+	@Override
+	public ChannelHandler newDecoder() {
+		return this.delegate.newDecoder();
+	}
+
+	public int encodings() {
+		return this.encodings.get();
+	}
+}
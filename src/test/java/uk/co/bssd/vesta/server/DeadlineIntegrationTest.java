@@ -0,0 +1,212 @@
+package uk.co.bssd.vesta.server;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.junit.After;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.Deadline;
+import uk.co.bssd.vesta.client.MessageTimeoutException;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.codec.BinaryCodec;
+import uk.co.bssd.vesta.message.CancelRequest;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+import uk.co.bssd.vesta.message.SynchronousRequest;
+import uk.co.bssd.vesta.metrics.MetricsRegistry;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class DeadlineIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS = 1000;
+	private static final long SHORT_TIMEOUT_MS = 50;
+	private static final long METRIC_TIMEOUT_MS = 1000;
+
+	private final CountDownLatch releaseHandler = new CountDownLatch(1);
+	private final AtomicInteger handled = new AtomicInteger();
+
+	private RpcServer server;
+	private RpcClient client;
+	private SynchronousMessageDispatcher dispatcher;
+
+	@After
+	public void after() {
+		this.releaseHandler.countDown();
+		if (this.client != null) {
+			this.client.stop();
+			this.server.stop();
+		}
+		if (this.dispatcher != null) {
+			this.dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void testHandlerSeesTheCallersRemainingBudget() {
+		final AtomicLong remainingMillis = new AtomicLong(-1);
+		start(new SynchronousMessageHandler<SimpleRequest, SimpleResponse>() {
+			@Override
+			public SimpleResponse onMessage(SimpleRequest request) {
+				remainingMillis.set(RequestDeadline.remainingMillis());
+				return new SimpleResponse(request.payload());
+			}
+		});
+
+		this.client.sendSync(new SimpleRequest("hello"), SimpleResponse.class,
+				CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS);
+
+		assertThat(remainingMillis.get() > 0, is(true));
+		assertThat(remainingMillis.get() <= CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS,
+				is(true));
+		assertThat(RequestDeadline.current().isBounded(), is(false));
+	}
+
+	@Test
+	public void testRequestAbandonedWhilstQueuedIsCancelledAndNeverHandled()
+			throws Exception {
+		start(new BlockingHandler());
+
+		ListenableFuture<Serializable> first = this.client.sendRequest(
+				new SimpleRequest("first"), Serializable.class,
+				CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS);
+		ListenableFuture<Serializable> second = this.client.sendRequest(
+				new SimpleRequest("second"), Serializable.class,
+				SHORT_TIMEOUT_MS);
+		try {
+			second.get();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(MessageTimeoutException.class));
+		}
+
+		assertThat(awaitCancelled(this.server), is(true));
+		this.releaseHandler.countDown();
+		first.get();
+
+		assertThat(this.handled.get(), is(1));
+		assertThat(this.client.metrics().snapshot().get("requests.cancelsSent")
+				.longValue(), is(1L));
+	}
+
+	@Test
+	public void testRequestWhoseDeadlinePassesInTheQueueIsNotHandled()
+			throws Exception {
+		ServerMetrics metrics = new ServerMetrics(new MetricsRegistry());
+		this.dispatcher = new SynchronousMessageDispatcher(
+				DispatchExecutors.partitioned(),
+				DispatchKeySelectors.perMessageType(), metrics);
+		this.dispatcher.registerHandler(SimpleRequest.class,
+				new BlockingHandler());
+		Channel channel = mockChannel();
+
+		this.dispatcher.dispatch(new SynchronousRequest(1, new SimpleRequest(
+				"first")), channel);
+		SynchronousRequest second = new SynchronousRequest(2,
+				new SimpleRequest("second"));
+		second.attachDeadline(Deadline.after(SHORT_TIMEOUT_MS,
+				TimeUnit.MILLISECONDS));
+		this.dispatcher.dispatch(second, channel);
+
+		Thread.sleep(SHORT_TIMEOUT_MS * 2);
+		this.releaseHandler.countDown();
+
+		MessageTypeMetrics messageTypeMetrics = metrics
+				.forMessageType(SimpleRequest.class);
+		long deadline = System.currentTimeMillis() + METRIC_TIMEOUT_MS;
+		while (messageTypeMetrics.expired() == 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(messageTypeMetrics.expired(), is(1L));
+		assertThat(this.handled.get(), is(1));
+	}
+
+	@Test
+	public void testTimeoutAndCancelAreCarriedInTheBinaryEnvelope()
+			throws Exception {
+		BinaryCodec codec = new BinaryCodec();
+
+		SynchronousRequest request = (SynchronousRequest) roundTrip(codec,
+				new SynchronousRequest(7, "payload", 0, SHORT_TIMEOUT_MS));
+		CancelRequest cancel = (CancelRequest) roundTrip(codec,
+				new CancelRequest(7));
+
+		assertThat(request.timeoutMillis(), is(SHORT_TIMEOUT_MS));
+		assertThat(request.isTraced(), is(false));
+		assertThat(cancel.correlationId(), is(7L));
+	}
+
+	private void start(
+			SynchronousMessageHandler<SimpleRequest, ? extends Serializable> handler) {
+		this.server = new RpcServer();
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				handler);
+		this.server.start(HOST, PORT);
+		this.client = new RpcClient();
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	private static Object roundTrip(BinaryCodec codec, Object message)
+			throws Exception {
+		ChannelBuffer frame = codec.encode(message);
+		frame.skipBytes(4);
+		return codec.decode(frame);
+	}
+
+	private static Channel mockChannel() {
+		Channel channel = createNiceMock(Channel.class);
+		expect(channel.getCloseFuture()).andReturn(
+				new DefaultChannelFuture(channel, false)).anyTimes();
+		replay(channel);
+		return channel;
+	}
+
+	private static boolean awaitCancelled(RpcServer server)
+			throws InterruptedException {
+		String name = "messages." + SimpleRequest.class.getName()
+				+ ".cancelled";
+		long deadline = System.currentTimeMillis() + METRIC_TIMEOUT_MS;
+		while (System.currentTimeMillis() < deadline) {
+			Number cancelled = server.metrics().snapshot().get(name);
+			if (cancelled != null && cancelled.longValue() == 1) {
+				return true;
+			}
+			Thread.sleep(5);
+		}
+		return false;
+	}
+
+	private class BlockingHandler implements
+			SynchronousMessageHandler<SimpleRequest, Serializable> {
+
+		@Override
+		public Serializable onMessage(SimpleRequest message) {
+			handled.incrementAndGet();
+			try {
+				releaseHandler.await(METRIC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return message;
+		}
+	}
+}
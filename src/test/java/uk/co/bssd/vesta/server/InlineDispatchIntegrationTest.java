@@ -0,0 +1,107 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+
+public class InlineDispatchIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long RESPONSE_TIMEOUT_MS = 1000;
+
+	private static final long INLINE_BUDGET_MS = 1;
+	private static final long SLOW_HANDLER_MS = 20;
+
+	private static final String HELLO = "hello";
+
+	private CountDownLatch budgetExceededLatch;
+	private volatile Class<?> budgetExceededType;
+
+	private RpcClient client;
+	private RpcServer server;
+
+	@Before
+	public void before() {
+		this.budgetExceededLatch = new CountDownLatch(1);
+
+		InlineHandlerBudget budget = new InlineHandlerBudget(INLINE_BUDGET_MS,
+				TimeUnit.MILLISECONDS, new InlineHandlerBudgetListener() {
+					@Override
+					public void onBudgetExceeded(Class<?> messageType,
+							long elapsedNanos, long budgetNanos) {
+						budgetExceededType = messageType;
+						budgetExceededLatch.countDown();
+					}
+				});
+		this.server = new RpcServer(RpcServerConfiguration.defaults()
+				.inlineHandlerBudget(budget));
+		this.server.start(HOST, PORT);
+
+		this.client = new RpcClient();
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	@After
+	public void after() {
+		this.client.stop();
+		this.server.stop();
+	}
+
+	@Test
+	public void testInlineHandlerRunsOnTheIoThread() {
+		this.server.registerSynchronousMessageHandler(String.class,
+				new SynchronousMessageHandler<String, String>() {
+					@Override
+					public String onMessage(String request) {
+						return Thread.currentThread().getName();
+					}
+				}, DispatchPolicy.inline());
+
+		String handlerThread = this.client.sendSync(HELLO, String.class,
+				RESPONSE_TIMEOUT_MS);
+		assertThat(handlerThread.contains("I/O"), is(true));
+	}
+
+	@Test
+	public void testInlineHandlerExceedingBudgetIsReported()
+			throws InterruptedException {
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new SynchronousMessageHandler<SimpleRequest, SimpleResponse>() {
+					@Override
+					public SimpleResponse onMessage(SimpleRequest request) {
+						sleep(SLOW_HANDLER_MS);
+						return new SimpleResponse(request.payload());
+					}
+				}, DispatchPolicy.inline());
+
+		SimpleResponse response = this.client.sendSync(new SimpleRequest(
+				HELLO), SimpleResponse.class, RESPONSE_TIMEOUT_MS);
+
+		assertThat(response.payload(), is(HELLO));
+		assertThat(this.budgetExceededLatch.await(RESPONSE_TIMEOUT_MS,
+				TimeUnit.MILLISECONDS), is(true));
+		assertThat(this.budgetExceededType.equals(SimpleRequest.class),
+				is(true));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
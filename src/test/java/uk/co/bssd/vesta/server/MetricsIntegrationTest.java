@@ -0,0 +1,254 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.MessageTimeoutException;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+import uk.co.bssd.vesta.metrics.LatencyHistogram;
+import uk.co.bssd.vesta.metrics.MetricsConfiguration;
+import uk.co.bssd.vesta.metrics.MetricsRegistry;
+import uk.co.bssd.vesta.metrics.MetricsReporter;
+
+public class MetricsIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS = 1000;
+	private static final long SHORT_TIMEOUT_MS = 50;
+	private static final long METRIC_TIMEOUT_MS = 1000;
+	private static final long REPORT_PERIOD_MS = 20;
+
+	private static final String REQUEST_METRICS = "messages."
+			+ SimpleRequest.class.getName();
+	private static final String JMX_OBJECT_NAME = "uk.co.bssd.vesta:type=RpcServer,name=MetricsIntegrationTest";
+	private static final String TOPIC = "prices";
+
+	private static final int RECORDING_THREADS = 4;
+	private static final int RECORDS_PER_THREAD = 10000;
+
+	private final CountDownLatch releaseHandler = new CountDownLatch(1);
+
+	private RpcServer server;
+	private RpcClient client;
+
+	@After
+	public void after() {
+		this.releaseHandler.countDown();
+		if (this.client != null) {
+			this.client.stop();
+		}
+		if (this.server != null) {
+			this.server.stop();
+		}
+	}
+
+	@Test
+	public void testSynchronousRequestsAreCountedWithTheirHandlerLatency() {
+		start(MetricsConfiguration.defaults());
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+
+		for (int i = 0; i < 3; i++) {
+			this.client.sendSync(new SimpleRequest("hello"),
+					SimpleResponse.class, CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS);
+		}
+
+		SortedMap<String, Number> metrics = this.server.metrics().snapshot();
+		assertThat(metrics.get(REQUEST_METRICS + ".requests").longValue(), is(3L));
+		assertThat(metrics.get(REQUEST_METRICS + ".errors").longValue(), is(0L));
+		assertThat(metrics.get(REQUEST_METRICS + ".handlerNanos.count").longValue(), is(3L));
+		assertThat(metrics.get("dispatch.waitNanos.count").longValue(), is(3L));
+		assertThat(metrics.get("dispatch.queueDepth").longValue(), is(0L));
+	}
+
+	@Test
+	public void testExceptionFromAsynchronousHandlerIsCountedAsAnError() {
+		start(MetricsConfiguration.defaults());
+		this.server.registerAsynchronousMessageHandler(SimpleRequest.class,
+				new AsynchronousMessageHandler<SimpleRequest>() {
+					@Override
+					public void onMessage(SimpleRequest message) {
+						throw new IllegalThreadStateException();
+					}
+				});
+
+		this.client.sendAsync(new SimpleRequest("hello"));
+
+		assertThat(awaitMetric(this.server.metrics(), REQUEST_METRICS
+				+ ".errors", 1), is(true));
+	}
+
+	@Test
+	public void testConnectionsAndBytesPerChannelAreReported() {
+		start(MetricsConfiguration.defaults());
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+
+		this.client.sendSync(new SimpleRequest("hello"), SimpleResponse.class,
+				CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS);
+
+		SortedMap<String, Number> metrics = this.server.metrics().snapshot();
+		assertThat(metrics.get("connections.active").longValue(), is(1L));
+		assertThat(metrics.get("bytes.in").longValue() > 0, is(true));
+		assertThat(metrics.get("bytes.out").longValue() > 0, is(true));
+		assertThat(channelBytesIn(metrics) > 0, is(true));
+	}
+
+	@Test
+	public void testSubscribersPerTopicAreReported() {
+		start(MetricsConfiguration.defaults());
+		SubscribeLatch subscribeLatch = new SubscribeLatch();
+		this.server.registerSubscribeListener(subscribeLatch);
+
+		this.client.subscribe(TOPIC);
+
+		assertThat(subscribeLatch.awaitSubscriptionComplete(), is(true));
+		assertThat(this.server.metrics().snapshot().get("subscribers." + TOPIC)
+				.longValue(), is(1L));
+	}
+
+	@Test
+	public void testClientCountsTimedOutSynchronousRequests() {
+		start(MetricsConfiguration.defaults());
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new BlockingHandler());
+
+		try {
+			this.client.sendSync(new SimpleRequest("hello"),
+					SimpleResponse.class, SHORT_TIMEOUT_MS);
+		} catch (MessageTimeoutException expected) {
+			// counted below
+		}
+
+		SortedMap<String, Number> metrics = this.client.metrics().snapshot();
+		assertThat(metrics.get("requests.timedOut").longValue(), is(1L));
+		assertThat(metrics.get("requests.inFlight").longValue(), is(0L));
+	}
+
+	@Test
+	public void testMetricsAreExportedOverJmxWhileTheServerRuns()
+			throws Exception {
+		start(MetricsConfiguration.defaults().jmxObjectName(JMX_OBJECT_NAME));
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(JMX_OBJECT_NAME);
+
+		assertThat(awaitMetric(this.server.metrics(), "connections.active", 1),
+				is(true));
+		assertThat(mbeanServer.getAttribute(name, "connections.active"),
+				is((Object) Long.valueOf(1)));
+
+		this.server.stop();
+		this.server = null;
+		assertThat(mbeanServer.isRegistered(name), is(false));
+	}
+
+	@Test
+	public void testReporterIsCalledPeriodically() throws Exception {
+		final CountDownLatch reports = new CountDownLatch(2);
+		start(MetricsConfiguration.defaults().reporter(new MetricsReporter() {
+			@Override
+			public void report(SortedMap<String, Number> metrics) {
+				if (metrics.containsKey("connections.active")) {
+					reports.countDown();
+				}
+			}
+		}, REPORT_PERIOD_MS));
+
+		assertThat(reports.await(METRIC_TIMEOUT_MS, TimeUnit.MILLISECONDS),
+				is(true));
+	}
+
+	@Test
+	public void testHistogramMergesValuesRecordedFromManyThreads()
+			throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram(
+				RECORDING_THREADS);
+		Thread[] recorders = new Thread[RECORDING_THREADS];
+		for (int i = 0; i < RECORDING_THREADS; i++) {
+			final long nanos = (i + 1) * 1000;
+			recorders[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < RECORDS_PER_THREAD; j++) {
+						histogram.record(nanos);
+					}
+				}
+			});
+			recorders[i].start();
+		}
+		for (Thread recorder : recorders) {
+			recorder.join();
+		}
+
+		assertThat(histogram.count(),
+				is((long) RECORDING_THREADS * RECORDS_PER_THREAD));
+		assertThat(histogram.max(), is(RECORDING_THREADS * 1000L));
+		assertThat(histogram.percentile(100), is(RECORDING_THREADS * 1000L));
+		assertThat(histogram.percentile(10) < 2000, is(true));
+	}
+
+	private void start(MetricsConfiguration metrics) {
+		this.server = new RpcServer(RpcServerConfiguration.defaults().metrics(
+				metrics));
+		this.server.start(HOST, PORT);
+		this.client = new RpcClient();
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	private static long channelBytesIn(SortedMap<String, Number> metrics) {
+		for (String name : metrics.keySet()) {
+			if (name.startsWith("channels.") && name.endsWith(".bytesIn")) {
+				return metrics.get(name).longValue();
+			}
+		}
+		return 0;
+	}
+
+	private static boolean awaitMetric(MetricsRegistry registry, String name,
+			long expected) {
+		long deadline = System.currentTimeMillis() + METRIC_TIMEOUT_MS;
+		while (System.currentTimeMillis() < deadline) {
+			Number value = registry.snapshot().get(name);
+			if (value != null && value.longValue() == expected) {
+				return true;
+			}
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return false;
+	}
+
+	private class BlockingHandler implements
+			SynchronousMessageHandler<SimpleRequest, Serializable> {
+
+		@Override
+		public Serializable onMessage(SimpleRequest message) {
+			try {
+				releaseHandler.await(METRIC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return message;
+		}
+	}
+}
@@ -1,11 +1,16 @@
 package uk.co.bssd.vesta.server;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -14,6 +19,8 @@ import org.junit.Test;
 
 import uk.co.bssd.vesta.client.MessageSendFailedException;
 import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
 import uk.co.bssd.vesta.server.AsynchronousMessageHandler;
 import uk.co.bssd.vesta.server.RpcServer;
 
@@ -26,6 +33,10 @@ public class NonFunctionalIntegrationTest {
 
 	private static final int NUMBER_MESSAGES = 20000;
 
+	private static final int NUMBER_CONCURRENT_CALLERS = 200;
+	private static final int NUMBER_REQUESTS_PER_CALLER = 50;
+	private static final long SYNC_RESPONSE_TIMEOUT_MS = 5000;
+
 	private List<Integer> receivedMessages;
 	private CountDownLatch messagesLatch;
 
@@ -73,12 +84,100 @@ public class NonFunctionalIntegrationTest {
 		assertThat(sent, equalTo(this.receivedMessages));
 	}
 	
+	@Test
+	public void testOrderIsPreservedForMessagesSentWithoutAwaitingEachWrite() throws InterruptedException {
+		List<Integer> sent = new ArrayList<Integer>();
+		SendFailureLatch failureLatch = new SendFailureLatch();
+
+		for (int i = 0; i < NUMBER_MESSAGES; i++) {
+			Integer message = Integer.valueOf(i);
+			this.client.sendAsync(message, failureLatch);
+			sent.add(message);
+		}
+		this.messagesLatch.await(10, TimeUnit.SECONDS);
+
+		assertThat(sent, equalTo(this.receivedMessages));
+	}
+
+	@Test
+	public void testConcurrentSynchronousRequestsAreEachCorrelatedWithTheirOwnResponse()
+			throws Exception {
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+
+		ExecutorService callers = Executors
+				.newFixedThreadPool(NUMBER_CONCURRENT_CALLERS);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+		for (int i = 0; i < NUMBER_CONCURRENT_CALLERS; i++) {
+			final String callerId = String.valueOf(i);
+			results.add(callers.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					for (int j = 0; j < NUMBER_REQUESTS_PER_CALLER; j++) {
+						String payload = callerId + ":" + j;
+						SimpleResponse response = client.sendSync(
+								new SimpleRequest(payload),
+								SimpleResponse.class, SYNC_RESPONSE_TIMEOUT_MS);
+						if (!payload.equals(response.payload())) {
+							return Boolean.FALSE;
+						}
+					}
+					return Boolean.TRUE;
+				}
+			}));
+		}
+
+		for (Future<Boolean> result : results) {
+			assertThat(result.get(), equalTo(Boolean.TRUE));
+		}
+		callers.shutdown();
+	}
+
 	@Test(expected=MessageSendFailedException.class)
 	public void testExceptionIsThrownWhenMessageIsSentFollowingDisconnection() {
-		this.server.stop();
+		stopServerAndAwaitDisconnect();
 		this.client.sendAsync(Integer.valueOf(1));
 	}
 	
+	@Test
+	public void testFailureListenerIsNotifiedWhenMessageIsSentWithoutAwaitingFollowingDisconnection() {
+		SendFailureLatch failureLatch = new SendFailureLatch();
+		stopServerAndAwaitDisconnect();
+		this.client.sendAsync(Integer.valueOf(1), failureLatch);
+		assertThat(failureLatch.awaitFailure(), is(true));
+	}
+
+	@Test(expected = MessageSendFailedException.class)
+	public void testExceptionIsThrownWhenMessageIsSentBeforeClientIsStarted() {
+		new RpcClient().sendAsync(Integer.valueOf(1));
+	}
+
+	@Test(expected = MessageSendFailedException.class)
+	public void testExceptionIsThrownWhenMessageIsSentAfterClientIsStopped() {
+		this.client.stop();
+		this.client.sendAsync(Integer.valueOf(1), new SendFailureLatch());
+	}
+
+	@Test(expected = MessageSendFailedException.class)
+	public void testExceptionIsThrownWhenSyncMessageIsSentAfterClientIsStopped() {
+		this.client.stop();
+		this.client.sendSync(Integer.valueOf(1), Integer.class, 1000);
+	}
+
+	@Test(expected = MessageSendFailedException.class)
+	public void testExceptionIsThrownWhenRequestIsSentAfterClientIsStopped() {
+		this.client.stop();
+		this.client.sendRequest(Integer.valueOf(1), Integer.class, 1000);
+	}
+
+	private void stopServerAndAwaitDisconnect() {
+		DisconnectLatch disconnectLatch = new DisconnectLatch();
+		this.client.addDisconnectListener(disconnectLatch);
+		this.server.stop();
+		disconnectLatch.awaitDisconnect();
+	}
+
 	private void messageReceived(Integer message) {
 		this.receivedMessages.add(message);
 		this.messagesLatch.countDown();
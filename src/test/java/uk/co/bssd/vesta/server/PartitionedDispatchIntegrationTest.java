@@ -0,0 +1,120 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.RpcClient;
+
+public class PartitionedDispatchIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+
+	private static final int NUMBER_CLIENTS = 4;
+	private static final int NUMBER_PARTITIONS = 4;
+	private static final int NUMBER_MESSAGES_PER_CLIENT = 5000;
+
+	private List<Integer> receivedMessages;
+	private CountDownLatch messagesLatch;
+
+	private List<RpcClient> clients;
+	private RpcServer server;
+
+	@Before
+	public void before() {
+		this.receivedMessages = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		this.messagesLatch = new CountDownLatch(NUMBER_CLIENTS
+				* NUMBER_MESSAGES_PER_CLIENT);
+
+		RpcServerConfiguration configuration = RpcServerConfiguration
+				.defaults().asynchronousDispatchExecutor(
+						DispatchExecutors.partitioned(NUMBER_PARTITIONS));
+		this.server = new RpcServer(configuration);
+		this.server.registerAsynchronousMessageHandler(Integer.class,
+				new AsynchronousMessageHandler<Integer>() {
+					@Override
+					public void onMessage(Integer message) {
+						receivedMessages.add(message);
+						messagesLatch.countDown();
+					}
+				});
+		this.server.start(HOST, PORT);
+
+		this.clients = new ArrayList<RpcClient>();
+		for (int i = 0; i < NUMBER_CLIENTS; i++) {
+			RpcClient client = new RpcClient();
+			client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+			this.clients.add(client);
+		}
+	}
+
+	@After
+	public void after() {
+		for (RpcClient client : this.clients) {
+			client.stop();
+		}
+		this.server.stop();
+	}
+
+	@Test
+	public void testOrderIsPreservedPerClientWhenDispatchIsPartitioned()
+			throws InterruptedException {
+		List<Thread> senders = new ArrayList<Thread>();
+		for (int i = 0; i < NUMBER_CLIENTS; i++) {
+			final RpcClient client = this.clients.get(i);
+			final int firstMessage = i * NUMBER_MESSAGES_PER_CLIENT;
+			Thread sender = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < NUMBER_MESSAGES_PER_CLIENT; j++) {
+						client.sendAsync(Integer.valueOf(firstMessage + j));
+					}
+				}
+			});
+			sender.start();
+			senders.add(sender);
+		}
+		for (Thread sender : senders) {
+			sender.join();
+		}
+		assertThat(this.messagesLatch.await(10, TimeUnit.SECONDS), is(true));
+
+		for (int i = 0; i < NUMBER_CLIENTS; i++) {
+			assertThat(receivedFromClient(i), equalTo(sentByClient(i)));
+		}
+	}
+
+	private List<Integer> sentByClient(int client) {
+		List<Integer> sent = new ArrayList<Integer>();
+		for (int j = 0; j < NUMBER_MESSAGES_PER_CLIENT; j++) {
+			sent.add(Integer.valueOf(client * NUMBER_MESSAGES_PER_CLIENT + j));
+		}
+		return sent;
+	}
+
+	private List<Integer> receivedFromClient(int client) {
+		List<Integer> received = new ArrayList<Integer>();
+		synchronized (this.receivedMessages) {
+			for (Integer message : this.receivedMessages) {
+				if (message.intValue() / NUMBER_MESSAGES_PER_CLIENT == client) {
+					received.add(message);
+				}
+			}
+		}
+		return received;
+	}
+}
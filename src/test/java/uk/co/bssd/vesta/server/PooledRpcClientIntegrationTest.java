@@ -0,0 +1,265 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.LoadBalancingStrategies;
+import uk.co.bssd.vesta.client.LoadBalancingStrategy;
+import uk.co.bssd.vesta.client.MessageSendFailedException;
+import uk.co.bssd.vesta.client.PooledRpcClient;
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+import uk.co.bssd.vesta.metrics.MetricsConfiguration;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class PooledRpcClientIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int FIRST_PORT = 6789;
+	private static final int SECOND_PORT = 6790;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long RESPONSE_TIMEOUT_MS = 5000;
+	private static final long FAIL_FAST_TIMEOUT_MS = 1000;
+	private static final long RECONNECT_TIMEOUT_MS = 5000;
+
+	private static final int REQUESTS = 8;
+
+	private static final String JMX_OBJECT_NAME = "uk.co.bssd.vesta:type=RpcClient,name=PooledRpcClientIntegrationTest";
+
+	private CountDownLatch releaseBlockedHandlers;
+
+	private RpcServer firstServer;
+	private RpcServer secondServer;
+	private PooledRpcClient client;
+
+	@Before
+	public void before() {
+		this.releaseBlockedHandlers = new CountDownLatch(1);
+		this.firstServer = startServer("first", FIRST_PORT);
+		this.secondServer = startServer("second", SECOND_PORT);
+	}
+
+	@After
+	public void after() {
+		this.releaseBlockedHandlers.countDown();
+		if (this.client != null) {
+			this.client.stop();
+		}
+		if (this.firstServer != null) {
+			this.firstServer.stop();
+		}
+		if (this.secondServer != null) {
+			this.secondServer.stop();
+		}
+	}
+
+	@Test
+	public void testRoundRobinSpreadsRequestsEvenlyAcrossServers() {
+		startClient(2, LoadBalancingStrategies.roundRobin());
+
+		Map<String, Integer> answeredBy = sendRequests(REQUESTS);
+
+		assertThat(answeredBy.get("first"), is(REQUESTS / 2));
+		assertThat(answeredBy.get("second"), is(REQUESTS / 2));
+	}
+
+	@Test
+	public void testLeastOutstandingAvoidsConnectionWithPendingRequest() {
+		startClient(1, LoadBalancingStrategies.leastOutstanding());
+		sendBlockedRequest();
+
+		assertAllAnsweredByOneServer(sendRequests(REQUESTS));
+	}
+
+	@Test
+	public void testPowerOfTwoChoicesAvoidsConnectionWithPendingRequest() {
+		startClient(1, LoadBalancingStrategies.powerOfTwoChoices());
+		sendBlockedRequest();
+
+		assertAllAnsweredByOneServer(sendRequests(REQUESTS));
+	}
+
+	@Test
+	public void testPendingRequestsFailFastWhenTheirConnectionIsLost()
+			throws Exception {
+		// with nothing outstanding, the first connection (to the first server)
+		// is chosen
+		startClient(1, LoadBalancingStrategies.leastOutstanding());
+		ListenableFuture<SimpleResponse> pending = sendBlockedRequest();
+
+		// releasing the handler earlier would let it answer the request.
+		// the server closes its connections before waiting on its handlers,
+		// so this releases it once the request has failed and before the
+		// stop waits
+		pending.addListener(new Runnable() {
+			@Override
+			public void run() {
+				releaseBlockedHandlers.countDown();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		this.firstServer.stop();
+		this.firstServer = null;
+
+		try {
+			pending.get(FAIL_FAST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			fail("Pending request should have failed with its connection");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(),
+					instanceOf(MessageSendFailedException.class));
+		}
+		assertThat(sendRequests(REQUESTS).get("second"), is(REQUESTS));
+		assertThat(this.client.connectedCount(), is(1));
+	}
+
+	@Test
+	public void testStartsWithReachableServersAndAddsOthersOnceTheyAreUp()
+			throws Exception {
+		this.secondServer.stop();
+		this.secondServer = null;
+
+		startClient(1, LoadBalancingStrategies.roundRobin());
+
+		assertThat(this.client.connectedCount(), is(1));
+		assertThat(sendRequests(REQUESTS).get("first"), is(REQUESTS));
+
+		this.secondServer = startServer("second", SECOND_PORT);
+		awaitConnectedCount(2);
+
+		assertThat(sendRequests(REQUESTS).get("second"), is(REQUESTS / 2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStartFailsWhenNoServerIsReachable() {
+		this.firstServer.stop();
+		this.firstServer = null;
+		this.secondServer.stop();
+		this.secondServer = null;
+
+		startClient(1, LoadBalancingStrategies.roundRobin());
+	}
+
+	private RpcServer startServer(final String name, int port) {
+		RpcServer server = new RpcServer();
+		server.registerSynchronousMessageHandler(String.class,
+				new SynchronousMessageHandler<String, String>() {
+					@Override
+					public String onMessage(String request) {
+						return name;
+					}
+				});
+		server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new SynchronousMessageHandler<SimpleRequest, SimpleResponse>() {
+					@Override
+					public SimpleResponse onMessage(SimpleRequest request) {
+						awaitRelease();
+						return new SimpleResponse(request.payload());
+					}
+				});
+		server.start(HOST, port);
+		return server;
+	}
+
+	@Test
+	public void testEachConnectionExportsItsOwnMetricsOverJmx()
+			throws Exception {
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		startClient(RpcClientConfiguration.defaults().metrics(
+				MetricsConfiguration.defaults().jmxObjectName(JMX_OBJECT_NAME)),
+				2, LoadBalancingStrategies.roundRobin());
+
+		for (int i = 0; i < 4; i++) {
+			assertThat(mbeanServer.isRegistered(connectionName(i)), is(true));
+		}
+
+		this.client.stop();
+		this.client = null;
+		assertThat(mbeanServer.isRegistered(connectionName(0)), is(false));
+	}
+
+	private void startClient(int connectionsPerServer,
+			LoadBalancingStrategy strategy) {
+		startClient(RpcClientConfiguration.defaults(), connectionsPerServer,
+				strategy);
+	}
+
+	private void startClient(RpcClientConfiguration configuration,
+			int connectionsPerServer, LoadBalancingStrategy strategy) {
+		List<InetSocketAddress> servers = new ArrayList<InetSocketAddress>();
+		servers.add(new InetSocketAddress(HOST, FIRST_PORT));
+		servers.add(new InetSocketAddress(HOST, SECOND_PORT));
+
+		this.client = new PooledRpcClient(configuration, connectionsPerServer,
+				strategy);
+		this.client.start(servers, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	private static ObjectName connectionName(int connection) throws Exception {
+		return new ObjectName(JMX_OBJECT_NAME + ",connection=" + connection);
+	}
+
+	private ListenableFuture<SimpleResponse> sendBlockedRequest() {
+		ListenableFuture<SimpleResponse> future = this.client.sendRequest(
+				new SimpleRequest("blocked"), SimpleResponse.class,
+				RESPONSE_TIMEOUT_MS);
+		assertThat(this.client.outstandingRequests(), is(1));
+		return future;
+	}
+
+	private Map<String, Integer> sendRequests(int count) {
+		Map<String, Integer> answeredBy = new HashMap<String, Integer>();
+		for (int i = 0; i < count; i++) {
+			String server = this.client.sendSync("request", String.class,
+					RESPONSE_TIMEOUT_MS);
+			Integer answered = answeredBy.get(server);
+			answeredBy.put(server, answered == null ? 1 : answered + 1);
+		}
+		return answeredBy;
+	}
+
+	// a request sent to the server holding the blocked request would be
+	// queued behind it and time out
+	private void assertAllAnsweredByOneServer(Map<String, Integer> answeredBy) {
+		assertThat(answeredBy.size(), is(1));
+		assertThat(answeredBy.values().iterator().next(), is(REQUESTS));
+	}
+
+	private void awaitConnectedCount(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + RECONNECT_TIMEOUT_MS;
+		while (this.client.connectedCount() < count
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(this.client.connectedCount(), is(count));
+	}
+
+	private void awaitRelease() {
+		try {
+			this.releaseBlockedHandlers.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.DisconnectListener;
+import uk.co.bssd.vesta.client.MessageSendFailedException;
+import uk.co.bssd.vesta.client.ReconnectConfiguration;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
+
+public class ReconnectIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS = 1000;
+	private static final long RECONNECT_TIMEOUT_MS = 2000;
+
+	private static final long INITIAL_BACKOFF_MS = 10;
+	private static final long MAX_BACKOFF_MS = 100;
+	private static final int MAX_BUFFERED_MESSAGES = 1;
+
+	private RpcClient client;
+	private RpcServer server;
+	private CapturingMessageHandler<String> handler;
+	private SubscribeLatch subscribeLatch;
+
+	@Before
+	public void before() {
+		startServer();
+
+		this.client = new RpcClient(RpcClientConfiguration.defaults()
+				.reconnect(
+						new ReconnectConfiguration(INITIAL_BACKOFF_MS,
+								MAX_BACKOFF_MS, MAX_BUFFERED_MESSAGES)));
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	@After
+	public void after() {
+		this.client.stop();
+		this.server.stop();
+	}
+
+	@Test
+	public void testAsynchronousSendWhilstDisconnectedIsDeliveredOnReconnect() {
+		stopServerAndAwaitDisconnect();
+		this.client.sendAsync("buffered");
+
+		startServer();
+
+		this.handler.awaitCapture();
+		assertThat(this.handler.capturedValue(), is("buffered"));
+	}
+
+	@Test
+	public void testAsynchronousSendFromADisconnectListenerIsDeliveredOnReconnect() {
+		this.client.addDisconnectListener(new DisconnectListener() {
+			@Override
+			public void onDisconnect() {
+				client.sendAsync("buffered");
+			}
+		});
+		stopServerAndAwaitDisconnect();
+
+		startServer();
+
+		this.handler.awaitCapture();
+		assertThat(this.handler.capturedValue(), is("buffered"));
+	}
+
+	@Test
+	public void testSubscriptionsAreRestoredOnReconnect() {
+		this.client.subscribe("prices");
+		assertThat(this.subscribeLatch.awaitSubscriptionComplete(), is(true));
+
+		stopServerAndAwaitDisconnect();
+		startServer();
+
+		assertThat(this.subscribeLatch.awaitSubscriptionComplete(), is(true));
+		this.server.broadcast("price", "prices");
+		assertThat(this.client.awaitMessage(CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS),
+				is((Serializable) "price"));
+	}
+
+	@Test(expected = MessageSendFailedException.class)
+	public void testAsynchronousSendBeyondTheBufferLimitFails() {
+		stopServerAndAwaitDisconnect();
+		this.client.sendAsync("buffered");
+		this.client.sendAsync("overflow");
+	}
+
+	@Test
+	public void testFailureListenerIsNotifiedOfSendBeyondTheBufferLimit() {
+		SendFailureLatch failureLatch = new SendFailureLatch();
+		stopServerAndAwaitDisconnect();
+		this.client.sendAsync("buffered", failureLatch);
+		this.client.sendAsync("overflow", failureLatch);
+		assertThat(failureLatch.awaitFailure(), is(true));
+	}
+
+	private void startServer() {
+		this.handler = new CapturingMessageHandler<String>(RECONNECT_TIMEOUT_MS);
+		this.subscribeLatch = new SubscribeLatch(RECONNECT_TIMEOUT_MS);
+
+		this.server = new RpcServer();
+		this.server.registerAsynchronousMessageHandler(String.class,
+				this.handler);
+		this.server.registerSubscribeListener(this.subscribeLatch);
+		this.server.start(HOST, PORT);
+	}
+
+	private void stopServerAndAwaitDisconnect() {
+		DisconnectLatch disconnectLatch = new DisconnectLatch();
+		this.client.addDisconnectListener(disconnectLatch);
+		this.server.stop();
+		assertThat(disconnectLatch.awaitDisconnect(), is(true));
+	}
+}
@@ -0,0 +1,126 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.RpcClient;
+
+public class RetainedTopicIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS = 1000;
+	private static final long NO_MESSAGE_TIMEOUT_MS = 100;
+
+	private static final long MAX_RETAINED_BYTES = 1024 * 1024;
+
+	private RpcServer server;
+	private RpcClient client;
+
+	@Before
+	public void before() {
+		this.server = new RpcServer();
+		this.server.start(HOST, PORT);
+
+		this.client = new RpcClient();
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	@After
+	public void after() {
+		this.client.stop();
+		this.server.stop();
+	}
+
+	@Test
+	public void testLastMessagesAreReplayedInOrderBeforeLiveMessages() {
+		this.server.registerRetainedTopic("prices",
+				TopicRetention.lastMessages(3, MAX_RETAINED_BYTES));
+		for (int i = 1; i <= 5; i++) {
+			this.server.broadcast("price " + i, "prices");
+		}
+
+		subscribe("prices");
+		this.server.broadcast("price 6", "prices");
+
+		assertReceived("price 3", "price 4", "price 5", "price 6");
+		assertNoFurtherMessages();
+	}
+
+	@Test
+	public void testLastValuePerKeyIsReplayedOnSubscribe() {
+		this.server.registerRetainedTopic("prices",
+				TopicRetention.lastValuePerKey(new InstrumentKeyResolver(),
+						MAX_RETAINED_BYTES));
+		this.server.broadcast("VOD 1", "prices");
+		this.server.broadcast("BP 1", "prices");
+		this.server.broadcast("VOD 2", "prices");
+
+		subscribe("prices");
+
+		assertReceived("BP 1", "VOD 2");
+		assertNoFurtherMessages();
+	}
+
+	@Test
+	public void testRetainedMessagesAreEvictedOnceOverTheByteLimit() {
+		this.server.registerRetainedTopic("prices",
+				TopicRetention.lastMessages(100, 1));
+		this.server.broadcast("price 1", "prices");
+
+		subscribe("prices");
+
+		assertNoFurtherMessages();
+	}
+
+	@Test
+	public void testWildcardSubscriptionReplaysEveryMatchingRetainedTopic() {
+		this.server.registerRetainedTopic("prices.VOD",
+				TopicRetention.lastMessages(1, MAX_RETAINED_BYTES));
+		this.server.registerRetainedTopic("trades.VOD",
+				TopicRetention.lastMessages(1, MAX_RETAINED_BYTES));
+		this.server.broadcast("VOD 1", "prices.VOD");
+		this.server.broadcast("VOD trade", "trades.VOD");
+
+		subscribe("prices.*");
+
+		assertReceived("VOD 1");
+		assertNoFurtherMessages();
+	}
+
+	private void subscribe(String channelName) {
+		SubscribeLatch subscribeLatch = new SubscribeLatch();
+		this.server.registerSubscribeListener(subscribeLatch);
+		this.client.subscribe(channelName);
+		assertThat(subscribeLatch.awaitSubscriptionComplete(), is(true));
+	}
+
+	private void assertReceived(String... messages) {
+		for (String message : messages) {
+			assertThat(
+					this.client.awaitMessage(CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS),
+					is((Serializable) message));
+		}
+	}
+
+	private void assertNoFurtherMessages() {
+		assertThat(this.client.awaitMessage(NO_MESSAGE_TIMEOUT_MS),
+				is(nullValue()));
+	}
+
+	private static class InstrumentKeyResolver implements ConflationKeyResolver {
+		@Override
+		public Object keyFor(Serializable message) {
+			return ((String) message).split(" ")[0];
+		}
+	}
+}
@@ -6,6 +6,8 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.io.Serializable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -15,11 +17,14 @@ import uk.co.bssd.vesta.MessageFuture;
 import uk.co.bssd.vesta.UnknownSynchronousRequestException;
 import uk.co.bssd.vesta.client.MessageTimeoutException;
 import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
 import uk.co.bssd.vesta.message.SimpleRequest;
 import uk.co.bssd.vesta.message.SimpleResponse;
 import uk.co.bssd.vesta.server.RpcServer;
 import uk.co.bssd.vesta.server.SynchronousMessageHandler;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class RpcServerIntegrationTest {
 
 	private static final String HOST = "127.0.0.1";
@@ -32,15 +37,16 @@ public class RpcServerIntegrationTest {
 	private static final String HELLO = "hello";
 	
 	private static final String MESSAGE_CHANNEL = "channel";
+	private static final String CONNECTED_CHANNEL = "connected";
 
 	private SimpleRequest request;
 
 	private DisconnectLatch clientDisconnectLatch;
-	private RpcClient client;
+	protected RpcClient client;
 
 	private SubscribeLatch subscribeLatch;
 	private UnsubscribeLatch unsubscribeLatch;
-	private RpcServer server;
+	protected RpcServer server;
 
 	@Before
 	public void before() throws Exception {
@@ -49,13 +55,13 @@ public class RpcServerIntegrationTest {
 		this.subscribeLatch = new SubscribeLatch();
 		this.unsubscribeLatch = new UnsubscribeLatch();
 		
-		this.server = new RpcServer();
+		this.server = new RpcServer(serverConfiguration());
 		this.server.registerSubscribeListener(this.subscribeLatch);
 		this.server.registerUnsubscribeListener(this.unsubscribeLatch);
 		this.server.start(HOST, PORT);
 
 		this.clientDisconnectLatch = new DisconnectLatch();
-		this.client = new RpcClient();
+		this.client = new RpcClient(clientConfiguration());
 		this.client.addDisconnectListener(this.clientDisconnectLatch);
 		startClient();
 	}
@@ -68,6 +74,7 @@ public class RpcServerIntegrationTest {
 
 	@Test
 	public void testBroadcastingMessageToAllClientsFromServerIsReceivedByClient() {
+		awaitServerConnected();
 		Serializable message = HELLO;
 		this.server.broadcast(message);
 		assertThat(clientAwaitMessage(), is(message));
@@ -89,6 +96,37 @@ public class RpcServerIntegrationTest {
 		assertThat(clientAwaitMessage(), is(message));
 	}
 	
+	@Test
+	public void testBroadcastingMessageOnTopicMatchingSingleSegmentWildcardIsReceivedByClient() {
+		this.client.subscribe("prices.LSE.*");
+		this.subscribeLatch.awaitSubscriptionComplete();
+		
+		broadcastTopicName("prices.NYSE.IBM");
+		broadcastTopicName("prices.LSE.VOD.bid");
+		broadcastTopicName("prices.LSE.VOD");
+		assertThat(clientAwaitMessage(), is((Serializable) "prices.LSE.VOD"));
+	}
+	
+	@Test
+	public void testBroadcastingMessageOnTopicMatchingMultiSegmentWildcardIsReceivedByClient() {
+		this.client.subscribe("prices.#");
+		this.subscribeLatch.awaitSubscriptionComplete();
+		
+		broadcastTopicName("trades.LSE.VOD");
+		broadcastTopicName("prices.LSE.VOD.bid");
+		assertThat(clientAwaitMessage(), is((Serializable) "prices.LSE.VOD.bid"));
+	}
+	
+	@Test
+	public void testUnsubscribingFromWildcardStopsMatchingTopics() {
+		this.client.subscribe("prices.*");
+		this.client.unsubscribe("prices.*");
+		this.unsubscribeLatch.awaitUnsubscriptionComplete();
+		
+		this.server.broadcast(HELLO, "prices.LSE");
+		assertThat(this.client.awaitMessage(CLIENT_MESSAGE_RECEIVE_SHORT_TIMEOUT_MS), is(nullValue()));
+	}
+	
 	@Test
 	public void testBroadcastingMessageReturnsFutureWhichCanBeUsedToDetermineIfMessageIsSentOk() {
 		this.client.subscribe(MESSAGE_CHANNEL);
@@ -154,6 +192,44 @@ public class RpcServerIntegrationTest {
 		assertThat(response.payload(), is(HELLO));
 	}
 
+	@Test
+	public void testSendingRequestToTheServerReturnsFutureCompletedWithResponse()
+			throws Exception {
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+
+		ListenableFuture<SimpleResponse> future = this.client.sendRequest(
+				this.request, SimpleResponse.class,
+				CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
+		SimpleResponse response = future.get(
+				CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertThat(response.payload(), is(HELLO));
+	}
+
+	@Test(expected = MessageTimeoutException.class)
+	public void testSendingRequestWhichIsNotAnsweredInTimeFailsFutureWithTimeoutException()
+			throws Throwable {
+		this.server.registerSynchronousMessageHandler(String.class,
+				new SynchronousMessageHandler<Serializable, Serializable>() {
+					@Override
+					public Serializable onMessage(Serializable message) {
+						try {
+							Thread.sleep(CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
+						} catch (InterruptedException e) {
+						}
+						return null;
+					}
+				});
+
+		ListenableFuture<Serializable> future = this.client.sendRequest(HELLO,
+				Serializable.class, CLIENT_MESSAGE_RECEIVE_SHORT_TIMEOUT_MS);
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
 	@Test(expected = IllegalThreadStateException.class)
 	public void testSendingMessageSyncToTheServerWhichResultsInAnExceptionIsRethrownInTheClient() {
 		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
@@ -163,6 +239,15 @@ public class RpcServerIntegrationTest {
 				CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
 	}
 
+	@Test(expected = ClassCastException.class)
+	public void testSendingMessageSyncWhoseResponseIsNotOfTheExpectedTypeThrowsAnException() {
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+
+		this.client.sendSync(this.request, String.class,
+				CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
+	}
+
 	@Test
 	public void testStoppingServerCausesDisconnectAtClient() {
 		this.server.stop();
@@ -173,6 +258,7 @@ public class RpcServerIntegrationTest {
 	public void testClientCanBeStoppedAndRestarted() {
 		this.client.stop();
 		startClient();
+		awaitServerConnected();
 		this.server.broadcast(HELLO);
 		assertThat(clientAwaitMessage(), is(notNullValue()));
 	}
@@ -220,10 +306,29 @@ public class RpcServerIntegrationTest {
 				CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
 	}
 
+	protected RpcServerConfiguration serverConfiguration() {
+		return RpcServerConfiguration.defaults();
+	}
+
+	protected RpcClientConfiguration clientConfiguration() {
+		return RpcClientConfiguration.defaults();
+	}
+
 	private void startClient() {
 		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
 	}
 
+	// the server accepts connections asynchronously, a completed subscribe
+	// proves it has added the client to the broadcast group
+	private void awaitServerConnected() {
+		this.client.subscribe(CONNECTED_CHANNEL);
+		this.subscribeLatch.awaitSubscriptionComplete();
+	}
+
+	private void broadcastTopicName(String topic) {
+		this.server.broadcast(topic, topic);
+	}
+
 	private Serializable clientAwaitMessage() {
 		Serializable received = this.client
 				.awaitMessage(CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
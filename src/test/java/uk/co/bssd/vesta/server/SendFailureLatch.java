@@ -0,0 +1,39 @@
+package uk.co.bssd.vesta.server;
+
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.bssd.vesta.client.SendFailureListener;
+
+public class SendFailureLatch implements SendFailureListener {
+
+	private static final long DEFAULT_TIMEOUT_MS = 1000;
+
+	private final CountDownLatch latch;
+	private final long timeoutMs;
+
+	public SendFailureLatch() {
+		this(DEFAULT_TIMEOUT_MS);
+	}
+
+	public SendFailureLatch(long timeoutMs) {
+		this.latch = new CountDownLatch(1);
+		this.timeoutMs = timeoutMs;
+	}
+
+	@Override
+	public void onSendFailed(Serializable message, Throwable cause) {
+		this.latch.countDown();
+	}
+
+	public boolean awaitFailure() {
+		try {
+			this.latch.await(this.timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(
+					"Interrupted whilst awaiting on send failure latch", e);
+		}
+		return this.latch.getCount() == 0;
+	}
+}
@@ -0,0 +1,142 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.MessageFuture;
+import uk.co.bssd.vesta.codec.JavaSerializationCodec;
+import uk.co.bssd.vesta.message.SubscribeChannelRequest;
+
+public class SlowConsumerIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final String TOPIC = "prices";
+
+	private static final int WRITE_BUFFER_LOW_WATER_MARK = 8 * 1024;
+	private static final int WRITE_BUFFER_HIGH_WATER_MARK = 16 * 1024;
+	private static final int MAX_QUEUED_MESSAGES = 4;
+	private static final long MAX_BLOCK_MILLIS = 20;
+
+	private static final int MESSAGE_SIZE = 32 * 1024;
+	private static final int MAX_BROADCASTS = 5000;
+
+	private RpcServer server;
+	private Socket stalledSubscriber;
+
+	@After
+	public void after() throws IOException {
+		if (this.stalledSubscriber != null) {
+			this.stalledSubscriber.close();
+		}
+		this.server.stop();
+	}
+
+	@Test
+	public void testMessagesToStalledSubscriberAreDroppedWithDropNewestPolicy()
+			throws Exception {
+		startServerAndStalledSubscriber(SlowConsumerPolicy.DROP_NEWEST);
+
+		MessageFuture dropped = broadcastUntilDropped();
+
+		assertThat(dropped.droppedCount(), is(1));
+		assertThat(dropped.isSuccessful(), is(false));
+		assertThat(this.server.slowConsumerStatistics().droppedMessages(TOPIC) > 0, is(true));
+		assertThat(this.server.slowConsumerStatistics().droppedMessages(
+				stalledSubscriberAddress()) > 0, is(true));
+	}
+
+	@Test
+	public void testOldestQueuedMessageIsDroppedWithDropOldestPolicy()
+			throws Exception {
+		startServerAndStalledSubscriber(SlowConsumerPolicy.DROP_OLDEST);
+
+		MessageFuture latest = null;
+		for (int i = 0; i < MAX_BROADCASTS
+				&& this.server.slowConsumerStatistics().droppedMessages() == 0; i++) {
+			latest = this.server.broadcast(new byte[MESSAGE_SIZE], TOPIC);
+		}
+
+		assertThat(this.server.slowConsumerStatistics().droppedMessages(TOPIC), is(1L));
+		assertThat(latest.droppedCount(), is(0));
+	}
+
+	@Test
+	public void testStalledSubscriberIsDisconnectedWithDisconnectPolicy()
+			throws Exception {
+		startServerAndStalledSubscriber(SlowConsumerPolicy.DISCONNECT);
+
+		broadcastUntilDropped();
+
+		assertThat(this.server.slowConsumerStatistics().disconnections(), is(1L));
+	}
+
+	@Test
+	public void testPublisherGivesUpAfterBlockingWithBlockPublisherPolicy()
+			throws Exception {
+		startServerAndStalledSubscriber(SlowConsumerPolicy.BLOCK_PUBLISHER);
+
+		MessageFuture dropped = broadcastUntilDropped();
+
+		assertThat(dropped.droppedCount(), is(1));
+	}
+
+	private MessageFuture broadcastUntilDropped() {
+		for (int i = 0; i < MAX_BROADCASTS; i++) {
+			MessageFuture future = this.server.broadcast(new byte[MESSAGE_SIZE],
+					TOPIC);
+			if (future.droppedCount() > 0) {
+				return future;
+			}
+		}
+		throw new AssertionError("Stalled subscriber never overflowed");
+	}
+
+	private void startServerAndStalledSubscriber(SlowConsumerPolicy policy)
+			throws Exception {
+		SubscribeLatch subscribeLatch = new SubscribeLatch();
+
+		RpcServerConfiguration configuration = RpcServerConfiguration
+				.defaults()
+				.writeBufferWaterMarks(WRITE_BUFFER_LOW_WATER_MARK,
+						WRITE_BUFFER_HIGH_WATER_MARK)
+				.slowConsumer(
+						new SlowConsumerConfiguration(policy,
+								MAX_QUEUED_MESSAGES, MAX_BLOCK_MILLIS));
+		this.server = new RpcServer(configuration);
+		this.server.registerSubscribeListener(subscribeLatch);
+		this.server.start(HOST, PORT);
+
+		// a raw socket which subscribes and then never reads
+		this.stalledSubscriber = new Socket();
+		this.stalledSubscriber.setReceiveBufferSize(4096);
+		this.stalledSubscriber.connect(new InetSocketAddress(HOST, PORT));
+		OutputStream output = this.stalledSubscriber.getOutputStream();
+		output.write(encode(new SubscribeChannelRequest(TOPIC)));
+		output.flush();
+
+		assertThat(subscribeLatch.awaitSubscriptionComplete(), is(true));
+	}
+
+	private SocketAddress stalledSubscriberAddress() {
+		return this.stalledSubscriber.getLocalSocketAddress();
+	}
+
+	private static byte[] encode(Object message) throws Exception {
+		ChannelBuffer buffer = new JavaSerializationCodec().encode(message);
+		byte[] bytes = new byte[buffer.readableBytes()];
+		buffer.readBytes(bytes);
+		return bytes;
+	}
+}
@@ -18,7 +18,11 @@ public class SubscribeLatch implements SubscribeListener {
 	}
 
 	public SubscribeLatch(long timeoutMs) {
-		this.latch = new CountDownLatch(1);
+		this(1, timeoutMs);
+	}
+
+	public SubscribeLatch(int expectedSubscriptions, long timeoutMs) {
+		this.latch = new CountDownLatch(expectedSubscriptions);
 		this.timeoutMs = timeoutMs;
 	}
 
@@ -0,0 +1,86 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class TopicTrieTest {
+
+	private TopicTrie<String> trie;
+
+	@Before
+	public void before() {
+		this.trie = new TopicTrie<String>();
+	}
+
+	@Test
+	public void testExactPatternMatchesOnlyThatTopic() {
+		this.trie.add("prices.LSE.VOD", "a");
+		assertThat(this.trie.match("prices.LSE.VOD"), is(ImmutableSet.of("a")));
+		assertThat(this.trie.match("prices.LSE").isEmpty(), is(true));
+	}
+
+	@Test
+	public void testSingleSegmentWildcardMatchesExactlyOneSegment() {
+		this.trie.add("prices.LSE.*", "a");
+		assertThat(this.trie.match("prices.LSE.VOD"), is(ImmutableSet.of("a")));
+		assertThat(this.trie.match("prices.LSE").isEmpty(), is(true));
+		assertThat(this.trie.match("prices.LSE.VOD.bid").isEmpty(), is(true));
+	}
+
+	@Test
+	public void testMultiSegmentWildcardMatchesZeroOrMoreSegments() {
+		this.trie.add("prices.#", "a");
+		assertThat(this.trie.match("prices"), is(ImmutableSet.of("a")));
+		assertThat(this.trie.match("prices.LSE"), is(ImmutableSet.of("a")));
+		assertThat(this.trie.match("prices.LSE.VOD"), is(ImmutableSet.of("a")));
+		assertThat(this.trie.match("trades.LSE").isEmpty(), is(true));
+	}
+
+	@Test
+	public void testMultiSegmentWildcardInTheMiddleOfAPattern() {
+		this.trie.add("prices.#.bid", "a");
+		assertThat(this.trie.match("prices.bid"), is(ImmutableSet.of("a")));
+		assertThat(this.trie.match("prices.LSE.VOD.bid"), is(ImmutableSet.of("a")));
+		assertThat(this.trie.match("prices.LSE.VOD.ask").isEmpty(), is(true));
+	}
+
+	@Test
+	public void testValueMatchedByManyPatternsIsReturnedOnce() {
+		this.trie.add("prices.*.VOD", "a");
+		this.trie.add("prices.#", "a");
+		this.trie.add("prices.LSE.*", "b");
+		assertThat(this.trie.match("prices.LSE.VOD"), is(ImmutableSet.of("a", "b")));
+	}
+
+	@Test
+	public void testRemovedPatternNoLongerMatches() {
+		this.trie.add("prices.*", "a");
+		this.trie.add("prices.*", "b");
+		this.trie.remove("prices.*", "a");
+		assertThat(this.trie.match("prices.LSE"), is(ImmutableSet.of("b")));
+		this.trie.remove("prices.*", "b");
+		assertThat(this.trie.match("prices.LSE").isEmpty(), is(true));
+	}
+
+	@Test
+	public void testPatternsAreRecognised() {
+		assertThat(TopicTrie.isPattern("prices.*"), is(true));
+		assertThat(TopicTrie.isPattern("prices.#"), is(true));
+		assertThat(TopicTrie.isPattern("prices.LSE"), is(false));
+		assertThat(TopicTrie.isPattern("prices.a*"), is(false));
+	}
+
+	@Test
+	public void testPatternMatchesTopicWithoutATrie() {
+		assertThat(TopicTrie.matches("prices.*.VOD", "prices.LSE.VOD"), is(true));
+		assertThat(TopicTrie.matches("prices.#", "prices"), is(true));
+		assertThat(TopicTrie.matches("prices.#.bid", "prices.LSE.VOD.bid"), is(true));
+		assertThat(TopicTrie.matches("prices.*", "prices.LSE.VOD"), is(false));
+		assertThat(TopicTrie.matches("prices.*", "trades.LSE"), is(false));
+	}
+}
@@ -0,0 +1,168 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
+import uk.co.bssd.vesta.codec.BinaryCodec;
+import uk.co.bssd.vesta.codec.Codec;
+import uk.co.bssd.vesta.codec.JavaSerializationCodec;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+import uk.co.bssd.vesta.trace.SamplingTraceRecorder;
+import uk.co.bssd.vesta.trace.Trace;
+import uk.co.bssd.vesta.trace.TraceStage;
+
+public class TracingIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS = 1000;
+	private static final long TRACE_TIMEOUT_MS = 1000;
+
+	private static final int CAPACITY = 16;
+
+	private static final TraceStage[] SERVER_STAGES = { TraceStage.SERVER_READ,
+			TraceStage.SERVER_DECODED, TraceStage.SERVER_QUEUED,
+			TraceStage.SERVER_HANDLER_STARTED,
+			TraceStage.SERVER_HANDLER_COMPLETED,
+			TraceStage.SERVER_RESPONSE_ENCODED };
+	private static final TraceStage[] CLIENT_STAGES = { TraceStage.CLIENT_SEND,
+			TraceStage.CLIENT_ENCODED, TraceStage.CLIENT_RESPONSE_READ,
+			TraceStage.CLIENT_RESPONSE_DECODED, TraceStage.CLIENT_COMPLETED };
+
+	private SamplingTraceRecorder serverTraces;
+	private SamplingTraceRecorder clientTraces;
+
+	private RpcServer server;
+	private RpcClient client;
+
+	@After
+	public void after() {
+		if (this.client != null) {
+			this.client.stop();
+			this.server.stop();
+		}
+	}
+
+	@Test
+	public void testSampledRequestIsTracedThroughEveryStageOnBothSides() {
+		start(new JavaSerializationCodec(), 0, 1);
+
+		sendSync();
+
+		Trace serverTrace = awaitTrace(this.serverTraces);
+		Trace clientTrace = awaitTrace(this.clientTraces);
+		assertThat(serverTrace.traceId(), is(clientTrace.traceId()));
+		assertStagesInOrder(serverTrace, SERVER_STAGES);
+		assertStagesInOrder(clientTrace, CLIENT_STAGES);
+		assertThat(serverTrace.reached(TraceStage.CLIENT_SEND), is(false));
+	}
+
+	@Test
+	public void testTraceContextIsCarriedInTheBinaryEnvelope() {
+		start(new BinaryCodec(), 0, 1);
+
+		sendSync();
+
+		assertThat(awaitTrace(this.serverTraces).traceId(),
+				is(awaitTrace(this.clientTraces).traceId()));
+	}
+
+	@Test
+	public void testServerSamplesRequestsArrivingWithoutATrace() {
+		start(new JavaSerializationCodec(), 1, 0);
+
+		sendSync();
+
+		assertStagesInOrder(awaitTrace(this.serverTraces), SERVER_STAGES);
+		assertThat(this.clientTraces.recorded(), is(0L));
+	}
+
+	@Test
+	public void testNothingIsRecordedWithSamplingOff() {
+		start(new JavaSerializationCodec(), 0, 0);
+
+		sendSync();
+
+		assertThat(this.serverTraces.recorded(), is(0L));
+		assertThat(this.clientTraces.recorded(), is(0L));
+	}
+
+	@Test
+	public void testRecorderKeepsOnlyTheNewestTraces() {
+		SamplingTraceRecorder recorder = new SamplingTraceRecorder(2);
+		Trace first = Trace.start(SimpleRequest.class);
+		Trace second = Trace.start(SimpleRequest.class);
+		Trace third = Trace.start(SimpleRequest.class);
+
+		recorder.onTraceCompleted(first);
+		recorder.onTraceCompleted(second);
+		recorder.onTraceCompleted(third);
+
+		List<Trace> dump = recorder.dump();
+		assertThat(dump.size(), is(2));
+		assertThat(dump.get(0), is(second));
+		assertThat(dump.get(1), is(third));
+	}
+
+	private void start(Codec codec, int serverSampleEvery,
+			int clientSampleEvery) {
+		this.serverTraces = new SamplingTraceRecorder(CAPACITY,
+				serverSampleEvery);
+		this.clientTraces = new SamplingTraceRecorder(CAPACITY,
+				clientSampleEvery);
+
+		this.server = new RpcServer(RpcServerConfiguration.defaults()
+				.codec(codec).tracer(this.serverTraces));
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+		this.server.start(HOST, PORT);
+
+		this.client = new RpcClient(RpcClientConfiguration.defaults()
+				.codec(codec).tracer(this.clientTraces));
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	private void sendSync() {
+		this.client.sendSync(new SimpleRequest("hello"), SimpleResponse.class,
+				CLIENT_MESSAGE_RECEIVE_TIMEOUT_MS);
+	}
+
+	private static void assertStagesInOrder(Trace trace, TraceStage[] stages) {
+		for (int i = 0; i < stages.length; i++) {
+			assertThat(stages[i] + " reached", trace.reached(stages[i]),
+					is(true));
+			if (i > 0) {
+				assertThat(stages[i] + " after " + stages[i - 1],
+						trace.elapsedNanos(stages[i - 1], stages[i]) >= 0,
+						is(true));
+			}
+		}
+	}
+
+	// the client's trace completes on a future listener which may run just
+	// after the caller has been woken
+	private static Trace awaitTrace(SamplingTraceRecorder recorder) {
+		long deadline = System.currentTimeMillis() + TRACE_TIMEOUT_MS;
+		while (recorder.recorded() == 0
+				&& System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		List<Trace> traces = recorder.dump();
+		assertThat(traces.size(), is(1));
+		return traces.get(0);
+	}
+}
@@ -0,0 +1,156 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.TransportResources;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+
+public class TransportResourcesIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long RESPONSE_TIMEOUT_MS = 1000;
+
+	private static final int WORKER_COUNT = 2;
+	private static final int NUMBER_CLIENTS = 10;
+	private static final int NUMBER_RESTARTS = 50;
+
+	private TransportResources resources;
+
+	@Before
+	public void before() {
+		this.resources = new TransportResources(WORKER_COUNT);
+	}
+
+	@Test
+	public void testClientsAndServerShareResourcesUntilTheLastIsStopped() {
+		RpcServer server = new RpcServer(RpcServerConfiguration.defaults()
+				.transportResources(this.resources));
+		server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+		server.start(HOST, PORT);
+
+		List<RpcClient> clients = new ArrayList<RpcClient>();
+		for (int i = 0; i < NUMBER_CLIENTS; i++) {
+			RpcClient client = new RpcClient(RpcClientConfiguration
+					.defaults().transportResources(this.resources));
+			client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+			clients.add(client);
+		}
+
+		// the creator's reference goes, the running users keep them alive
+		this.resources.release();
+
+		for (RpcClient client : clients) {
+			SimpleResponse response = client.sendSync(new SimpleRequest(
+					"shared"), SimpleResponse.class, RESPONSE_TIMEOUT_MS);
+			assertThat(response.payload(), is("shared"));
+			client.stop();
+		}
+		server.stop();
+
+		assertShutDown(this.resources);
+	}
+
+	@Test
+	public void testClientCanBeRestartedOnRetainedResources() {
+		RpcServer server = new RpcServer(RpcServerConfiguration.defaults()
+				.transportResources(this.resources));
+		server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+		server.start(HOST, PORT);
+
+		RpcClient client = new RpcClient(RpcClientConfiguration.defaults()
+				.transportResources(this.resources));
+		try {
+			client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+			client.stop();
+			client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+
+			SimpleResponse response = client.sendSync(new SimpleRequest(
+					"restarted"), SimpleResponse.class, RESPONSE_TIMEOUT_MS);
+			assertThat(response.payload(), is("restarted"));
+		} finally {
+			client.stop();
+			server.stop();
+			this.resources.release();
+		}
+	}
+
+	// the old connection's disconnect can arrive whilst the restarted
+	// client's first request is in flight
+	@Test
+	public void testRequestsOnARestartedClientAreUnaffectedByTheOldConnectionClosing() {
+		RpcServer server = new RpcServer(RpcServerConfiguration.defaults()
+				.transportResources(this.resources));
+		server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+		server.start(HOST, PORT);
+
+		RpcClient client = new RpcClient(RpcClientConfiguration.defaults()
+				.transportResources(this.resources));
+		try {
+			for (int i = 0; i < NUMBER_RESTARTS; i++) {
+				client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+				SimpleResponse response = client.sendSync(new SimpleRequest(
+						"restarted"), SimpleResponse.class,
+						RESPONSE_TIMEOUT_MS);
+				assertThat(response.payload(), is("restarted"));
+				client.stop();
+			}
+		} finally {
+			client.stop();
+			server.stop();
+			this.resources.release();
+		}
+	}
+
+	@Test
+	public void testServerWhichIsNeverStartedHoldsNoResources() {
+		new RpcServer(RpcServerConfiguration.defaults().transportResources(
+				this.resources));
+
+		this.resources.release();
+
+		assertShutDown(this.resources);
+	}
+
+	@Test
+	public void testSharedResourcesAreReplacedOnceEveryUserHasReleasedThem() {
+		this.resources.release();
+
+		TransportResources first = TransportResources.acquireShared();
+		TransportResources second = TransportResources.acquireShared();
+		assertThat(second, is(sameInstance(first)));
+
+		first.release();
+		second.release();
+
+		TransportResources replacement = TransportResources.acquireShared();
+		assertThat(replacement, is(not(sameInstance(first))));
+		replacement.release();
+	}
+
+	private static void assertShutDown(TransportResources resources) {
+		try {
+			resources.retain();
+		} catch (IllegalStateException e) {
+			return;
+		}
+		throw new AssertionError("Transport resources were not shut down");
+	}
+}
@@ -0,0 +1,135 @@
+package uk.co.bssd.vesta.server;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bssd.vesta.FlushReason;
+import uk.co.bssd.vesta.WriteBatchingConfiguration;
+import uk.co.bssd.vesta.WriteBatchingStatistics;
+import uk.co.bssd.vesta.client.RpcClient;
+import uk.co.bssd.vesta.client.RpcClientConfiguration;
+import uk.co.bssd.vesta.message.SimpleRequest;
+import uk.co.bssd.vesta.message.SimpleResponse;
+
+public class WriteBatchingIntegrationTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int PORT = 6789;
+
+	private static final long CLIENT_CONNECTION_TIMEOUT_MS = 1000;
+	private static final long CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS = 1000;
+
+	private static final int NUMBER_MESSAGES = 20000;
+
+	private static final int BATCH_MAX_MESSAGES = 64;
+	private static final int BATCH_MAX_BYTES = 16 * 1024;
+	private static final long BATCH_LINGER_MS = 2;
+
+	private static final int LATENCY_SAMPLES = 21;
+	// a request lingers once on the client and its response once on the server
+	private static final long MAX_MEDIAN_ROUND_TRIP_MS = 2 * BATCH_LINGER_MS + 20;
+
+	private List<Integer> receivedMessages;
+	private CountDownLatch messagesLatch;
+
+	private RpcClient client;
+	private RpcServer server;
+
+	@Before
+	public void before() {
+		this.messagesLatch = new CountDownLatch(NUMBER_MESSAGES);
+		this.receivedMessages = Collections
+				.synchronizedList(new ArrayList<Integer>());
+
+		WriteBatchingConfiguration batching = new WriteBatchingConfiguration(
+				BATCH_MAX_MESSAGES, BATCH_MAX_BYTES, BATCH_LINGER_MS);
+
+		this.server = new RpcServer(
+				RpcServerConfiguration.defaults().writeBatching(batching));
+		this.server.registerAsynchronousMessageHandler(Integer.class,
+				new AsynchronousMessageHandler<Integer>() {
+					@Override
+					public void onMessage(Integer message) {
+						receivedMessages.add(message);
+						messagesLatch.countDown();
+					}
+				});
+		this.server.registerSynchronousMessageHandler(SimpleRequest.class,
+				new EchoSimpleRequestHandler());
+		this.server.start(HOST, PORT);
+
+		this.client = new RpcClient(
+				RpcClientConfiguration.defaults().writeBatching(batching));
+		this.client.start(HOST, PORT, CLIENT_CONNECTION_TIMEOUT_MS);
+	}
+
+	@After
+	public void after() {
+		this.client.stop();
+		this.server.stop();
+	}
+
+	@Test
+	public void testBatchedMessagesArriveInOrderAndAreCoalescedIntoFewerWrites()
+			throws InterruptedException {
+		List<Integer> sent = new ArrayList<Integer>();
+		SendFailureLatch failureLatch = new SendFailureLatch();
+
+		for (int i = 0; i < NUMBER_MESSAGES; i++) {
+			Integer message = Integer.valueOf(i);
+			this.client.sendAsync(message, failureLatch);
+			sent.add(message);
+		}
+		this.messagesLatch.await(10, TimeUnit.SECONDS);
+
+		assertThat(this.receivedMessages, equalTo(sent));
+
+		WriteBatchingStatistics statistics = this.client
+				.writeBatchingStatistics();
+		assertThat(statistics.messages(), is((long) NUMBER_MESSAGES));
+		assertTrue(statistics.averageBatchSize() > 1);
+		assertTrue(statistics.flushes(FlushReason.MESSAGE_COUNT) > 0);
+	}
+
+	@Test
+	public void testSingleRequestIsFlushedOnceTheLingerExpires() {
+		SimpleResponse response = this.client.sendSync(new SimpleRequest(
+				"hello"), SimpleResponse.class,
+				CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
+
+		assertThat(response.payload(), is("hello"));
+		assertTrue(this.server.writeBatchingStatistics().flushes(
+				FlushReason.LINGER) > 0);
+	}
+
+	@Test
+	public void testLingerAddsLatencyCloseToTheConfiguredLinger() {
+		long[] roundTrips = new long[LATENCY_SAMPLES];
+		for (int i = 0; i < LATENCY_SAMPLES; i++) {
+			long start = System.nanoTime();
+			this.client.sendSync(new SimpleRequest("hello"),
+					SimpleResponse.class,
+					CLIENT_MESSAGE_RECEIVE_DEFAULT_TIMEOUT_MS);
+			roundTrips[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(roundTrips);
+
+		long medianMillis = TimeUnit.NANOSECONDS
+				.toMillis(roundTrips[LATENCY_SAMPLES / 2]);
+		assertTrue("median round trip " + medianMillis + " ms",
+				medianMillis <= MAX_MEDIAN_ROUND_TRIP_MS);
+	}
+}